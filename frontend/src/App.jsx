@@ -336,8 +336,9 @@ function App() {
       console.log('Debug: Starting API request...');
       const response = await axios.post(`${API_BASE_URL}/api/skChat`, 
         { 
+          // only the new turn is sent; the server keeps the conversation under this id
           message: userMessage,
-          sessionId: sessionId
+          conversationId: sessionId
         }, 
         {
           headers: {
@@ -347,7 +348,10 @@ function App() {
         }
       );
 
-      const responseData = response.data.message || response.data;
+      // the reply is the last assistant message of the returned turn
+      const replies = Array.isArray(response.data) ? response.data : [];
+      const lastReply = [...replies].reverse().find(m => m.authorRole === 'ASSISTANT' && m.content);
+      const responseData = lastReply ? lastReply.content : (response.data.message || response.data);
 
       if (responseData) {
         setMessages(prev => [...prev, { 
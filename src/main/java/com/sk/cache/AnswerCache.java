@@ -0,0 +1,133 @@
+package com.sk.cache;
+
+import com.sk.config.CacheConfig;
+import com.sk.kernel.kernelUtil;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Serves stored final answers for the stateless routes (chapter4 and chapter5).
+ * Answers are keyed by route, plugin set, the chat deployment the prompt is routed to
+ * and the normalised prompt;
+ * optionally a near-duplicate prompt is matched through its embedding.
+ */
+@Component
+public class AnswerCache implements StatsSource {
+
+    private final kernelUtil kernelUtil;
+    private final boolean similarityEnabled;
+    private final Map<String, Boolean> routeEnabled = new LinkedHashMap<>();
+    private final Map<String, SemanticCache<String>> caches = new LinkedHashMap<>();
+    private final AtomicLong bypasses = new AtomicLong();
+
+    @Autowired
+    public AnswerCache(CacheConfig cacheConfig, kernelUtil kernelUtil) {
+        this.kernelUtil = kernelUtil;
+        this.similarityEnabled = cacheConfig.isAnswerSimilarityEnabled();
+        routeEnabled.put("chapter4", cacheConfig.isAnswerChapter4Enabled());
+        routeEnabled.put("chapter5", cacheConfig.isAnswerChapter5Enabled());
+        for (String route : routeEnabled.keySet()) {
+            caches.put(route, new SemanticCache<>(route,
+                    cacheConfig.getAnswerMaxEntries(),
+                    Duration.ofSeconds(cacheConfig.getAnswerTtlSeconds()),
+                    cacheConfig.getAnswerSimilarityThreshold()));
+        }
+    }
+
+    /**
+     * Returns the cached answer for the prompt, or computes, stores and returns a new one.
+     *
+     * @param route      the API route the prompt was sent to
+     * @param pluginSet  the plugins available to the model on that route
+     * @param deployment the deployment the prompt is routed to
+     * @param input      the user prompt
+     * @param bypass     true when the caller asked for a fresh answer
+     * @param supplier   produces the answer on a miss
+     */
+    public Mono<String> getOrCompute(String route, String pluginSet, String deployment, String input, boolean bypass,
+                                     Supplier<Mono<String>> supplier) {
+        SemanticCache<String> cache = caches.get(route);
+        if (cache == null || !routeEnabled.get(route)) {
+            return Mono.defer(supplier);
+        }
+
+        String partition = pluginSet + "|" + deployment;
+        String key = partition + "|" + Prompts.normalize(input);
+
+        return Mono.defer(() -> {
+            long generation = cache.generation();
+            if (bypass) {
+                bypasses.incrementAndGet();
+            } else {
+                String cached = cache.getExact(key);
+                if (cached != null) {
+                    return Mono.just(cached);
+                }
+            }
+
+            Mono<Optional<float[]>> vector = similarityEnabled
+                    ? embed(input)
+                    : Mono.just(Optional.empty());
+            return vector.flatMap(queryVector -> {
+                if (!bypass) {
+                    String cached = cache.getSimilar(partition, queryVector.orElse(null));
+                    if (cached != null) {
+                        return Mono.just(cached);
+                    }
+                }
+                return Mono.defer(supplier).doOnNext(answer -> {
+                    if (!answer.startsWith("Error:")) {
+                        cache.put(key, partition, queryVector.orElse(null), answer, generation);
+                    }
+                });
+            });
+        });
+    }
+
+    public void invalidate(String route) {
+        SemanticCache<String> cache = caches.get(route);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return "answerCache";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, SemanticCache<String>> entry : caches.entrySet()) {
+            Map<String, Object> routeStats = entry.getValue().getStats();
+            routeStats.put("enabled", routeEnabled.get(entry.getKey()));
+            stats.put(entry.getKey(), routeStats);
+        }
+        stats.put("similarityEnabled", similarityEnabled);
+        stats.put("bypasses", bypasses.get());
+        return stats;
+    }
+
+    private Mono<Optional<float[]>> embed(String input) {
+        return kernelUtil.generateEmbeddings(Collections.singletonList(input))
+                .map(embeddings -> embeddings.isEmpty()
+                        ? Optional.<float[]>empty()
+                        : Optional.of(VectorMath.normalize(embeddings.get(0).getVector())))
+                .onErrorResume(e -> {
+                    // Similarity matching is best effort; fall back to exact matching only
+                    System.err.println("Answer cache embedding failed: " + e.getMessage());
+                    return Mono.just(Optional.empty());
+                });
+    }
+}
@@ -0,0 +1,23 @@
+package com.sk.cache;
+
+import java.util.Locale;
+
+/**
+ * Helpers for building cache and coalescing keys out of user prompts.
+ */
+public final class Prompts {
+
+    private Prompts() {
+    }
+
+    /**
+     * Lower-cases the prompt, collapses whitespace and drops trailing punctuation, so
+     * that "How many vacation days?" and "how many  vacation days" share a key.
+     */
+    public static String normalize(String input) {
+        return input.trim()
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[\\p{Punct}]+$", "")
+                .replaceAll("\\s+", " ");
+    }
+}
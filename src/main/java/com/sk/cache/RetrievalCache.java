@@ -0,0 +1,77 @@
+package com.sk.cache;
+
+import com.sk.config.CacheConfig;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caches AISearchPlugin results by query text and by query embedding, so that
+ * paraphrased handbook questions reuse the chunks found for an earlier query
+ * instead of going back to Azure AI Search.
+ */
+@Component
+public class RetrievalCache implements StatsSource {
+
+    private final boolean enabled;
+    private final SemanticCache<String> cache;
+
+    @Autowired
+    public RetrievalCache(CacheConfig cacheConfig) {
+        this.enabled = cacheConfig.isRetrievalEnabled();
+        this.cache = new SemanticCache<>("retrieval",
+                cacheConfig.getRetrievalMaxEntries(),
+                Duration.ofSeconds(cacheConfig.getRetrievalTtlSeconds()),
+                cacheConfig.getRetrievalSimilarityThreshold());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long generation() {
+        return cache.generation();
+    }
+
+    public String getExact(String index, String query) {
+        return enabled ? cache.getExact(key(index, query)) : null;
+    }
+
+    public String getSimilar(String index, float[] queryVector) {
+        return enabled ? cache.getSimilar(index, queryVector) : null;
+    }
+
+    public void put(String index, String query, float[] queryVector, String result, long generation) {
+        if (enabled) {
+            cache.put(key(index, query), index, queryVector, result, generation);
+        }
+    }
+
+    /**
+     * Drops every cached result. Called after the search index has been re-ingested.
+     */
+    public void invalidate() {
+        cache.invalidateAll();
+        System.out.println("Retrieval cache invalidated");
+    }
+
+    @Override
+    public String getStatsName() {
+        return "retrievalCache";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = cache.getStats();
+        stats.put("enabled", enabled);
+        return stats;
+    }
+
+    private static String key(String index, String query) {
+        return index + "|" + query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
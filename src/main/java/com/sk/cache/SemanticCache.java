@@ -0,0 +1,166 @@
+package com.sk.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache whose entries can be found either by their exact key or by the
+ * cosine similarity of an embedding stored next to the value.
+ *
+ * Lookups are expected in two steps: {@link #getExact} first, which is free, then
+ * {@link #getSimilar} once an embedding for the query is available. Only the second
+ * step records a miss, so hit rates add up to one lookup per query.
+ *
+ * @param <V> the cached value type
+ */
+public class SemanticCache<V> {
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double similarityThreshold;
+
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private long generation;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong similarHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SemanticCache(String name, int maxEntries, Duration ttl, double similarityThreshold) {
+        this.name = name;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttl.toMillis();
+        this.similarityThreshold = similarityThreshold;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > SemanticCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Generation counter captured before starting the expensive work, so that a result
+     * computed against data that has since been invalidated is not stored.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized V getExact(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            entries.remove(key);
+            return null;
+        }
+        exactHits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Returns the value whose embedding is closest to the given one within the same
+     * partition, provided the similarity reaches the configured threshold.
+     */
+    public synchronized V getSimilar(String partition, float[] vector) {
+        if (vector != null) {
+            long now = System.currentTimeMillis();
+            Entry<V> best = null;
+            double bestScore = similarityThreshold;
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry<V> entry = iterator.next();
+                if (isExpired(entry, now)) {
+                    iterator.remove();
+                    continue;
+                }
+                if (entry.vector == null || !entry.partition.equals(partition)) {
+                    continue;
+                }
+                double score = VectorMath.cosine(vector, entry.vector);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = entry;
+                }
+            }
+            if (best != null) {
+                // touch the entry so it moves to the young end of the LRU order
+                entries.get(best.key);
+                similarHits.incrementAndGet();
+                return best.value;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public synchronized void put(String key, String partition, float[] vector, V value, long expectedGeneration) {
+        if (expectedGeneration != generation) {
+            return;
+        }
+        entries.put(key, new Entry<>(key, partition, vector, value, System.currentTimeMillis()));
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+        invalidations.incrementAndGet();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> getStats() {
+        long exact = exactHits.get();
+        long similar = similarHits.get();
+        long miss = misses.get();
+        long total = exact + similar + miss;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("exactHits", exact);
+        stats.put("similarHits", similar);
+        stats.put("misses", miss);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (exact + similar) / total);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlMillis > 0 && now - entry.createdAt > ttlMillis;
+    }
+
+    private static final class Entry<V> {
+        private final String key;
+        private final String partition;
+        private final float[] vector;
+        private final V value;
+        private final long createdAt;
+
+        private Entry(String key, String partition, float[] vector, V value, long createdAt) {
+            this.key = key;
+            this.partition = partition;
+            this.vector = vector;
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sk.cache;
+
+import java.util.List;
+
+/**
+ * Small helpers for comparing embedding vectors.
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * Copies an embedding into a primitive array scaled to unit length, so that
+     * cosine similarity between two normalized vectors is a plain dot product.
+     */
+    public static float[] normalize(List<Float> vector) {
+        float[] values = new float[vector.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = vector.get(i);
+        }
+        return normalize(values);
+    }
+
+    public static float[] normalize(float[] values) {
+        double norm = 0;
+        for (float value : values) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return values;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= scale;
+        }
+        return values;
+    }
+
+    /**
+     * Cosine similarity of two vectors that were produced by {@link #normalize}.
+     */
+    public static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
@@ -4,15 +4,16 @@ import com.microsoft.semantickernel.Kernel;
 import com.microsoft.semantickernel.orchestration.InvocationContext;
 import com.microsoft.semantickernel.services.ServiceNotFoundException;
 import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
-import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
-import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.history.HistoryManager;
+import com.sk.history.ManagedChatHistory;
 import com.sk.kernel.kernelUtil;
+import com.sk.kernel.chat.ChatRoute;
+import com.sk.service.ConversationMailbox;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.annotation.SessionScope;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Executes an OpenAI function with the given input.
@@ -23,43 +24,55 @@ import java.util.List;
  * @throws ServiceNotFoundException If the specified service is not found.
  */
 @Component
-@SessionScope
 public class chapter2 {
 
     private final kernelUtil kernelUtil;
-    private final ChatHistory chatHistory;
+    private final HistoryManager historyManager;
+    private final ConversationMailbox mailbox;
 
     @Autowired
-    public chapter2(kernelUtil kernelUtil) {
+    public chapter2(kernelUtil kernelUtil, HistoryManager historyManager, ConversationMailbox mailbox) {
         this.kernelUtil = kernelUtil;
-        this.chatHistory = new ChatHistory();
+        this.historyManager = historyManager;
+        this.mailbox = mailbox;
     }
 
-    public String SendMessage(String input) throws IOException, ServiceNotFoundException {
+    /*
+     * Turns of one session run one at a time through the conversation mailbox, so a
+     * double submit cannot interleave two turns on the same history.
+     */
+    public Mono<String> sendMessageAsync(String conversationId, String input) {
+        return mailbox.submit("chapter2:" + conversationId, () -> {
+            try {
+                Kernel kernel = kernelUtil.kernelBuilderWithoutPlugin();
 
-        Kernel kernel = kernelUtil.kernelBuilderWithoutPlugin();
+                // Challenge 2 for Create chatCompletionService
+                ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
 
-        // Challenge 2 for Create chatCompletionService
-        ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
+                // Add user message to chat history
+                ManagedChatHistory chatHistory = historyManager.open("chapter2", conversationId);
+                chatHistory.addUserMessage(input);
 
-        // Add user message to chat history
-        chatHistory.addUserMessage(input);
+                InvocationContext optionalInvocationContext = null;
 
-        InvocationContext optionalInvocationContext = null;
+                // Only the summary and the recent window within the token budget are sent
+                return chatCompletionService.getChatMessageContentsAsync(
+                        chatHistory.toChatHistory(),
+                        kernel,
+                        optionalInvocationContext
+                ).flatMap(response -> {
+                    if (response == null || response.isEmpty()) {
+                        return Mono.error(new ServiceNotFoundException("No response from the service"));
+                    }
 
-        List<ChatMessageContent<?>> response = chatCompletionService.getChatMessageContentsAsync(
-                chatHistory,
-                kernel,
-                optionalInvocationContext
-        ).block();
+                    // Add AI response to chat history
+                    chatHistory.addAssistantMessage(response.get(0).getContent());
 
-        if (response == null || response.isEmpty()) {
-            throw new ServiceNotFoundException("No response from the service");
-        }
-
-        // Add AI response to chat history
-        chatHistory.addAssistantMessage(response.get(0).getContent());
-
-        return response.get(0).getContent();
+                    return Mono.just(response.get(0).getContent());
+                }).contextWrite(ChatRoute.named("chapter2"));
+            } catch (IOException | ServiceNotFoundException e) {
+                return Mono.error(e);
+            }
+        });
     }
 }
\ No newline at end of file
@@ -11,13 +11,19 @@ import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
 import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
 import com.sk.config.AzureAIConfig;
 import com.sk.kernel.kernelUtil;
+import com.sk.deadline.Deadline;
+import com.sk.kernel.chat.ChatRoute;
 import com.sk.plugins.DateTimePlugin;
+import com.sk.plugins.GeocodingClient;
 import com.sk.plugins.GeocodingPlugin;
 import com.sk.plugins.WeatherPlugin;
+import com.sk.tools.ContextEnricher;
+import com.sk.tools.ToolCalls;
+import com.sk.tools.ToolTurn;
+import com.sk.tools.ToolSelector;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.context.annotation.SessionScope;
 
 import java.io.IOException;
 import java.util.List;
@@ -32,7 +38,6 @@ import java.util.List;
  */
 
 @Component
-@SessionScope
 public class chapter3 {
 
     private final kernelUtil kernelUtil;
@@ -40,34 +45,53 @@ public class chapter3 {
 
     private final RestTemplate restTemplate;
 
+    private final GeocodingClient geocodingClient;
+
+    private final ToolSelector toolSelector;
+
+    private final ContextEnricher contextEnricher;
+
+    private final ToolCalls toolCalls;
+
     @Autowired
-    public chapter3(kernelUtil kernelUtil, AzureAIConfig azureAIConfig, RestTemplate restTemplate) {
+    public chapter3(kernelUtil kernelUtil, AzureAIConfig azureAIConfig, RestTemplate restTemplate,
+                    GeocodingClient geocodingClient, ToolSelector toolSelector, ContextEnricher contextEnricher,
+                    ToolCalls toolCalls) {
         this.kernelUtil = kernelUtil;
         this.azureAIConfig = azureAIConfig;
         this.restTemplate = restTemplate;
+        this.geocodingClient = geocodingClient;
+        this.toolSelector = toolSelector;
+        this.contextEnricher = contextEnricher;
+        this.toolCalls = toolCalls;
     }
 
 
     public String sendMessage(String input) throws IOException, ServiceNotFoundException {
 
-        Kernel kernel = AddPlugins();
-
-        // Challenge 03 for Create the InvocationContext
-        InvocationContext invocationContext = InvocationContext.builder()
-                .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true))
-                .withReturnMode(InvocationReturnMode.LAST_MESSAGE_ONLY)
-                .build();
+        Kernel kernel = AddPlugins(toolCalls.newTurn());
 
         ChatHistory chatHistory = new ChatHistory();
         chatHistory.addUserMessage(input);
         ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
 
+        // The current date and time go into the prompt instead of costing a tool call
+        ChatHistory enriched = contextEnricher.enrich(chatHistory, input);
+
+        // Challenge 03 for Create the InvocationContext, advertising only the functions relevant to the input
         // Invoke the chat completion service with the kernel and invocation context
-        List<ChatMessageContent<?>> response = chatCompletionService.getChatMessageContentsAsync(
-                chatHistory,
-                kernel,
-                invocationContext
-        ).block();
+        List<ChatMessageContent<?>> response = toolSelector
+                .invocationContext(kernel, null, input, InvocationReturnMode.LAST_MESSAGE_ONLY,
+                        contextEnricher.coveredFunctions(kernel))
+                .flatMap(invocationContext -> chatCompletionService.getChatMessageContentsAsync(
+                        enriched,
+                        kernel,
+                        invocationContext
+                ))
+                .contextWrite(ChatRoute.named("chapter3"))
+                // the request thread waits here, but no longer than the request's deadline
+                .transform(Deadline::enforceCurrent)
+                .block();
 
         if (response == null || response.isEmpty()) {
             throw new ServiceNotFoundException("No response from the service");
@@ -75,16 +99,16 @@ public class chapter3 {
         return response.get(0).getContent();
     }
 
-    private Kernel AddPlugins() throws IOException {
+    private Kernel AddPlugins(ToolTurn turn) throws IOException {
         // Challenge 03 START for Create the DateTimePlugin
         KernelPlugin dateTimePlugin = KernelPluginFactory
                 .createFromObject(new DateTimePlugin(), "DateTimePlugin");
 
         KernelPlugin geoPlugin = KernelPluginFactory
-                .createFromObject(new GeocodingPlugin(azureAIConfig,restTemplate), "GeocodingPlugin");
+                .createFromObject(new GeocodingPlugin(geocodingClient,turn), "GeocodingPlugin");
 
         KernelPlugin weatherPlugin = KernelPluginFactory
-                .createFromObject(new WeatherPlugin(azureAIConfig,restTemplate), "WeatherPlugin");
+                .createFromObject(new WeatherPlugin(azureAIConfig,restTemplate,turn), "WeatherPlugin");
 
         Kernel kernel = kernelUtil.kernelBuilder(List.of(dateTimePlugin,geoPlugin,weatherPlugin));
         // Challenge 03 END
@@ -10,15 +10,20 @@ import com.microsoft.semantickernel.services.ServiceNotFoundException;
 import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
 import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
 import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.cache.RetrievalCache;
 import com.sk.config.AzureAIConfig;
+import com.sk.dependency.Dependencies;
 import com.sk.kernel.kernelUtil;
+import com.sk.kernel.chat.ChatRoute;
 import com.sk.plugins.AISearchPlugin;
 import com.sk.plugins.DateTimePlugin;
 import com.sk.plugins.GeocodingPlugin;
 import com.sk.plugins.WeatherPlugin;
+import com.sk.tools.ToolCalls;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.List;
@@ -39,45 +44,65 @@ public class chapter4 {
     private final AzureAIConfig azureAIConfig;
 
     private final RestTemplate restTemplate;
+    private final RetrievalCache retrievalCache;
+    private final Dependencies dependencies;
+    private final ToolCalls toolCalls;
 
     @Autowired
-    public chapter4(kernelUtil kernelUtil, AzureAIConfig azureAIConfig, RestTemplate restTemplate) {
+    public chapter4(kernelUtil kernelUtil, AzureAIConfig azureAIConfig, RestTemplate restTemplate,
+                    RetrievalCache retrievalCache, Dependencies dependencies, ToolCalls toolCalls) {
         this.kernelUtil = kernelUtil;
         this.azureAIConfig = azureAIConfig;
         this.restTemplate = restTemplate;
+        this.retrievalCache = retrievalCache;
+        this.dependencies = dependencies;
+        this.toolCalls = toolCalls;
     }
 
 
-    public String sendMessage(String input) throws IOException, ServiceNotFoundException {
-
-        // Challenge 03 for Create the DateTimePlugin
-        KernelPlugin AISearch = KernelPluginFactory
-                .createFromObject(new AISearchPlugin(azureAIConfig,kernelUtil), "AISearchPlugin");
-
-
-
-        Kernel kernel = kernelUtil.kernelBuilder(List.of(AISearch));
-
-        // Challenge 03 for Create the InvocationContext
-        InvocationContext invocationContext = InvocationContext.builder()
-                .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true))
-                .withReturnMode(InvocationReturnMode.LAST_MESSAGE_ONLY)
-                .build();
-
-        ChatHistory chatHistory = new ChatHistory();
-        chatHistory.addUserMessage(input);
-        ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
-
-        // Invoke the chat completion service with the kernel and invocation context
-        List<ChatMessageContent<?>> response = chatCompletionService.getChatMessageContentsAsync(
-                chatHistory,
-                kernel,
-                invocationContext
-        ).block();
+    /*
+     * chapter4 keeps no conversation state, so the whole call is returned as a Mono that
+     * callers can share between identical concurrent requests and cancel on disconnect.
+     * A shared call belongs to no single request, so its tools get the configured budget
+     * rather than one caller's deadline.
+     */
+    public Mono<String> sendMessageAsync(String input) {
+        return Mono.defer(() -> {
+            try {
+                // Challenge 03 for Create the DateTimePlugin
+                KernelPlugin AISearch = KernelPluginFactory
+                        .createFromObject(new AISearchPlugin(azureAIConfig,kernelUtil,retrievalCache,dependencies,toolCalls.newTurn(null)), "AISearchPlugin");
+
+
+
+                Kernel kernel = kernelUtil.kernelBuilder(List.of(AISearch));
+
+                // Challenge 03 for Create the InvocationContext
+                InvocationContext invocationContext = InvocationContext.builder()
+                        .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true))
+                        .withReturnMode(InvocationReturnMode.LAST_MESSAGE_ONLY)
+                        .build();
+
+                ChatHistory chatHistory = new ChatHistory();
+                chatHistory.addUserMessage(input);
+                ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
+
+                // Invoke the chat completion service with the kernel and invocation context
+                return chatCompletionService.getChatMessageContentsAsync(
+                        chatHistory,
+                        kernel,
+                        invocationContext
+                ).flatMap(chapter4::firstContent);
+            } catch (IOException | ServiceNotFoundException e) {
+                return Mono.error(e);
+            }
+        }).contextWrite(ChatRoute.named("chapter4"));
+    }
 
+    private static Mono<String> firstContent(List<ChatMessageContent<?>> response) {
         if (response == null || response.isEmpty()) {
-            throw new ServiceNotFoundException("No response from the service");
+            return Mono.error(new ServiceNotFoundException("No response from the service"));
         }
-        return response.get(0).getContent();
+        return Mono.just(response.get(0).getContent());
     }
 }
@@ -12,10 +12,13 @@ package com.sk.chapters;
         import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
         import com.sk.config.AzureAIConfig;
         import com.sk.kernel.kernelUtil;
+        import com.sk.kernel.chat.ChatRoute;
         import com.sk.plugins.AISearchPlugin;
+        import com.sk.ratelimit.AdmissionRejectedException;
         import org.springframework.beans.factory.annotation.Autowired;
         import org.springframework.stereotype.Component;
         import org.springframework.web.client.RestTemplate;
+        import reactor.core.publisher.Mono;
 
         import java.io.IOException;
         import java.nio.file.Path;
@@ -35,42 +38,50 @@ package com.sk.chapters;
                 this.restTemplate = restTemplate;
             }
 
-            public String sendMessage(String input) {
-                try {
-                    // Challenge 03 for Create the DateTimePlugin
-                    KernelPlugin foodplugin = KernelPluginFactory
-                            .importPluginFromDirectory(Path.of("src/main/resources"),
-                                    "promptconfig", null);
+            public Mono<String> sendMessageAsync(String input) {
+                return Mono.defer(() -> {
+                    try {
+                        // Challenge 03 for Create the DateTimePlugin
+                        KernelPlugin foodplugin = KernelPluginFactory
+                                .importPluginFromDirectory(Path.of("src/main/resources"),
+                                        "promptconfig", null);
 
-                    Kernel kernel = kernelUtil.kernelBuilder(List.of(foodplugin));
+                        Kernel kernel = kernelUtil.kernelBuilder(List.of(foodplugin));
 
-                    // Challenge 03 for Create the InvocationContext
-                    InvocationContext invocationContext = InvocationContext.builder()
-                            .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true))
-                            .withReturnMode(InvocationReturnMode.LAST_MESSAGE_ONLY)
-                            .build();
+                        // Challenge 03 for Create the InvocationContext
+                        InvocationContext invocationContext = InvocationContext.builder()
+                                .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true))
+                                .withReturnMode(InvocationReturnMode.LAST_MESSAGE_ONLY)
+                                .build();
 
-                    ChatHistory chatHistory = new ChatHistory();
-                    chatHistory.addUserMessage(input);
-                    ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
+                        ChatHistory chatHistory = new ChatHistory();
+                        chatHistory.addUserMessage(input);
+                        ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
 
-                    // Invoke the chat completion service with the kernel and invocation context
-                    List<ChatMessageContent<?>> response = chatCompletionService.getChatMessageContentsAsync(
-                            chatHistory,
-                            kernel,
-                            invocationContext
-                    ).block();
-
-                    if (response == null || response.isEmpty()) {
-                        throw new ServiceNotFoundException("No response from the service");
+                        // Invoke the chat completion service with the kernel and invocation context
+                        return chatCompletionService.getChatMessageContentsAsync(
+                                chatHistory,
+                                kernel,
+                                invocationContext
+                        ).flatMap(response -> {
+                            if (response == null || response.isEmpty()) {
+                                return Mono.error(new ServiceNotFoundException("No response from the service"));
+                            }
+                            return Mono.just(response.get(0).getContent());
+                        });
+                    } catch (Exception e) {
+                        return Mono.error(e);
+                    }
+                }).onErrorResume(e -> {
+                    if (e instanceof AdmissionRejectedException) {
+                        // Load shedding must reach the client as a 503, not as an answer
+                        return Mono.error(e);
+                    } else if (e instanceof IOException) {
+                        return Mono.just("Error: I/O exception occurred - " + e.getMessage());
+                    } else if (e instanceof ServiceNotFoundException) {
+                        return Mono.just("Error: Service not found - " + e.getMessage());
                     }
-                    return response.get(0).getContent();
-                } catch (IOException e) {
-                    return "Error: I/O exception occurred - " + e.getMessage();
-                } catch (ServiceNotFoundException e) {
-                    return "Error: Service not found - " + e.getMessage();
-                } catch (Exception e) {
-                    return "Error: An unexpected error occurred - " + e.getMessage();
-                }
+                    return Mono.just("Error: An unexpected error occurred - " + e.getMessage());
+                }).contextWrite(ChatRoute.named("chapter5"));
             }
         }
\ No newline at end of file
@@ -1,29 +1,34 @@
 package com.sk.chapters;
 
-import com.azure.ai.openai.OpenAIAsyncClient;
-import com.azure.ai.openai.OpenAIClientBuilder;
-import com.azure.core.credential.AzureKeyCredential;
 import com.microsoft.semantickernel.Kernel;
-import com.microsoft.semantickernel.aiservices.openai.chatcompletion.OpenAIChatCompletion;
 import com.microsoft.semantickernel.orchestration.InvocationContext;
 import com.microsoft.semantickernel.orchestration.InvocationReturnMode;
-import com.microsoft.semantickernel.orchestration.ToolCallBehavior;
 import com.microsoft.semantickernel.plugin.KernelPlugin;
 import com.microsoft.semantickernel.plugin.KernelPluginFactory;
 import com.microsoft.semantickernel.services.ServiceNotFoundException;
 import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
-import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
-import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.cache.RetrievalCache;
 import com.sk.config.AzureAIConfig;
+import com.sk.deadline.Deadline;
+import com.sk.dependency.Dependencies;
+import com.sk.history.HistoryManager;
+import com.sk.history.ManagedChatHistory;
 import com.sk.kernel.kernelUtil;
+import com.sk.kernel.chat.ChatRoute;
 import com.sk.plugins.AISearchPlugin;
 import com.sk.plugins.DateTimePlugin;
+import com.sk.plugins.GeocodingClient;
 import com.sk.plugins.GeocodingPlugin;
 import com.sk.plugins.WeatherPlugin;
+import com.sk.service.ConversationMailbox;
+import com.sk.tools.ContextEnricher;
+import com.sk.tools.ToolCalls;
+import com.sk.tools.ToolSelector;
+import com.sk.tools.ToolTurn;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.context.annotation.SessionScope;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -38,71 +43,97 @@ import java.util.List;
  * @throws ServiceNotFoundException If the specified service is not found.
  */
 @Component
-@SessionScope
 public class mainChapter {
 
     private final kernelUtil kernelUtil;
-    private final ChatHistory chatHistory;
+    private final HistoryManager historyManager;
    private final AzureAIConfig config;
    private final RestTemplate restTemplate;
+   private final GeocodingClient geocodingClient;
+   private final RetrievalCache retrievalCache;
+    private final ConversationMailbox mailbox;
+    private final ToolSelector toolSelector;
+    private final ContextEnricher contextEnricher;
+    private final ToolCalls toolCalls;
+    private final Dependencies dependencies;
 
     @Autowired
-    public mainChapter(kernelUtil kernelUtil, AzureAIConfig config, RestTemplate restTemplate) {
+    public mainChapter(kernelUtil kernelUtil, AzureAIConfig config, RestTemplate restTemplate,
+                       GeocodingClient geocodingClient, RetrievalCache retrievalCache, HistoryManager historyManager, ConversationMailbox mailbox,
+                       ToolSelector toolSelector, ContextEnricher contextEnricher, ToolCalls toolCalls,
+                       Dependencies dependencies) {
         this.kernelUtil = kernelUtil;
-        this.chatHistory = new ChatHistory();
+        this.historyManager = historyManager;
+        this.mailbox = mailbox;
+        this.toolSelector = toolSelector;
+        this.contextEnricher = contextEnricher;
+        this.toolCalls = toolCalls;
+        this.dependencies = dependencies;
         this.config = config;
         this.restTemplate = restTemplate;
+        this.geocodingClient = geocodingClient;
+        this.retrievalCache = retrievalCache;
     }
 
-    public String SendMessage(String input) throws IOException, ServiceNotFoundException {
-
-        //For Chapter 2, Uncomment the below line
-        //Kernel kernel =kernelBuilder(null);
-
-        //For Chapter 3, comment the previous line and Uncomment the below line
-        Kernel kernel =AddPlugins();
-
-        // Challenge 2 for Create chatCompletionService
-        ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
-
-        // Add user message to chat history
-        chatHistory.addUserMessage(input);
-
-
-        // Challenge 03 for Create the InvocationContext
-        InvocationContext invocationContext = InvocationContext.builder()
-                .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true))
-                .withReturnMode(InvocationReturnMode.LAST_MESSAGE_ONLY)
-                .build();
-
-        List<ChatMessageContent<?>> response = chatCompletionService.getChatMessageContentsAsync(
-                chatHistory,
-                kernel,
-                invocationContext
-        ).block();
-
-        if (response == null || response.isEmpty()) {
-            throw new ServiceNotFoundException("No response from the service");
-        }
-
-        // Add AI response to chat history
-        chatHistory.addAssistantMessage(response.get(0).getContent());
+    public String SendMessage(String conversationId, String input) throws IOException, ServiceNotFoundException {
+        return Deadline.enforceCurrent(sendMessageAsync(conversationId, input)).block();
+    }
 
-        return response.get(0).getContent();
+    /*
+     * Turns of one session run one at a time through the conversation mailbox, so two
+     * concurrent messages cannot interleave on the same history.
+     */
+    public Mono<String> sendMessageAsync(String conversationId, String input) {
+        return mailbox.submit("mainChapter:" + conversationId, () -> Mono.deferContextual(context -> {
+            try {
+                //For Chapter 2, Uncomment the below line
+                //Kernel kernel =kernelBuilder(null);
+
+                //For Chapter 3, comment the previous line and Uncomment the below line
+                // the plugins of this turn share its tool-call limit and what is left of its deadline
+                Kernel kernel =AddPlugins(toolCalls.newTurn(Deadline.from(context)));
+
+                // Challenge 2 for Create chatCompletionService
+                ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
+
+                // Add user message to chat history
+                ManagedChatHistory chatHistory = historyManager.open("mainChapter", conversationId);
+                chatHistory.addUserMessage(input);
+
+
+                // Challenge 03 for Create the InvocationContext, advertising only the functions relevant to this turn
+                Mono<InvocationContext> invocationContext = toolSelector.invocationContext(kernel,
+                        "mainChapter:" + conversationId, input, InvocationReturnMode.LAST_MESSAGE_ONLY,
+                        contextEnricher.coveredFunctions(kernel));
+
+                // Only the summary, the recalled earlier exchanges and the recent window are sent,
+                // with the current date and time before the new message
+                return Mono.zip(chatHistory.prepare(), invocationContext)
+                        .flatMap(turn -> chatCompletionService.getChatMessageContentsAsync(
+                                contextEnricher.enrich(turn.getT1(), input),
+                                kernel,
+                                turn.getT2()
+                        ))
+                        .flatMap(response -> {
+                            if (response == null || response.isEmpty()) {
+                                return Mono.error(new ServiceNotFoundException("No response from the service"));
+                            }
+
+                            // Add AI response to chat history
+                            chatHistory.addAssistantMessage(response.get(0).getContent());
+
+                            return Mono.just(response.get(0).getContent());
+                        })
+                        .contextWrite(ChatRoute.named("mainChapter"));
+            } catch (IOException | ServiceNotFoundException e) {
+                return Mono.error(e);
+            }
+        }));
     }
 
     public Kernel kernelBuilder(List<KernelPlugin> plugins) throws IOException {
 
-        OpenAIAsyncClient clientasync = new OpenAIClientBuilder()
-                .credential(new AzureKeyCredential(config.getOpenAiApiKey()))
-                .endpoint(config.getOpenAiEndpoint())
-                .buildAsyncClient();
-
-
-        ChatCompletionService chatCompletion = OpenAIChatCompletion.builder()
-                .withOpenAIAsyncClient(clientasync)
-                .withModelId(config.getChatDeploymentName())
-                .build();
+        ChatCompletionService chatCompletion = kernelUtil.chatCompletionService();
 
         Kernel kernel = null;
 
@@ -119,20 +150,20 @@ public class mainChapter {
 
     }
 
-    private Kernel AddPlugins() throws IOException {
+    private Kernel AddPlugins(ToolTurn turn) throws IOException {
         // Challenge 03 START for Create the DateTimePlugin
         KernelPlugin dateTimePlugin = KernelPluginFactory
                 .createFromObject(new DateTimePlugin(), "DateTimePlugin");
 
         KernelPlugin geoPlugin = KernelPluginFactory
-                .createFromObject(new GeocodingPlugin(config,restTemplate), "GeocodingPlugin");
+                .createFromObject(new GeocodingPlugin(geocodingClient,turn), "GeocodingPlugin");
 
         KernelPlugin weatherPlugin = KernelPluginFactory
-                .createFromObject(new WeatherPlugin(config,restTemplate), "WeatherPlugin");
+                .createFromObject(new WeatherPlugin(config,restTemplate,turn), "WeatherPlugin");
 
         // Challenge 04, Uncomment bellow line for AI search plugin and add the plugin to the list
         KernelPlugin AISearch = KernelPluginFactory
-                .createFromObject(new AISearchPlugin(config,kernelUtil), "AISearchPlugin");
+                .createFromObject(new AISearchPlugin(config,kernelUtil,retrievalCache,dependencies,turn), "AISearchPlugin");
 
         // Challenge 05, Uncomment bellow line for food plugin and add the plugin to the list
        /* KernelPlugin foodplugin = KernelPluginFactory
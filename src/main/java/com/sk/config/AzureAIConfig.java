@@ -1,13 +1,21 @@
 package com.sk.config;
 
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
 
 
 @Configuration
 public class AzureAIConfig {
 
+    @Autowired
+    private Environment environment;
+
     @Value("${spring.application.name}")
     private String applicationName;
 
@@ -20,6 +28,81 @@ public class AzureAIConfig {
     @Value("${spring.ai.azure.openai.chat.deployment-name}")
     private String chatDeploymentName;
 
+    @Value("${spring.ai.azure.openai.chat.tokens-per-minute:30000}")
+    private int chatTokensPerMinute;
+
+    @Value("${spring.ai.azure.openai.chat.requests-per-minute:180}")
+    private int chatRequestsPerMinute;
+
+    @Value("${spring.ai.azure.openai.chat.expected-completion-tokens:800}")
+    private int chatExpectedCompletionTokens;
+
+    @Value("${spring.ai.azure.openai.embedding.tokens-per-minute:120000}")
+    private int embeddingTokensPerMinute;
+
+    @Value("${spring.ai.azure.openai.embedding.requests-per-minute:720}")
+    private int embeddingRequestsPerMinute;
+
+    @Value("${spring.ai.azure.openai.admission.max-queue-wait-ms:5000}")
+    private long admissionMaxQueueWaitMs;
+
+    @Value("${spring.ai.azure.openai.admission.max-retries:3}")
+    private int admissionMaxRetries;
+
+    @Value("${spring.ai.azure.openai.admission.base-backoff-ms:500}")
+    private long admissionBaseBackoffMs;
+
+    @Value("${spring.ai.azure.openai.chat.fast-deployment-name:}")
+    private String fastDeploymentName;
+
+    @Value("${spring.ai.azure.openai.chat.fast-tokens-per-minute:60000}")
+    private int fastTokensPerMinute;
+
+    @Value("${spring.ai.azure.openai.chat.fast-requests-per-minute:360}")
+    private int fastRequestsPerMinute;
+
+    @Value("${spring.ai.azure.openai.routing.default-mode:auto}")
+    private String routingDefaultMode;
+
+    @Value("${spring.ai.azure.openai.routing.classifier.enabled:false}")
+    private boolean routingClassifierEnabled;
+
+    @Value("${spring.ai.azure.openai.routing.long-prompt-tokens:1500}")
+    private int routingLongPromptTokens;
+
+    @Value("${spring.ai.azure.openai.routing.max-simple-messages:10}")
+    private int routingMaxSimpleMessages;
+
+    @Value("${spring.ai.azure.openai.routing.fast.cost-per-1k-tokens:0.0006}")
+    private double fastCostPer1kTokens;
+
+    @Value("${spring.ai.azure.openai.routing.large.cost-per-1k-tokens:0.03}")
+    private double largeCostPer1kTokens;
+
+    @Value("${spring.ai.azure.openai.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${spring.ai.azure.openai.hedge.percentile:0.9}")
+    private double hedgePercentile;
+
+    @Value("${spring.ai.azure.openai.hedge.min-delay-ms:1000}")
+    private long hedgeMinDelayMs;
+
+    @Value("${spring.ai.azure.openai.hedge.budget-percent:5}")
+    private double hedgeBudgetPercent;
+
+    @Value("${spring.ai.azure.openai.balancer.ewma-alpha:0.2}")
+    private double balancerEwmaAlpha;
+
+    @Value("${spring.ai.azure.openai.balancer.eject-after-failures:5}")
+    private int balancerEjectAfterFailures;
+
+    @Value("${spring.ai.azure.openai.balancer.eject-error-rate:0.5}")
+    private double balancerEjectErrorRate;
+
+    @Value("${spring.ai.azure.openai.balancer.ejection-seconds:30}")
+    private long balancerEjectionSeconds;
+
     @Value("${client.geo.url}")
     private String geourl;
 
@@ -27,6 +110,21 @@ public class AzureAIConfig {
     @Value("${client.geo.key}")
     private String geokey;
 
+    @Value("${client.geo.rate-limit.requests:1}")
+    private double geoRateLimitRequests;
+
+    @Value("${client.geo.rate-limit.period-ms:1000}")
+    private long geoRateLimitPeriodMs;
+
+    @Value("${client.geo.rate-limit.max-wait-ms:3000}")
+    private long geoRateLimitMaxWaitMs;
+
+    @Value("${client.geo.hedge-delay-ms:300}")
+    private long geoHedgeDelayMs;
+
+    @Value("${client.geo.max-variants:3}")
+    private int geoMaxVariants;
+
     @Value("${client.weather.url}")
     private String weatherurl;
 
@@ -43,6 +141,39 @@ public class AzureAIConfig {
     @Value("${client.azure.search.embedding.deployment}")
     private String embeddingDeploymentName;
 
+    @Value("${client.dependencies.timeout-percentile:0.99}")
+    private double dependencyTimeoutPercentile;
+
+    @Value("${client.dependencies.timeout-multiplier:2.0}")
+    private double dependencyTimeoutMultiplier;
+
+    @Value("${client.dependencies.min-timeout-ms:500}")
+    private long dependencyMinTimeoutMs;
+
+    @Value("${client.dependencies.max-timeout-ms:10000}")
+    private long dependencyMaxTimeoutMs;
+
+    @Value("${client.dependencies.max-retries:2}")
+    private int dependencyMaxRetries;
+
+    @Value("${client.dependencies.base-backoff-ms:100}")
+    private long dependencyBaseBackoffMs;
+
+    @Value("${client.dependencies.max-backoff-ms:2000}")
+    private long dependencyMaxBackoffMs;
+
+    @Value("${client.dependencies.retry-budget-percent:10}")
+    private double dependencyRetryBudgetPercent;
+
+    @Value("${client.dependencies.max-concurrent:32}")
+    private int dependencyMaxConcurrent;
+
+    @Value("${client.dependencies.threads:16}")
+    private int dependencyThreads;
+
+    @Value("${client.dependencies.queue:64}")
+    private int dependencyQueue;
+
     public String getEmbeddingDeploymentName() {
         return embeddingDeploymentName;
     }
@@ -99,6 +230,46 @@ public class AzureAIConfig {
         this.geokey = geokey;
     }
 
+    public double getGeoRateLimitRequests() {
+        return geoRateLimitRequests;
+    }
+
+    public void setGeoRateLimitRequests(double geoRateLimitRequests) {
+        this.geoRateLimitRequests = geoRateLimitRequests;
+    }
+
+    public long getGeoRateLimitPeriodMs() {
+        return geoRateLimitPeriodMs;
+    }
+
+    public void setGeoRateLimitPeriodMs(long geoRateLimitPeriodMs) {
+        this.geoRateLimitPeriodMs = geoRateLimitPeriodMs;
+    }
+
+    public long getGeoRateLimitMaxWaitMs() {
+        return geoRateLimitMaxWaitMs;
+    }
+
+    public void setGeoRateLimitMaxWaitMs(long geoRateLimitMaxWaitMs) {
+        this.geoRateLimitMaxWaitMs = geoRateLimitMaxWaitMs;
+    }
+
+    public long getGeoHedgeDelayMs() {
+        return geoHedgeDelayMs;
+    }
+
+    public void setGeoHedgeDelayMs(long geoHedgeDelayMs) {
+        this.geoHedgeDelayMs = geoHedgeDelayMs;
+    }
+
+    public int getGeoMaxVariants() {
+        return geoMaxVariants;
+    }
+
+    public void setGeoMaxVariants(int geoMaxVariants) {
+        this.geoMaxVariants = geoMaxVariants;
+    }
+
     public String getApplicationName() {
         return applicationName;
     }
@@ -131,5 +302,383 @@ public class AzureAIConfig {
         this.chatDeploymentName = chatDeploymentName;
     }
 
-}
+    public int getChatTokensPerMinute() {
+        return chatTokensPerMinute;
+    }
+
+    public void setChatTokensPerMinute(int chatTokensPerMinute) {
+        this.chatTokensPerMinute = chatTokensPerMinute;
+    }
+
+    public int getChatRequestsPerMinute() {
+        return chatRequestsPerMinute;
+    }
+
+    public void setChatRequestsPerMinute(int chatRequestsPerMinute) {
+        this.chatRequestsPerMinute = chatRequestsPerMinute;
+    }
+
+    public int getChatExpectedCompletionTokens() {
+        return chatExpectedCompletionTokens;
+    }
+
+    public void setChatExpectedCompletionTokens(int chatExpectedCompletionTokens) {
+        this.chatExpectedCompletionTokens = chatExpectedCompletionTokens;
+    }
+
+    public int getEmbeddingTokensPerMinute() {
+        return embeddingTokensPerMinute;
+    }
+
+    public void setEmbeddingTokensPerMinute(int embeddingTokensPerMinute) {
+        this.embeddingTokensPerMinute = embeddingTokensPerMinute;
+    }
+
+    public int getEmbeddingRequestsPerMinute() {
+        return embeddingRequestsPerMinute;
+    }
+
+    public void setEmbeddingRequestsPerMinute(int embeddingRequestsPerMinute) {
+        this.embeddingRequestsPerMinute = embeddingRequestsPerMinute;
+    }
+
+    public long getAdmissionMaxQueueWaitMs() {
+        return admissionMaxQueueWaitMs;
+    }
+
+    public void setAdmissionMaxQueueWaitMs(long admissionMaxQueueWaitMs) {
+        this.admissionMaxQueueWaitMs = admissionMaxQueueWaitMs;
+    }
+
+    public int getAdmissionMaxRetries() {
+        return admissionMaxRetries;
+    }
+
+    public void setAdmissionMaxRetries(int admissionMaxRetries) {
+        this.admissionMaxRetries = admissionMaxRetries;
+    }
+
+    public long getAdmissionBaseBackoffMs() {
+        return admissionBaseBackoffMs;
+    }
+
+    public void setAdmissionBaseBackoffMs(long admissionBaseBackoffMs) {
+        this.admissionBaseBackoffMs = admissionBaseBackoffMs;
+    }
+
+    /**
+     * The primary endpoint followed by any additional ones declared as
+     * spring.ai.azure.openai.endpoints[n].endpoint, .api-key, .deployment-name, .name,
+     * .tokens-per-minute and .requests-per-minute. Missing values fall back to the
+     * primary endpoint's settings.
+     */
+    public List<ChatEndpointConfig> getChatEndpoints() {
+        List<ChatEndpointConfig> endpoints = new ArrayList<>();
+        ChatEndpointConfig primary = new ChatEndpointConfig();
+        primary.setName("primary");
+        primary.setEndpoint(openAiEndpoint);
+        primary.setApiKey(openAiApiKey);
+        primary.setDeploymentName(chatDeploymentName);
+        primary.setTokensPerMinute(chatTokensPerMinute);
+        primary.setRequestsPerMinute(chatRequestsPerMinute);
+        endpoints.add(primary);
+
+        for (int i = 0; ; i++) {
+            String prefix = "spring.ai.azure.openai.endpoints[" + i + "].";
+            String endpoint = environment.getProperty(prefix + "endpoint");
+            if (endpoint == null || endpoint.isEmpty()) {
+                break;
+            }
+            ChatEndpointConfig extra = new ChatEndpointConfig();
+            extra.setName(environment.getProperty(prefix + "name", "endpoint-" + (i + 1)));
+            extra.setEndpoint(endpoint);
+            extra.setApiKey(environment.getProperty(prefix + "api-key", openAiApiKey));
+            extra.setDeploymentName(environment.getProperty(prefix + "deployment-name", chatDeploymentName));
+            extra.setTokensPerMinute(environment.getProperty(prefix + "tokens-per-minute", Integer.class, chatTokensPerMinute));
+            extra.setRequestsPerMinute(environment.getProperty(prefix + "requests-per-minute", Integer.class, chatRequestsPerMinute));
+            endpoints.add(extra);
+        }
+        return endpoints;
+    }
+
+    public double getBalancerEwmaAlpha() {
+        return balancerEwmaAlpha;
+    }
+
+    public void setBalancerEwmaAlpha(double balancerEwmaAlpha) {
+        this.balancerEwmaAlpha = balancerEwmaAlpha;
+    }
+
+    public int getBalancerEjectAfterFailures() {
+        return balancerEjectAfterFailures;
+    }
+
+    public void setBalancerEjectAfterFailures(int balancerEjectAfterFailures) {
+        this.balancerEjectAfterFailures = balancerEjectAfterFailures;
+    }
+
+    public double getBalancerEjectErrorRate() {
+        return balancerEjectErrorRate;
+    }
+
+    public void setBalancerEjectErrorRate(double balancerEjectErrorRate) {
+        this.balancerEjectErrorRate = balancerEjectErrorRate;
+    }
+
+    public long getBalancerEjectionSeconds() {
+        return balancerEjectionSeconds;
+    }
+
+    public void setBalancerEjectionSeconds(long balancerEjectionSeconds) {
+        this.balancerEjectionSeconds = balancerEjectionSeconds;
+    }
+
+    public boolean isHedgeEnabled() {
+        return hedgeEnabled;
+    }
+
+    public void setHedgeEnabled(boolean hedgeEnabled) {
+        this.hedgeEnabled = hedgeEnabled;
+    }
 
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public long getHedgeMinDelayMs() {
+        return hedgeMinDelayMs;
+    }
+
+    public void setHedgeMinDelayMs(long hedgeMinDelayMs) {
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+    }
+
+    public double getHedgeBudgetPercent() {
+        return hedgeBudgetPercent;
+    }
+
+    public void setHedgeBudgetPercent(double hedgeBudgetPercent) {
+        this.hedgeBudgetPercent = hedgeBudgetPercent;
+    }
+
+    /**
+     * The routing mode of a route, from spring.ai.azure.openai.routing.routes.&lt;route&gt;
+     * ("auto", "fast" or "large"), falling back to the default mode.
+     */
+    public String getRoutingMode(String route) {
+        return environment.getProperty("spring.ai.azure.openai.routing.routes." + route, routingDefaultMode);
+    }
+
+    /*
+     * Each setting of an upstream dependency (geo, weather, search, embeddings, chat) is read from
+     * client.dependencies.<name>.<setting>, falling back to client.dependencies.<setting>.
+     */
+
+    public double getDependencyTimeoutPercentile(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".timeout-percentile", Double.class, dependencyTimeoutPercentile);
+    }
+
+    public double getDependencyTimeoutMultiplier(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".timeout-multiplier", Double.class, dependencyTimeoutMultiplier);
+    }
+
+    public long getDependencyMinTimeoutMs(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".min-timeout-ms", Long.class, dependencyMinTimeoutMs);
+    }
+
+    public long getDependencyMaxTimeoutMs(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".max-timeout-ms", Long.class, dependencyMaxTimeoutMs);
+    }
+
+    public int getDependencyMaxRetries(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".max-retries", Integer.class, dependencyMaxRetries);
+    }
+
+    public long getDependencyBaseBackoffMs(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".base-backoff-ms", Long.class, dependencyBaseBackoffMs);
+    }
+
+    public long getDependencyMaxBackoffMs(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".max-backoff-ms", Long.class, dependencyMaxBackoffMs);
+    }
+
+    public double getDependencyRetryBudgetPercent(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".retry-budget-percent", Double.class, dependencyRetryBudgetPercent);
+    }
+
+    public int getDependencyMaxConcurrent(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".max-concurrent", Integer.class, dependencyMaxConcurrent);
+    }
+
+    public int getDependencyThreads(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".threads", Integer.class, dependencyThreads);
+    }
+
+    public int getDependencyQueue(String dependency) {
+        return environment.getProperty("client.dependencies." + dependency + ".queue", Integer.class, dependencyQueue);
+    }
+
+    public String getFastDeploymentName() {
+        return fastDeploymentName;
+    }
+
+    public void setFastDeploymentName(String fastDeploymentName) {
+        this.fastDeploymentName = fastDeploymentName;
+    }
+
+    public int getFastTokensPerMinute() {
+        return fastTokensPerMinute;
+    }
+
+    public void setFastTokensPerMinute(int fastTokensPerMinute) {
+        this.fastTokensPerMinute = fastTokensPerMinute;
+    }
+
+    public int getFastRequestsPerMinute() {
+        return fastRequestsPerMinute;
+    }
+
+    public void setFastRequestsPerMinute(int fastRequestsPerMinute) {
+        this.fastRequestsPerMinute = fastRequestsPerMinute;
+    }
+
+    public String getRoutingDefaultMode() {
+        return routingDefaultMode;
+    }
+
+    public void setRoutingDefaultMode(String routingDefaultMode) {
+        this.routingDefaultMode = routingDefaultMode;
+    }
+
+    public boolean isRoutingClassifierEnabled() {
+        return routingClassifierEnabled;
+    }
+
+    public void setRoutingClassifierEnabled(boolean routingClassifierEnabled) {
+        this.routingClassifierEnabled = routingClassifierEnabled;
+    }
+
+    public int getRoutingLongPromptTokens() {
+        return routingLongPromptTokens;
+    }
+
+    public void setRoutingLongPromptTokens(int routingLongPromptTokens) {
+        this.routingLongPromptTokens = routingLongPromptTokens;
+    }
+
+    public int getRoutingMaxSimpleMessages() {
+        return routingMaxSimpleMessages;
+    }
+
+    public void setRoutingMaxSimpleMessages(int routingMaxSimpleMessages) {
+        this.routingMaxSimpleMessages = routingMaxSimpleMessages;
+    }
+
+    public double getFastCostPer1kTokens() {
+        return fastCostPer1kTokens;
+    }
+
+    public void setFastCostPer1kTokens(double fastCostPer1kTokens) {
+        this.fastCostPer1kTokens = fastCostPer1kTokens;
+    }
+
+    public double getLargeCostPer1kTokens() {
+        return largeCostPer1kTokens;
+    }
+
+    public void setLargeCostPer1kTokens(double largeCostPer1kTokens) {
+        this.largeCostPer1kTokens = largeCostPer1kTokens;
+    }
+
+    public double getDependencyTimeoutPercentile() {
+        return dependencyTimeoutPercentile;
+    }
+
+    public void setDependencyTimeoutPercentile(double dependencyTimeoutPercentile) {
+        this.dependencyTimeoutPercentile = dependencyTimeoutPercentile;
+    }
+
+    public double getDependencyTimeoutMultiplier() {
+        return dependencyTimeoutMultiplier;
+    }
+
+    public void setDependencyTimeoutMultiplier(double dependencyTimeoutMultiplier) {
+        this.dependencyTimeoutMultiplier = dependencyTimeoutMultiplier;
+    }
+
+    public long getDependencyMinTimeoutMs() {
+        return dependencyMinTimeoutMs;
+    }
+
+    public void setDependencyMinTimeoutMs(long dependencyMinTimeoutMs) {
+        this.dependencyMinTimeoutMs = dependencyMinTimeoutMs;
+    }
+
+    public long getDependencyMaxTimeoutMs() {
+        return dependencyMaxTimeoutMs;
+    }
+
+    public void setDependencyMaxTimeoutMs(long dependencyMaxTimeoutMs) {
+        this.dependencyMaxTimeoutMs = dependencyMaxTimeoutMs;
+    }
+
+    public int getDependencyMaxRetries() {
+        return dependencyMaxRetries;
+    }
+
+    public void setDependencyMaxRetries(int dependencyMaxRetries) {
+        this.dependencyMaxRetries = dependencyMaxRetries;
+    }
+
+    public long getDependencyBaseBackoffMs() {
+        return dependencyBaseBackoffMs;
+    }
+
+    public void setDependencyBaseBackoffMs(long dependencyBaseBackoffMs) {
+        this.dependencyBaseBackoffMs = dependencyBaseBackoffMs;
+    }
+
+    public long getDependencyMaxBackoffMs() {
+        return dependencyMaxBackoffMs;
+    }
+
+    public void setDependencyMaxBackoffMs(long dependencyMaxBackoffMs) {
+        this.dependencyMaxBackoffMs = dependencyMaxBackoffMs;
+    }
+
+    public double getDependencyRetryBudgetPercent() {
+        return dependencyRetryBudgetPercent;
+    }
+
+    public void setDependencyRetryBudgetPercent(double dependencyRetryBudgetPercent) {
+        this.dependencyRetryBudgetPercent = dependencyRetryBudgetPercent;
+    }
+
+    public int getDependencyMaxConcurrent() {
+        return dependencyMaxConcurrent;
+    }
+
+    public void setDependencyMaxConcurrent(int dependencyMaxConcurrent) {
+        this.dependencyMaxConcurrent = dependencyMaxConcurrent;
+    }
+
+    public int getDependencyThreads() {
+        return dependencyThreads;
+    }
+
+    public void setDependencyThreads(int dependencyThreads) {
+        this.dependencyThreads = dependencyThreads;
+    }
+
+    public int getDependencyQueue() {
+        return dependencyQueue;
+    }
+
+    public void setDependencyQueue(int dependencyQueue) {
+        this.dependencyQueue = dependencyQueue;
+    }
+}
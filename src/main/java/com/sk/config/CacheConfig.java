@@ -0,0 +1,121 @@
+package com.sk.config;
+
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+
+@Configuration
+public class CacheConfig {
+
+    @Value("${cache.retrieval.enabled:true}")
+    private boolean retrievalEnabled;
+
+    @Value("${cache.retrieval.similarity-threshold:0.95}")
+    private double retrievalSimilarityThreshold;
+
+    @Value("${cache.retrieval.max-entries:1000}")
+    private int retrievalMaxEntries;
+
+    @Value("${cache.retrieval.ttl-seconds:3600}")
+    private long retrievalTtlSeconds;
+
+    @Value("${cache.answer.chapter4.enabled:true}")
+    private boolean answerChapter4Enabled;
+
+    @Value("${cache.answer.chapter5.enabled:true}")
+    private boolean answerChapter5Enabled;
+
+    @Value("${cache.answer.similarity.enabled:false}")
+    private boolean answerSimilarityEnabled;
+
+    @Value("${cache.answer.similarity-threshold:0.97}")
+    private double answerSimilarityThreshold;
+
+    @Value("${cache.answer.max-entries:500}")
+    private int answerMaxEntries;
+
+    @Value("${cache.answer.ttl-seconds:1800}")
+    private long answerTtlSeconds;
+
+    public boolean isRetrievalEnabled() {
+        return retrievalEnabled;
+    }
+
+    public void setRetrievalEnabled(boolean retrievalEnabled) {
+        this.retrievalEnabled = retrievalEnabled;
+    }
+
+    public double getRetrievalSimilarityThreshold() {
+        return retrievalSimilarityThreshold;
+    }
+
+    public void setRetrievalSimilarityThreshold(double retrievalSimilarityThreshold) {
+        this.retrievalSimilarityThreshold = retrievalSimilarityThreshold;
+    }
+
+    public int getRetrievalMaxEntries() {
+        return retrievalMaxEntries;
+    }
+
+    public void setRetrievalMaxEntries(int retrievalMaxEntries) {
+        this.retrievalMaxEntries = retrievalMaxEntries;
+    }
+
+    public long getRetrievalTtlSeconds() {
+        return retrievalTtlSeconds;
+    }
+
+    public void setRetrievalTtlSeconds(long retrievalTtlSeconds) {
+        this.retrievalTtlSeconds = retrievalTtlSeconds;
+    }
+
+    public boolean isAnswerChapter4Enabled() {
+        return answerChapter4Enabled;
+    }
+
+    public void setAnswerChapter4Enabled(boolean answerChapter4Enabled) {
+        this.answerChapter4Enabled = answerChapter4Enabled;
+    }
+
+    public boolean isAnswerChapter5Enabled() {
+        return answerChapter5Enabled;
+    }
+
+    public void setAnswerChapter5Enabled(boolean answerChapter5Enabled) {
+        this.answerChapter5Enabled = answerChapter5Enabled;
+    }
+
+    public boolean isAnswerSimilarityEnabled() {
+        return answerSimilarityEnabled;
+    }
+
+    public void setAnswerSimilarityEnabled(boolean answerSimilarityEnabled) {
+        this.answerSimilarityEnabled = answerSimilarityEnabled;
+    }
+
+    public double getAnswerSimilarityThreshold() {
+        return answerSimilarityThreshold;
+    }
+
+    public void setAnswerSimilarityThreshold(double answerSimilarityThreshold) {
+        this.answerSimilarityThreshold = answerSimilarityThreshold;
+    }
+
+    public int getAnswerMaxEntries() {
+        return answerMaxEntries;
+    }
+
+    public void setAnswerMaxEntries(int answerMaxEntries) {
+        this.answerMaxEntries = answerMaxEntries;
+    }
+
+    public long getAnswerTtlSeconds() {
+        return answerTtlSeconds;
+    }
+
+    public void setAnswerTtlSeconds(long answerTtlSeconds) {
+        this.answerTtlSeconds = answerTtlSeconds;
+    }
+
+}
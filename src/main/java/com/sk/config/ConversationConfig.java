@@ -0,0 +1,117 @@
+package com.sk.config;
+
+
+import com.sk.conversation.ConversationStore;
+import com.sk.conversation.FileConversationStore;
+import com.sk.conversation.InMemoryConversationStore;
+import com.sk.conversation.MappedConversationStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+
+@Configuration
+public class ConversationConfig {
+
+    @Value("${conversation.store.type:memory}")
+    private String storeType;
+
+    @Value("${conversation.store.directory:data/conversations}")
+    private String directory;
+
+    @Value("${conversation.store.shards:4}")
+    private int shards;
+
+    @Value("${conversation.store.initial-shard-mb:16}")
+    private int initialShardMb;
+
+    @Value("${conversation.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${conversation.max-open:1000}")
+    private int maxOpen;
+
+    @Value("${history.memory.max-entries:200}")
+    private int memoryMaxEntries;
+
+    /*
+     * memory: on the heap of this instance (default); mapped: memory-mapped logs that
+     * survive a restart; file: one file per conversation in a directory that several
+     * instances can share.
+     */
+    @Bean(destroyMethod = "close")
+    public ConversationStore conversationStore() throws IOException {
+        Duration ttl = Duration.ofMinutes(ttlMinutes);
+        switch (storeType) {
+            case "memory":
+                return new InMemoryConversationStore(ttl, memoryMaxEntries);
+            case "mapped":
+                return new MappedConversationStore(Path.of(directory), shards, initialShardMb * 1024 * 1024, ttl,
+                        memoryMaxEntries);
+            case "file":
+                return new FileConversationStore(Path.of(directory), ttl, memoryMaxEntries);
+            default:
+                throw new IllegalArgumentException("Unknown conversation.store.type: " + storeType);
+        }
+    }
+
+    public String getStoreType() {
+        return storeType;
+    }
+
+    public void setStoreType(String storeType) {
+        this.storeType = storeType;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public int getInitialShardMb() {
+        return initialShardMb;
+    }
+
+    public void setInitialShardMb(int initialShardMb) {
+        this.initialShardMb = initialShardMb;
+    }
+
+    public long getTtlMinutes() {
+        return ttlMinutes;
+    }
+
+    public void setTtlMinutes(long ttlMinutes) {
+        this.ttlMinutes = ttlMinutes;
+    }
+
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    public void setMaxOpen(int maxOpen) {
+        this.maxOpen = maxOpen;
+    }
+
+    public int getMemoryMaxEntries() {
+        return memoryMaxEntries;
+    }
+
+    public void setMemoryMaxEntries(int memoryMaxEntries) {
+        this.memoryMaxEntries = memoryMaxEntries;
+    }
+}
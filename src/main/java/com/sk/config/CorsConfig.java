@@ -18,6 +18,7 @@ public class CorsConfig {
                         //.allowedOrigins("*") // Allow all origins
                         //.allowedHeaders("*")
                         .allowedMethods("GET", "POST", "PUT", "DELETE")
+                        .exposedHeaders("X-Conversation-Id")
                         .allowCredentials(true);
             }
         };
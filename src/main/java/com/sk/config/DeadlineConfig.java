@@ -0,0 +1,67 @@
+package com.sk.config;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+
+@Configuration
+public class DeadlineConfig {
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${deadline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${deadline.header:X-Request-Timeout-Ms}")
+    private String header;
+
+    @Value("${deadline.default-ms:60000}")
+    private long defaultMs;
+
+    @Value("${deadline.max-ms:120000}")
+    private long maxMs;
+
+    /**
+     * The time a route's requests get unless the client asks otherwise, from
+     * deadline.routes.&lt;route&gt;.timeout-ms, falling back to deadline.default-ms.
+     */
+    public long getTimeoutMs(String route) {
+        return environment.getProperty("deadline.routes." + route + ".timeout-ms", Long.class, defaultMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public long getDefaultMs() {
+        return defaultMs;
+    }
+
+    public void setDefaultMs(long defaultMs) {
+        this.defaultMs = defaultMs;
+    }
+
+    public long getMaxMs() {
+        return maxMs;
+    }
+
+    public void setMaxMs(long maxMs) {
+        this.maxMs = maxMs;
+    }
+}
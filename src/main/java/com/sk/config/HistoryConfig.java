@@ -0,0 +1,96 @@
+package com.sk.config;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+
+@Configuration
+public class HistoryConfig {
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${history.max-tokens:3000}")
+    private int maxTokens;
+
+    @Value("${history.summary-max-tokens:300}")
+    private int summaryMaxTokens;
+
+    @Value("${history.memory.max-tokens:600}")
+    private int memoryMaxTokens;
+
+    @Value("${history.memory.top-k:3}")
+    private int memoryTopK;
+
+    @Value("${history.memory.min-score:0.75}")
+    private double memoryMinScore;
+
+    @Value("${history.memory.max-entries:200}")
+    private int memoryMaxEntries;
+
+    /**
+     * The window budget of a route, from history.routes.&lt;route&gt;.max-tokens,
+     * falling back to history.max-tokens.
+     */
+    public int getMaxTokens(String route) {
+        return environment.getProperty("history.routes." + route + ".max-tokens", Integer.class, maxTokens);
+    }
+
+    /**
+     * Whether a route keeps a long-term session memory, from history.routes.&lt;route&gt;.memory.enabled.
+     */
+    public boolean isMemoryEnabled(String route) {
+        return environment.getProperty("history.routes." + route + ".memory.enabled", Boolean.class, false);
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public int getSummaryMaxTokens() {
+        return summaryMaxTokens;
+    }
+
+    public void setSummaryMaxTokens(int summaryMaxTokens) {
+        this.summaryMaxTokens = summaryMaxTokens;
+    }
+
+    public int getMemoryMaxTokens() {
+        return memoryMaxTokens;
+    }
+
+    public void setMemoryMaxTokens(int memoryMaxTokens) {
+        this.memoryMaxTokens = memoryMaxTokens;
+    }
+
+    public int getMemoryTopK() {
+        return memoryTopK;
+    }
+
+    public void setMemoryTopK(int memoryTopK) {
+        this.memoryTopK = memoryTopK;
+    }
+
+    public double getMemoryMinScore() {
+        return memoryMinScore;
+    }
+
+    public void setMemoryMinScore(double memoryMinScore) {
+        this.memoryMinScore = memoryMinScore;
+    }
+
+    public int getMemoryMaxEntries() {
+        return memoryMaxEntries;
+    }
+
+    public void setMemoryMaxEntries(int memoryMaxEntries) {
+        this.memoryMaxEntries = memoryMaxEntries;
+    }
+}
@@ -1,13 +1,75 @@
 package com.sk.config;
 
+import com.sk.dependency.Dependencies;
+import com.sk.dependency.Dependency;
+import com.sk.dependency.DependencyInterceptor;
+import com.sk.http.BufferedStringHttpMessageConverter;
+import com.sk.http.CollapsingCacheInterceptor;
+import com.sk.http.PooledHttpClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class RestConfig{
+
+    @Value("${http.client.connect-timeout-ms:3000}")
+    private int connectTimeoutMs;
+
+    @Value("${http.client.read-timeout-ms:10000}")
+    private int readTimeoutMs;
+
+    @Value("${http.client.max-connections-per-host:20}")
+    private int maxConnectionsPerHost;
+
+    @Value("${http.client.pool-wait-ms:1000}")
+    private long poolWaitMs;
+
+    @Value("${http.client.http2:true}")
+    private boolean http2;
+
+    @Value("${http.client.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${http.client.cache.max-entries:1000}")
+    private int cacheMaxEntries;
+
+    /**
+     * The outbound HTTP engine shared by every plugin.
+     */
+    @Bean
+    public PooledHttpClient pooledHttpClient(Dependencies dependencies) {
+        // geo and weather each get connections of their own (see Dependencies)
+        return new PooledHttpClient(uri -> {
+            Dependency dependency = dependencies.forUri(uri);
+            return dependency == null ? null : dependency.getName();
+        }, connectTimeoutMs, readTimeoutMs, maxConnectionsPerHost, poolWaitMs, http2);
+    }
+
+    /**
+     * Shares identical plugin GETs in flight and revalidates the answers it keeps.
+     */
+    @Bean
+    public CollapsingCacheInterceptor collapsingCacheInterceptor() {
+        return new CollapsingCacheInterceptor(cacheEnabled, cacheMaxEntries, readTimeoutMs);
+    }
+
+    /*
+     * Plugin calls never wait longer than these, nor past the deadline of the request
+     * they are made for. Calls to the geo and weather services also get their
+     * dependency's adaptive timeout and budgeted retries, unless the outbound cache
+     * answers them first.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(Dependencies dependencies, PooledHttpClient pooledHttpClient,
+                                     CollapsingCacheInterceptor collapsingCacheInterceptor) {
+        RestTemplate restTemplate = new RestTemplate(pooledHttpClient);
+        restTemplate.getMessageConverters().replaceAll(converter ->
+                converter instanceof StringHttpMessageConverter ? new BufferedStringHttpMessageConverter() : converter);
+        restTemplate.getInterceptors().add(collapsingCacheInterceptor);
+        restTemplate.getInterceptors().add(new DependencyInterceptor(dependencies));
+        return restTemplate;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package com.sk.config;
+
+
+import com.sk.ratelimit.TokenEstimator;
+import com.sk.tokenizer.BpeEncoding;
+import com.sk.tokenizer.BpeTokenizer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+
+@Configuration
+public class TokenizerConfig {
+
+    @Value("${tokenizer.encoding:cl100k_base}")
+    private String encoding;
+
+    /*
+     * Loads the deployed model's vocabulary (e.g. src/main/resources/tokenizer/cl100k_base.tiktoken)
+     * so token budgets and quota estimates use exact counts. The file is not bundled;
+     * without it the estimates stay heuristic.
+     */
+    @PostConstruct
+    public void installTokenizer() {
+        BpeEncoding bpeEncoding = BpeEncoding.fromName(encoding);
+        try {
+            long start = System.nanoTime();
+            BpeTokenizer tokenizer = BpeTokenizer.fromClasspath(bpeEncoding);
+            if (tokenizer == null) {
+                System.out.println("Tokenizer vocabulary " + bpeEncoding.getResource()
+                        + " not found, using heuristic token estimates");
+                return;
+            }
+            TokenEstimator.setTokenizer(tokenizer);
+            System.out.println("Loaded " + encoding + " tokenizer with " + tokenizer.vocabularySize()
+                    + " tokens in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.out.println("Failed to load tokenizer " + encoding + ": " + e.getMessage());
+        }
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+}
@@ -0,0 +1,273 @@
+package com.sk.config;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+
+@Configuration
+public class ToolConfig {
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${tools.selection.enabled:true}")
+    private boolean selectionEnabled;
+
+    @Value("${tools.selection.top-k:4}")
+    private int selectionTopK;
+
+    @Value("${tools.selection.min-score:0.72}")
+    private double selectionMinScore;
+
+    @Value("${tools.selection.max-conversations:1000}")
+    private int selectionMaxConversations;
+
+    @Value("${tools.selection.timeout-ms:2000}")
+    private long selectionTimeoutMs;
+
+    @Value("${tools.context.enabled:true}")
+    private boolean contextEnabled;
+
+    @Value("${tools.context.time-zone:}")
+    private String contextTimeZone;
+
+    @Value("${tools.prefetch.enabled:true}")
+    private boolean prefetchEnabled;
+
+    @Value("${tools.prefetch.min-confidence:0.5}")
+    private double prefetchMinConfidence;
+
+    @Value("${tools.prefetch.prior:0.8}")
+    private double prefetchPrior;
+
+    @Value("${tools.prefetch.budget-percent:20}")
+    private double prefetchBudgetPercent;
+
+    @Value("${tools.prefetch.ttl-seconds:60}")
+    private long prefetchTtlSeconds;
+
+    @Value("${tools.prefetch.wait-ms:10000}")
+    private long prefetchWaitMs;
+
+    @Value("${tools.memo.enabled:true}")
+    private boolean memoEnabled;
+
+    @Value("${tools.memo.default-ttl-seconds:30}")
+    private long memoDefaultTtlSeconds;
+
+    @Value("${tools.memo.max-entries:5000}")
+    private int memoMaxEntries;
+
+    @Value("${tools.governor.enabled:true}")
+    private boolean governorEnabled;
+
+    @Value("${tools.governor.max-calls-per-request:8}")
+    private int governorMaxCallsPerRequest;
+
+    @Value("${tools.governor.request-budget-ms:45000}")
+    private long governorRequestBudgetMs;
+
+    @Value("${tools.governor.default-deadline-ms:15000}")
+    private long governorDefaultDeadlineMs;
+
+    @Value("${tools.governor.breaker.failures:5}")
+    private int governorBreakerFailures;
+
+    @Value("${tools.governor.breaker.open-seconds:30}")
+    private long governorBreakerOpenSeconds;
+
+    /**
+     * How long a call of a function (plugin.function) may take, from
+     * tools.governor.deadline-ms.&lt;plugin.function&gt;, falling back to tools.governor.default-deadline-ms.
+     */
+    public long getGovernorDeadlineMs(String function) {
+        return environment.getProperty("tools.governor.deadline-ms." + function, Long.class, governorDefaultDeadlineMs);
+    }
+
+    /**
+     * How long results of a function (plugin.function) may be reused, from
+     * tools.memo.ttl.&lt;plugin.function&gt;, falling back to tools.memo.default-ttl-seconds.
+     */
+    public long getMemoTtlSeconds(String function) {
+        return environment.getProperty("tools.memo.ttl." + function, Long.class, memoDefaultTtlSeconds);
+    }
+
+    public boolean isSelectionEnabled() {
+        return selectionEnabled;
+    }
+
+    public void setSelectionEnabled(boolean selectionEnabled) {
+        this.selectionEnabled = selectionEnabled;
+    }
+
+    public int getSelectionTopK() {
+        return selectionTopK;
+    }
+
+    public void setSelectionTopK(int selectionTopK) {
+        this.selectionTopK = selectionTopK;
+    }
+
+    public double getSelectionMinScore() {
+        return selectionMinScore;
+    }
+
+    public void setSelectionMinScore(double selectionMinScore) {
+        this.selectionMinScore = selectionMinScore;
+    }
+
+    public int getSelectionMaxConversations() {
+        return selectionMaxConversations;
+    }
+
+    public void setSelectionMaxConversations(int selectionMaxConversations) {
+        this.selectionMaxConversations = selectionMaxConversations;
+    }
+
+    public long getSelectionTimeoutMs() {
+        return selectionTimeoutMs;
+    }
+
+    public void setSelectionTimeoutMs(long selectionTimeoutMs) {
+        this.selectionTimeoutMs = selectionTimeoutMs;
+    }
+
+    public boolean isContextEnabled() {
+        return contextEnabled;
+    }
+
+    public void setContextEnabled(boolean contextEnabled) {
+        this.contextEnabled = contextEnabled;
+    }
+
+    public String getContextTimeZone() {
+        return contextTimeZone;
+    }
+
+    public void setContextTimeZone(String contextTimeZone) {
+        this.contextTimeZone = contextTimeZone;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    public void setPrefetchEnabled(boolean prefetchEnabled) {
+        this.prefetchEnabled = prefetchEnabled;
+    }
+
+    public double getPrefetchMinConfidence() {
+        return prefetchMinConfidence;
+    }
+
+    public void setPrefetchMinConfidence(double prefetchMinConfidence) {
+        this.prefetchMinConfidence = prefetchMinConfidence;
+    }
+
+    public double getPrefetchPrior() {
+        return prefetchPrior;
+    }
+
+    public void setPrefetchPrior(double prefetchPrior) {
+        this.prefetchPrior = prefetchPrior;
+    }
+
+    public double getPrefetchBudgetPercent() {
+        return prefetchBudgetPercent;
+    }
+
+    public void setPrefetchBudgetPercent(double prefetchBudgetPercent) {
+        this.prefetchBudgetPercent = prefetchBudgetPercent;
+    }
+
+    public long getPrefetchTtlSeconds() {
+        return prefetchTtlSeconds;
+    }
+
+    public void setPrefetchTtlSeconds(long prefetchTtlSeconds) {
+        this.prefetchTtlSeconds = prefetchTtlSeconds;
+    }
+
+    public long getPrefetchWaitMs() {
+        return prefetchWaitMs;
+    }
+
+    public void setPrefetchWaitMs(long prefetchWaitMs) {
+        this.prefetchWaitMs = prefetchWaitMs;
+    }
+
+    public boolean isMemoEnabled() {
+        return memoEnabled;
+    }
+
+    public void setMemoEnabled(boolean memoEnabled) {
+        this.memoEnabled = memoEnabled;
+    }
+
+    public long getMemoDefaultTtlSeconds() {
+        return memoDefaultTtlSeconds;
+    }
+
+    public void setMemoDefaultTtlSeconds(long memoDefaultTtlSeconds) {
+        this.memoDefaultTtlSeconds = memoDefaultTtlSeconds;
+    }
+
+    public int getMemoMaxEntries() {
+        return memoMaxEntries;
+    }
+
+    public void setMemoMaxEntries(int memoMaxEntries) {
+        this.memoMaxEntries = memoMaxEntries;
+    }
+
+    public boolean isGovernorEnabled() {
+        return governorEnabled;
+    }
+
+    public void setGovernorEnabled(boolean governorEnabled) {
+        this.governorEnabled = governorEnabled;
+    }
+
+    public int getGovernorMaxCallsPerRequest() {
+        return governorMaxCallsPerRequest;
+    }
+
+    public void setGovernorMaxCallsPerRequest(int governorMaxCallsPerRequest) {
+        this.governorMaxCallsPerRequest = governorMaxCallsPerRequest;
+    }
+
+    public long getGovernorRequestBudgetMs() {
+        return governorRequestBudgetMs;
+    }
+
+    public void setGovernorRequestBudgetMs(long governorRequestBudgetMs) {
+        this.governorRequestBudgetMs = governorRequestBudgetMs;
+    }
+
+    public long getGovernorDefaultDeadlineMs() {
+        return governorDefaultDeadlineMs;
+    }
+
+    public void setGovernorDefaultDeadlineMs(long governorDefaultDeadlineMs) {
+        this.governorDefaultDeadlineMs = governorDefaultDeadlineMs;
+    }
+
+    public int getGovernorBreakerFailures() {
+        return governorBreakerFailures;
+    }
+
+    public void setGovernorBreakerFailures(int governorBreakerFailures) {
+        this.governorBreakerFailures = governorBreakerFailures;
+    }
+
+    public long getGovernorBreakerOpenSeconds() {
+        return governorBreakerOpenSeconds;
+    }
+
+    public void setGovernorBreakerOpenSeconds(long governorBreakerOpenSeconds) {
+        this.governorBreakerOpenSeconds = governorBreakerOpenSeconds;
+    }
+}
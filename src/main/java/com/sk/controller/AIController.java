@@ -1,28 +1,36 @@
 package com.sk.controller;
 
-import com.azure.ai.openai.OpenAIAsyncClient;
-import com.azure.ai.openai.OpenAIClientBuilder;
-import com.azure.core.credential.AzureKeyCredential;
 import com.microsoft.semantickernel.Kernel;
-import com.microsoft.semantickernel.aiservices.openai.chatcompletion.OpenAIChatCompletion;
-import com.microsoft.semantickernel.orchestration.InvocationContext;
 import com.microsoft.semantickernel.orchestration.InvocationReturnMode;
-import com.microsoft.semantickernel.orchestration.ToolCallBehavior;
 import com.microsoft.semantickernel.plugin.KernelPlugin;
 import com.microsoft.semantickernel.plugin.KernelPluginFactory;
 import com.microsoft.semantickernel.services.ServiceNotFoundException;
+import com.microsoft.semantickernel.services.chatcompletion.AuthorRole;
 import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
 import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
 import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.cache.AnswerCache;
+import com.sk.cache.RetrievalCache;
 import com.sk.config.AzureAIConfig;
+import com.sk.deadline.Deadline;
+import com.sk.dependency.Dependencies;
+import com.sk.history.HistoryManager;
+import com.sk.history.ManagedChatHistory;
 import com.sk.kernel.kernelUtil;
+import com.sk.kernel.chat.ChatRoute;
 import com.sk.model.ChatRequest;
 import com.sk.model.Message;
 import com.sk.plugins.AISearchPlugin;
 import com.sk.plugins.DateTimePlugin;
+import com.sk.plugins.GeocodingClient;
 import com.sk.plugins.GeocodingPlugin;
 import com.sk.plugins.WeatherPlugin;
 import com.sk.service.AIService;
+import com.sk.service.ConversationMailbox;
+import com.sk.tools.ContextEnricher;
+import com.sk.tools.ToolCalls;
+import com.sk.tools.ToolSelector;
+import com.sk.tools.ToolTurn;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -30,47 +38,94 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api")
 public class AIController {
 
+    private static final Pattern CONVERSATION_ID = Pattern.compile("[A-Za-z0-9_.-]{1,128}");
+
     @Autowired
     AIService aiService;
 
     @Autowired
     RestTemplate restTemplate;
     @Autowired
+    GeocodingClient geocodingClient;
+    @Autowired
     AzureAIConfig config;
 
     @Autowired
     kernelUtil kernelUtil;
 
+    @Autowired
+    RetrievalCache retrievalCache;
+
+    @Autowired
+    AnswerCache answerCache;
+
+    @Autowired
+    HistoryManager historyManager;
+
+    @Autowired
+    ConversationMailbox mailbox;
+
+    @Autowired
+    ToolSelector toolSelector;
+
+    @Autowired
+    ContextEnricher contextEnricher;
+
+    @Autowired
+    ToolCalls toolCalls;
+
+    @Autowired
+    Dependencies dependencies;
+
     @GetMapping("/hello")
     public String getAI() {
         return "AI";
     }
 
     @PostMapping("/chapter2")
-    public ResponseEntity<String> getchapter2(@RequestBody Message message) throws IOException, ServiceNotFoundException {
+    public Mono<ResponseEntity<String>> getchapter2(@RequestBody Message message, HttpSession session) {
         System.out.println("Message: " + message.getContent());
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
 
-        return ResponseEntity.ok().headers(headers).body(aiService.extractChapter2Message(message.getContent().trim()));
+        // The conversation belongs to the session; chapter2 itself keeps no per-session state.
+        // A second message of the same session waits for the first one's turn to finish,
+        // on the request's clock
+        return Deadline.enforceCurrent(aiService.extractChapter2Message(session.getId(), message.getContent().trim())
+                .map(body -> ResponseEntity.ok().headers(headers).body(body)));
     }
 
     @PostMapping("/reset-session")
     public String resetSession(HttpSession session) {
         System.out.println("Session reset-> new session id: " + session.getId());
+        // the stored conversations of this session are not needed any more
+        historyManager.delete("chapter2", session.getId());
+        historyManager.delete("mainChapter", session.getId());
         session.invalidate();  // ✅ This will destroy the existing session
         return "Session reset successfully";
     }
 
+    @PostMapping("/search-cache/invalidate")
+    public String invalidateSearchCache() {
+        // Called by the ingestion pipeline once the handbook index has been rebuilt
+        retrievalCache.invalidate();
+        // chapter4 answers are grounded on the handbook index, so they are stale as well
+        answerCache.invalidate("chapter4");
+        return "Search cache invalidated";
+    }
+
     @PostMapping("/chapter3")
     public ResponseEntity<String> getchapter3(@RequestBody Message message) throws IOException, ServiceNotFoundException {
         HttpHeaders headers = new HttpHeaders();
@@ -80,73 +135,144 @@ public class AIController {
     }
 
     @PostMapping("/chapter4")
-    public ResponseEntity<String> getchapter4(@RequestBody Message message) throws IOException, ServiceNotFoundException {
+    public Mono<ResponseEntity<String>> getchapter4(@RequestBody Message message,
+                                                    @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl,
+                                                    @RequestHeader(value = "X-Cache-Bypass", required = false) String cacheBypass) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
 
-        return ResponseEntity.ok().headers(headers).body(aiService.extractChapter4Message(message.getContent().trim()));
+        // Returned as a Mono so that a client disconnect or the deadline cancels this caller's interest in the completion
+        return Deadline.enforceCurrent(aiService.extractChapter4Message(message.getContent().trim(), isCacheBypass(cacheControl, cacheBypass))
+                .map(body -> ResponseEntity.ok().headers(headers).body(body)));
     }
 
     @PostMapping("/chapter5")
-    public ResponseEntity<String> getchapter5(@RequestBody Message message) throws IOException, ServiceNotFoundException {
+    public Mono<ResponseEntity<String>> getchapter5(@RequestBody Message message,
+                                                    @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl,
+                                                    @RequestHeader(value = "X-Cache-Bypass", required = false) String cacheBypass) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
 
-        return ResponseEntity.ok().headers(headers).body(aiService.extractChapter5Message(message.getContent().trim()));
+        return Deadline.enforceCurrent(aiService.extractChapter5Message(message.getContent().trim(), isCacheBypass(cacheControl, cacheBypass))
+                .map(body -> ResponseEntity.ok().headers(headers).body(body)));
     }
 
-    @PostMapping("/skChat")
-    public ResponseEntity<List<ChatMessageContent<?>>> getskChat(@RequestBody ChatRequest chatRequest) throws IOException, ServiceNotFoundException {
-
-        Kernel kernel = kernelBuilder();
-
-        // challange 3, for adding the plugins
-        kernel = AddPlugins(kernel);
-
+    /*
+     * A client can ask for a fresh answer with "Cache-Control: no-cache" (or no-store)
+     * or with "X-Cache-Bypass: true".
+     */
+    private static boolean isCacheBypass(String cacheControl, String cacheBypass) {
+        if (cacheBypass != null && Boolean.parseBoolean(cacheBypass.trim())) {
+            return true;
+        }
+        return cacheControl != null
+                && (cacheControl.contains("no-cache") || cacheControl.contains("no-store"));
+    }
 
+    /*
+     * Two modes: with "message" (and optionally "conversationId") the server keeps the
+     * conversation and the client sends only the new turn; the id is returned in the
+     * X-Conversation-Id header. Turns of one conversation are run one at a time through
+     * the conversation mailbox. With "messages" the client sends the whole history and
+     * nothing is kept.
+     */
+    @PostMapping("/skChat")
+    public Mono<ResponseEntity<List<ChatMessageContent<?>>>> getskChat(@RequestBody ChatRequest chatRequest) {
+
+        if (chatRequest.getMessage() != null) {
+            String conversationId = chatRequest.getConversationId() != null
+                    ? chatRequest.getConversationId()
+                    : UUID.randomUUID().toString();
+            if (!CONVERSATION_ID.matcher(conversationId).matches() || chatRequest.getMessage().isBlank()) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+            return Deadline.enforceCurrent(mailbox.submit("skChat:" + conversationId, () -> {
+                ManagedChatHistory conversation = historyManager.open("skChat", conversationId);
+                conversation.addUserMessage(chatRequest.getMessage().trim());
+                return skChatCompletion(conversation.toChatHistory(), "skChat:" + conversationId,
+                        chatRequest.getMessage().trim())
+                        .map(responses -> {
+                            // Keep the final answer; tool calls and results are not part of the stored conversation
+                            conversation.addAssistantMessage(finalAnswer(responses));
+                            return ResponseEntity.ok()
+                                    .header("X-Conversation-Id", conversationId)
+                                    .body(responses);
+                        });
+            }));
+        }
+        if (chatRequest.getMessages() == null || chatRequest.getMessages().isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
 
-		/* Challenge 2 for Create chatCompletionService
-		 Initialize a new ChatHistory object to store the conversation history.
-		 Retrieve the ChatCompletionService from the kernel to handle chat completions.
-		 Iterate through the list of user messages from the ChatRequest object
-		 and add each message to the chat history as a user message.
-		*/
+        /* Challenge 2 for Create chatCompletionService
+         Initialize a new ChatHistory object to store the conversation history,
+         replaying the client's messages and keeping each one's role.
+        */
         ChatHistory chatHistory = new ChatHistory();
-        ChatCompletionService chatCompletionService = kernel.getService(ChatCompletionService.class);
+        String lastUserMessage = null;
         for (ChatRequest.Message message : chatRequest.getMessages()) {
-            chatHistory.addUserMessage(message.getContent());
+            if ("assistant".equalsIgnoreCase(message.getRole())) {
+                chatHistory.addAssistantMessage(message.getContent());
+            } else if ("system".equalsIgnoreCase(message.getRole())) {
+                chatHistory.addSystemMessage(message.getContent());
+            } else {
+                chatHistory.addUserMessage(message.getContent());
+                lastUserMessage = message.getContent();
+            }
         }
+        return Deadline.enforceCurrent(skChatCompletion(chatHistory, null, lastUserMessage).map(ResponseEntity::ok));
+    }
 
-        InvocationContext invocationContext = null;
+    private Mono<List<ChatMessageContent<?>>> skChatCompletion(ChatHistory chatHistory, String conversationKey,
+                                                               String userMessage) {
+        return Mono.deferContextual(context -> {
+            Kernel kernel;
+            ChatCompletionService chatCompletionService;
+            try {
+                // challange 3, for adding the plugins; the plugins of this request share its
+                // tool-call limit and what is left of its deadline
+                kernel = AddPlugins(kernelBuilder(), toolCalls.newTurn(Deadline.from(context)));
+
+                // Challenge 2, Retrieve the ChatCompletionService from the kernel to handle chat completions
+                chatCompletionService = kernel.getService(ChatCompletionService.class);
+            } catch (IOException | ServiceNotFoundException e) {
+                return Mono.error(e);
+            }
 
-		/* Challenge 03 for Create the InvocationContext
-		 Build an InvocationContext object to configure the behavior and return mode
-		 for the invocation of the ChatCompletionService. This configuration allows
-		 all kernel functions to be called and ensures the full conversation history
-		 is returned as part of the response.*/
-        invocationContext = InvocationContext.builder()
-                .withToolCallBehavior(ToolCallBehavior.allowAllKernelFunctions(true)) // Allow unrestricted kernel function calls
-                .withReturnMode(InvocationReturnMode.NEW_MESSAGES_ONLY) // Return the full conversation history
-                .build();
+            /* Challenge 03 for Create the InvocationContext
+             Build an InvocationContext object to configure the behavior and return mode
+             for the invocation of the ChatCompletionService. Only the functions relevant
+             to this turn are advertised and auto-invoked, and the new messages (tool calls,
+             results and the answer) are returned as part of the response.
+
+             Challenge 2 for make the call to the chatCompletionService
+             Retrieve the list of chat message contents asynchronously from the ChatCompletionService.
+             This method takes the chat history, kernel, and invocation context as inputs.
+             The response contains the AI-generated messages.
+            */
+            // The current date and time go into the prompt, so the functions that only tell those are left out
+            ChatHistory enriched = contextEnricher.enrich(chatHistory, userMessage);
+            return toolSelector.invocationContext(kernel, conversationKey, userMessage, InvocationReturnMode.NEW_MESSAGES_ONLY,
+                            contextEnricher.coveredFunctions(kernel))
+                    .flatMap(invocationContext -> chatCompletionService.getChatMessageContentsAsync(
+                            enriched,
+                            kernel,
+                            invocationContext
+                    ))
+                    .flatMap(responses -> responses == null || responses.isEmpty()
+                            ? Mono.<List<ChatMessageContent<?>>>error(new ServiceNotFoundException("No response from the service"))
+                            : Mono.just(responses));
+        }).contextWrite(ChatRoute.named("skChat"));
+    }
 
-		/*
-		 Challenge 2 for make the call to the chatCompletionService
-		 Retrieve the list of chat message contents asynchronously from the ChatCompletionService.
-		 This method takes the chat history, kernel, and invocation context as inputs and blocks
-		 until the response is received. The response contains the AI-generated messages.
-		*/
-        List<ChatMessageContent<?>> responses = chatCompletionService.getChatMessageContentsAsync(
-                chatHistory,
-                kernel,
-                invocationContext
-        ).block();
-
-        if (responses == null || responses.isEmpty()) {
-            throw new ServiceNotFoundException("No response from the service");
+    private static String finalAnswer(List<ChatMessageContent<?>> responses) {
+        for (int i = responses.size() - 1; i >= 0; i--) {
+            ChatMessageContent<?> message = responses.get(i);
+            if (message.getAuthorRole() == AuthorRole.ASSISTANT && message.getContent() != null) {
+                return message.getContent();
+            }
         }
-        // Add AI response to chat history
-        //chatHistory.addUserMessage(responses.get(0).getContent());
-        return ResponseEntity.ok(responses);
+        return responses.get(responses.size() - 1).getContent();
     }
 
 
@@ -155,7 +281,7 @@ public class AIController {
 	 *
 	 * This method creates and configures various plugins, including:
 	 * - DateTimePlugin: Provides date and time-related functionalities.
-	 * - GeocodingPlugin: Handles geocoding operations using the provided configuration and RestTemplate.
+	 * - GeocodingPlugin: Handles geocoding operations through the shared GeocodingClient.
 	 * - WeatherPlugin: Fetches weather-related data using the provided configuration and RestTemplate.
 	 * - AISearchPlugin: Enables AI-based search functionalities using the provided configuration and kernel utility.
 	 *
@@ -166,20 +292,20 @@ public class AIController {
 	 * @return A Kernel instance with the configured plugins.
 	 * @throws IOException If an error occurs during plugin creation or kernel building.
 	 */
-    private Kernel AddPlugins(Kernel kernel) throws IOException {
+    private Kernel AddPlugins(Kernel kernel, ToolTurn turn) throws IOException {
         // Challenge 03 START for Create the DateTimePlugin
         KernelPlugin dateTimePlugin = KernelPluginFactory
                 .createFromObject(new DateTimePlugin(), "DateTimePlugin");
 
         KernelPlugin geoPlugin = KernelPluginFactory
-                .createFromObject(new GeocodingPlugin(config, restTemplate), "GeocodingPlugin");
+                .createFromObject(new GeocodingPlugin(geocodingClient, turn), "GeocodingPlugin");
 
         KernelPlugin weatherPlugin = KernelPluginFactory
-                .createFromObject(new WeatherPlugin(config, restTemplate), "WeatherPlugin");
+                .createFromObject(new WeatherPlugin(config, restTemplate, turn), "WeatherPlugin");
 
         // Challenge 04, Uncomment bellow line for AI search plugin and add the plugin to the list
         KernelPlugin AISearch = KernelPluginFactory
-                .createFromObject(new AISearchPlugin(config, kernelUtil), "AISearchPlugin");
+                .createFromObject(new AISearchPlugin(config, kernelUtil, retrievalCache, dependencies, turn), "AISearchPlugin");
 
         // Challenge 05, Uncomment bellow line for food plugin and add the plugin to the list
         KernelPlugin foodplugin = KernelPluginFactory
@@ -206,27 +332,12 @@ public class AIController {
 
     public Kernel kernelBuilder() throws IOException {
 
-        // Challenge 2 for Create the client
-		/*
-		 Create an OpenAIAsyncClient instance using the OpenAIClientBuilder.
-		 This client is configured with the API key and endpoint from the AzureAIConfig.
-		 It is used to interact with OpenAI services asynchronously.
-		*/
-        OpenAIAsyncClient clientasync = new OpenAIClientBuilder()
-                .credential(new AzureKeyCredential(config.getOpenAiApiKey()))
-                .endpoint(config.getOpenAiEndpoint())
-                .buildAsyncClient();
-
         // Challenge 2 Create the chat completion service
 		/*
-		 Create a ChatCompletionService instance using the OpenAIChatCompletion builder.
-		 This service is configured with the OpenAIAsyncClient and the model ID from the AzureAIConfig.
-		 It is used to handle chat completions.
+		 The shared ChatCompletionService from kernelUtil wraps the OpenAIChatCompletion
+		 for the configured deployment and admits every call against its TPM/RPM quota.
 		*/
-        ChatCompletionService chatCompletion = OpenAIChatCompletion.builder()
-                .withOpenAIAsyncClient(clientasync)
-                .withModelId(config.getChatDeploymentName())
-                .build();
+        ChatCompletionService chatCompletion = kernelUtil.chatCompletionService();
 
         Kernel kernel = null;
 		/*
@@ -0,0 +1,45 @@
+package com.sk.controller;
+
+import com.sk.deadline.DeadlineExceededException;
+import com.sk.ratelimit.AdmissionRejectedException;
+import com.sk.service.MailboxFullException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    /*
+     * Requests shed by admission control fail fast with 503 and tell the client when
+     * capacity is expected back, instead of queueing until the upstream returns 429.
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<String> handleAdmissionRejected(AdmissionRejectedException e) {
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(e.getMessage());
+    }
+
+    /*
+     * A conversation with too many turns in flight (double submits, several tabs)
+     * gets 429 instead of queueing without bound.
+     */
+    @ExceptionHandler(MailboxFullException.class)
+    public ResponseEntity<String> handleMailboxFull(MailboxFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    /*
+     * The request's deadline passed; everything it was still waiting for has been cancelled.
+     */
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<String> handleDeadlineExceeded(DeadlineExceededException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
+    }
+}
@@ -0,0 +1,28 @@
+package com.sk.controller;
+
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/api")
+public class StatsController {
+
+    @Autowired
+    List<StatsSource> statsSources;
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        for (StatsSource source : statsSources) {
+            stats.put(source.getStatsName(), source.getStats());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,158 @@
+package com.sk.conversation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One entry of a conversation log: a user or assistant message, a summary that
+ * replaces the oldest messages before it, or an embedded exchange for the session
+ * memory.
+ *
+ * A summary's timestamp is that of the last message it covers, so what it replaces
+ * does not depend on how many messages other writers logged meanwhile.
+ */
+public final class ConversationRecord {
+
+    public enum Type {
+        USER, ASSISTANT, SUMMARY, MEMORY
+    }
+
+    private final Type type;
+    private final String content;
+    private final int compacted;
+    private final long timestamp;
+
+    public ConversationRecord(Type type, String content, int compacted, long timestamp) {
+        this.type = type;
+        this.content = content;
+        this.compacted = compacted;
+        this.timestamp = timestamp;
+    }
+
+    public static ConversationRecord user(String content) {
+        return user(content, System.currentTimeMillis());
+    }
+
+    public static ConversationRecord user(String content, long timestamp) {
+        return new ConversationRecord(Type.USER, content, 0, timestamp);
+    }
+
+    public static ConversationRecord assistant(String content) {
+        return assistant(content, System.currentTimeMillis());
+    }
+
+    public static ConversationRecord assistant(String content, long timestamp) {
+        return new ConversationRecord(Type.ASSISTANT, content, 0, timestamp);
+    }
+
+    /**
+     * @param lastCovered the timestamp of the newest message the summary replaces
+     */
+    public static ConversationRecord summary(String summary, long lastCovered) {
+        return new ConversationRecord(Type.SUMMARY, summary, 0, lastCovered);
+    }
+
+    /**
+     * An exchange and its embedding. The vector travels in the content (base64 of the
+     * floats, then a line break, then the text), so stores keep it like any other record.
+     *
+     * @param exchange the timestamp of the exchange's user message
+     */
+    public static ConversationRecord memory(String text, float[] vector, long exchange) {
+        ByteBuffer bytes = ByteBuffer.allocate(vector.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(vector);
+        String content = Base64.getEncoder().encodeToString(bytes.array()) + "\n" + text;
+        return new ConversationRecord(Type.MEMORY, content, 0, exchange);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * How many of the oldest messages a summary replaces, in logs written before
+     * summaries were anchored to a timestamp; 0 otherwise.
+     */
+    public int getCompacted() {
+        return compacted;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The exchange text of a {@link Type#MEMORY} record.
+     */
+    public String getMemoryText() {
+        return content.substring(content.indexOf('\n') + 1);
+    }
+
+    /**
+     * The embedding of a {@link Type#MEMORY} record.
+     */
+    public float[] getMemoryVector() {
+        byte[] bytes = Base64.getDecoder().decode(content.substring(0, content.indexOf('\n')));
+        float[] vector = new float[bytes.length / 4];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public static List<ConversationRecord> fold(List<ConversationRecord> records) {
+        return fold(records, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Applies every summary to the messages logged before it, up to its timestamp,
+     * leaving at most one summary, then the newest {@code maxMemories} memory records,
+     * then the messages that are still live. Replaying the folded log gives the same conversation as replaying the
+     * full one.
+     *
+     * Two compactions of the same messages (a turn that started before the previous
+     * turn's summary was logged) both cover the same messages, so the second one
+     * replaces nothing more. A summary covering less than one already applied is
+     * ignored, as its text lacks messages that are gone.
+     */
+    public static List<ConversationRecord> fold(List<ConversationRecord> records, int maxMemories) {
+        List<ConversationRecord> messages = new ArrayList<>();
+        List<ConversationRecord> memories = new ArrayList<>();
+        ConversationRecord summary = null;
+        long covered = Long.MIN_VALUE;
+        for (ConversationRecord record : records) {
+            if (record.type == Type.MEMORY) {
+                // summaries replace messages only; what is remembered stays recallable
+                memories.add(record);
+            } else if (record.type == Type.SUMMARY) {
+                if (record.compacted > 0) {
+                    List<ConversationRecord> replaced = messages.subList(0, Math.min(record.compacted, messages.size()));
+                    if (!replaced.isEmpty()) {
+                        covered = Math.max(covered, replaced.get(replaced.size() - 1).timestamp);
+                    }
+                    replaced.clear();
+                } else if (record.timestamp >= covered) {
+                    long lastCovered = record.timestamp;
+                    messages.removeIf(message -> message.timestamp <= lastCovered);
+                    covered = lastCovered;
+                } else {
+                    continue;
+                }
+                summary = record;
+            } else {
+                messages.add(record);
+            }
+        }
+        // the session memory keeps no more than that either
+        messages.addAll(0, memories.subList(Math.max(0, memories.size() - maxMemories), memories.size()));
+        if (summary != null && summary.content != null) {
+            messages.add(0, new ConversationRecord(Type.SUMMARY, summary.content, 0, covered));
+        }
+        return messages;
+    }
+}
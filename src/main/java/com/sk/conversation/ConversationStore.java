@@ -0,0 +1,31 @@
+package com.sk.conversation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable log of conversations, keyed by conversation id. Histories append every
+ * message and summary as it happens and replay the log when a conversation is
+ * opened again, so only the working window of active conversations stays on the heap.
+ */
+public interface ConversationStore {
+
+    void append(String conversationId, ConversationRecord record);
+
+    /**
+     * The conversation's records in order, or an empty list for an unknown id.
+     */
+    List<ConversationRecord> load(String conversationId);
+
+    void delete(String conversationId);
+
+    /**
+     * Whether other application instances write to the same conversations. Histories
+     * of a shared store are replayed for every turn instead of being kept open.
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,283 @@
+package com.sk.conversation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conversation log kept as one text file per conversation in a directory that several
+ * application instances can share (a local stand-in for an external session store in
+ * multi-node tests).
+ *
+ * Every record is one line appended under an exclusive file lock, and readers take a
+ * shared lock, so instances never see each other's half-written records; a line torn
+ * by a crash has no newline and is ignored. When a summary or memory record is appended
+ * and most of the file has been summarised away or is over the memory cap, the file is
+ * rewritten with the folded log. Files not
+ * modified for longer than the TTL are deleted by a background task.
+ *
+ * Line layout: type, timestamp, compacted and content separated by tabs, with
+ * backslash, tab and line breaks escaped in the content; a null content has no field.
+ */
+public class FileConversationStore implements ConversationStore, Closeable {
+
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long ttlMillis;
+    private final int maxMemories;
+    private final Object[] stripes = new Object[64];
+    private final ScheduledExecutorService maintenance;
+
+    private final AtomicLong rewrites = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxMemories how many memory records a rewrite keeps, the oldest go first
+     */
+    public FileConversationStore(Path directory, Duration ttl, int maxMemories) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.ttlMillis = ttl.toMillis();
+        this.maxMemories = maxMemories;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        System.out.println("Conversation store uses shared directory " + directory);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void append(String conversationId, ConversationRecord record) {
+        Path path = pathFor(conversationId);
+        // FileLock is held per JVM, so threads of this instance are serialised first
+        synchronized (stripeFor(conversationId)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                channel.position(endOfLastRecord(channel));
+                writeFully(channel, encode(record));
+                // memory records are capped like summarised messages are dropped
+                if (record.getType() == ConversationRecord.Type.SUMMARY
+                        || record.getType() == ConversationRecord.Type.MEMORY) {
+                    List<ConversationRecord> records = read(channel);
+                    List<ConversationRecord> folded = ConversationRecord.fold(records, maxMemories);
+                    if (folded.size() * 2 < records.size()) {
+                        rewrite(channel, folded);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public List<ConversationRecord> load(String conversationId) {
+        Path path = pathFor(conversationId);
+        synchronized (stripeFor(conversationId)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                 FileLock ignored = channel.lock(0, Long.MAX_VALUE, true)) {
+                return read(channel);
+            } catch (NoSuchFileException e) {
+                return new ArrayList<>();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void delete(String conversationId) {
+        synchronized (stripeFor(conversationId)) {
+            try {
+                Files.deleteIfExists(pathFor(conversationId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "file");
+        stats.put("directory", directory.toString());
+        int conversations = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path ignored : files) {
+                conversations++;
+            }
+        } catch (IOException e) {
+            conversations = -1;
+        }
+        stats.put("conversations", conversations);
+        stats.put("rewrites", rewrites.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+    }
+
+    private void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - ttlMillis;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < idleBefore && Files.deleteIfExists(file)) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Conversation store maintenance failed: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Rewrites the file in place under the exclusive lock, so other instances keep
+     * appending to the same file instead of a replaced one.
+     */
+    private void rewrite(FileChannel channel, List<ConversationRecord> records) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (ConversationRecord record : records) {
+            content.append(encode(record));
+        }
+        channel.truncate(0);
+        channel.position(0);
+        writeFully(channel, content.toString());
+        channel.force(false);
+        rewrites.incrementAndGet();
+    }
+
+    /*
+     * Where the next record goes: the end of the file, or the start of a line torn by
+     * a crash, which the new record overwrites instead of being glued onto.
+     */
+    private static long endOfLastRecord(FileChannel channel) throws IOException {
+        long position = channel.size();
+        ByteBuffer last = ByteBuffer.allocate(1);
+        while (position > 0) {
+            last.clear();
+            channel.read(last, position - 1);
+            if (last.get(0) == '\n') {
+                break;
+            }
+            position--;
+        }
+        if (position < channel.size()) {
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    private static List<ConversationRecord> read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // keep reading until the buffer is full
+        }
+        String content = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        List<ConversationRecord> records = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = content.indexOf('\n', start)) >= 0) {
+            records.add(decode(content.substring(start, end)));
+            start = end + 1;
+        }
+        return records;
+    }
+
+    private static void writeFully(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String encode(ConversationRecord record) {
+        StringBuilder line = new StringBuilder()
+                .append(record.getType().name()).append('\t')
+                .append(record.getTimestamp()).append('\t')
+                .append(record.getCompacted());
+        if (record.getContent() != null) {
+            line.append('\t');
+            String content = record.getContent();
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                if (c == '\\') {
+                    line.append("\\\\");
+                } else if (c == '\t') {
+                    line.append("\\t");
+                } else if (c == '\n') {
+                    line.append("\\n");
+                } else if (c == '\r') {
+                    line.append("\\r");
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+        return line.append('\n').toString();
+    }
+
+    private static ConversationRecord decode(String line) {
+        String[] fields = line.split("\t", 4);
+        String content = null;
+        if (fields.length == 4) {
+            StringBuilder unescaped = new StringBuilder(fields[3].length());
+            for (int i = 0; i < fields[3].length(); i++) {
+                char c = fields[3].charAt(i);
+                if (c == '\\' && i + 1 < fields[3].length()) {
+                    char next = fields[3].charAt(++i);
+                    unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+                } else {
+                    unescaped.append(c);
+                }
+            }
+            content = unescaped.toString();
+        }
+        return new ConversationRecord(ConversationRecord.Type.valueOf(fields[0]), content,
+                Integer.parseInt(fields[2]), Long.parseLong(fields[1]));
+    }
+
+    private Object stripeFor(String conversationId) {
+        return stripes[Math.floorMod(conversationId.hashCode(), stripes.length)];
+    }
+
+    private Path pathFor(String conversationId) {
+        // ids contain ':' and client-chosen characters, so the file name is encoded
+        String name = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(conversationId.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(name + SUFFIX);
+    }
+}
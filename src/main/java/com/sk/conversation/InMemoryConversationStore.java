@@ -0,0 +1,128 @@
+package com.sk.conversation;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conversation log kept on the heap of this instance. Summaries are folded in as they
+ * are appended, so a conversation holds at most one summary and its live messages;
+ * conversations idle for longer than the TTL are evicted by a background task.
+ * Nothing survives a restart.
+ */
+public class InMemoryConversationStore implements ConversationStore, Closeable {
+
+    private final long ttlMillis;
+    private final int maxMemories;
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintenance;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxMemories how many memory records a conversation keeps, the oldest go first
+     */
+    public InMemoryConversationStore(Duration ttl, int maxMemories) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxMemories = maxMemories;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void append(String conversationId, ConversationRecord record) {
+        conversations.compute(conversationId, (id, conversation) -> {
+            if (conversation == null) {
+                conversation = new Conversation();
+            }
+            conversation.records.add(record);
+            if (record.getType() == ConversationRecord.Type.SUMMARY) {
+                List<ConversationRecord> folded = ConversationRecord.fold(conversation.records, maxMemories);
+                conversation.records.clear();
+                conversation.records.addAll(folded);
+            } else if (record.getType() == ConversationRecord.Type.MEMORY) {
+                conversation.dropOldMemories(maxMemories);
+            }
+            conversation.lastAccess = System.currentTimeMillis();
+            return conversation;
+        });
+    }
+
+    @Override
+    public List<ConversationRecord> load(String conversationId) {
+        List<ConversationRecord> records = new ArrayList<>();
+        conversations.computeIfPresent(conversationId, (id, conversation) -> {
+            records.addAll(conversation.records);
+            conversation.lastAccess = System.currentTimeMillis();
+            return conversation;
+        });
+        return records;
+    }
+
+    @Override
+    public void delete(String conversationId) {
+        conversations.remove(conversationId);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "memory");
+        stats.put("conversations", conversations.size());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+    }
+
+    private void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - ttlMillis;
+        for (String id : conversations.keySet()) {
+            // re-checked under the entry's lock, a turn may have touched it meanwhile
+            conversations.computeIfPresent(id, (key, conversation) -> {
+                if (conversation.lastAccess >= idleBefore) {
+                    return conversation;
+                }
+                evictions.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    private static final class Conversation {
+        final List<ConversationRecord> records = new ArrayList<>();
+        long lastAccess;
+
+        void dropOldMemories(int maxMemories) {
+            int memories = 0;
+            for (ConversationRecord record : records) {
+                if (record.getType() == ConversationRecord.Type.MEMORY) {
+                    memories++;
+                }
+            }
+            for (int i = 0; i < records.size() && memories > maxMemories; ) {
+                if (records.get(i).getType() == ConversationRecord.Type.MEMORY) {
+                    records.remove(i);
+                    memories--;
+                } else {
+                    i++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.sk.conversation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conversation log kept in append-only, memory-mapped files, one per shard, with an
+ * in-memory index of record offsets per conversation id.
+ *
+ * A record is written body first and its length last, so a record torn by a crash
+ * reads as the end of the log when the shard is scanned on startup. A summary
+ * makes the messages it replaces dead, and so does a memory record over the cap for
+ * the oldest one; a background task rewrites shards that are
+ * mostly dead records, evicts conversations idle for longer than the TTL and
+ * flushes the mappings to disk.
+ *
+ * Record layout: int length, byte type, long timestamp, int compacted,
+ * short id length, id bytes, int content length (-1 for null), content bytes.
+ */
+public class MappedConversationStore implements ConversationStore, Closeable {
+
+    private static final byte TOMBSTONE = 127;
+    private static final int MAX_SHARD_BYTES = Integer.MAX_VALUE - 8;
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Shard[] shards;
+    private final long ttlMillis;
+    private final int maxMemories;
+    private final Map<String, Conversation> index = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintenance;
+
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxMemories how many memory records a conversation keeps, the oldest go first
+     */
+    public MappedConversationStore(Path directory, int shardCount, int initialShardBytes, Duration ttl,
+                                   int maxMemories) throws IOException {
+        Files.createDirectories(directory);
+        this.ttlMillis = ttl.toMillis();
+        this.maxMemories = maxMemories;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(directory.resolve("conversations-" + i + ".log"), initialShardBytes);
+            recover(shards[i]);
+        }
+        System.out.println("Conversation store opened " + directory + " with " + index.size() + " conversations");
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void append(String conversationId, ConversationRecord record) {
+        Shard shard = shardFor(conversationId);
+        synchronized (shard) {
+            Entry entry = shard.write(conversationId, record);
+            Conversation conversation = index.computeIfAbsent(conversationId, id -> new Conversation(shard, maxMemories));
+            shard.deadBytes += conversation.add(entry, record.getCompacted());
+            conversation.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public List<ConversationRecord> load(String conversationId) {
+        Conversation conversation = index.get(conversationId);
+        if (conversation == null) {
+            return new ArrayList<>();
+        }
+        synchronized (conversation.shard) {
+            conversation.lastAccess = System.currentTimeMillis();
+            return conversation.read();
+        }
+    }
+
+    @Override
+    public void delete(String conversationId) {
+        Shard shard = shardFor(conversationId);
+        synchronized (shard) {
+            Conversation conversation = index.remove(conversationId);
+            if (conversation != null) {
+                Entry tombstone = shard.write(conversationId, null);
+                shard.deadBytes += conversation.liveBytes() + tombstone.size;
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "mapped");
+        stats.put("conversations", index.size());
+        long used = 0;
+        long dead = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                used += shard.position;
+                dead += shard.deadBytes;
+            }
+        }
+        stats.put("logBytes", used);
+        stats.put("deadBytes", dead);
+        stats.put("compactions", compactions.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        maintenance.shutdownNow();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.buffer.force();
+                shard.channel.close();
+            }
+        }
+    }
+
+    private Shard shardFor(String conversationId) {
+        return shards[Math.floorMod(conversationId.hashCode(), shards.length)];
+    }
+
+    private void recover(Shard shard) {
+        int position = 0;
+        while (position + 4 <= shard.buffer.capacity()) {
+            int length = shard.buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > shard.buffer.capacity()) {
+                break;
+            }
+            String conversationId = shard.readId(position);
+            Entry entry = new Entry(position, 4 + length, shard.buffer.get(position + 4),
+                    shard.buffer.getLong(position + 5));
+            if (entry.type == TOMBSTONE) {
+                Conversation removed = index.remove(conversationId);
+                shard.deadBytes += entry.size + (removed == null ? 0 : removed.liveBytes());
+            } else {
+                Conversation conversation = index.computeIfAbsent(conversationId, id -> new Conversation(shard, maxMemories));
+                shard.deadBytes += conversation.add(entry, shard.buffer.getInt(position + 13));
+                conversation.lastAccess = Math.max(conversation.lastAccess, shard.buffer.getLong(position + 5));
+            }
+            position += entry.size;
+        }
+        shard.position = position;
+    }
+
+    private void maintain() {
+        try {
+            long idleBefore = System.currentTimeMillis() - ttlMillis;
+            for (Map.Entry<String, Conversation> conversation : index.entrySet()) {
+                if (conversation.getValue().lastAccess < idleBefore) {
+                    delete(conversation.getKey());
+                    evictions.incrementAndGet();
+                }
+            }
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    if (shard.position > MIN_COMPACTION_BYTES && shard.deadBytes * 2 > shard.position) {
+                        compact(shard);
+                    }
+                    shard.buffer.force();
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Conversation store maintenance failed: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Rewrites the shard with only the live records of its conversations, each
+     * conversation's summary first, then swaps the new file in. If the swap fails the
+     * shard stays as it was. Caller holds the lock.
+     */
+    private void compact(Shard shard) throws IOException {
+        Path temp = shard.path.resolveSibling(shard.path.getFileName() + ".compact");
+        Files.deleteIfExists(temp);
+        Shard target = new Shard(temp, Math.max(shard.initialBytes, (int) Math.min(MAX_SHARD_BYTES,
+                (shard.position - shard.deadBytes) * 2)));
+        Map<Conversation, List<Entry>> moved = new LinkedHashMap<>();
+        for (Map.Entry<String, Conversation> item : index.entrySet()) {
+            Conversation conversation = item.getValue();
+            if (conversation.shard != shard) {
+                continue;
+            }
+            List<Entry> entries = new ArrayList<>();
+            for (ConversationRecord record : conversation.read()) {
+                entries.add(target.write(item.getKey(), record));
+            }
+            moved.put(conversation, entries);
+        }
+        target.buffer.force();
+        target.channel.close();
+        try {
+            Files.move(temp, shard.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g. Windows will not replace a file that is still mapped; the shard is
+            // untouched and keeps taking appends, the next maintenance run tries again
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // removed before the next attempt
+            }
+            throw e;
+        }
+        // only now, so a failed move leaves the shard open
+        shard.channel.close();
+
+        long before = shard.position;
+        shard.open(Math.max(shard.initialBytes, target.buffer.capacity()));
+        shard.position = target.position;
+        shard.deadBytes = 0;
+        moved.forEach(Conversation::replace);
+        compactions.incrementAndGet();
+        System.out.println("Compacted " + shard.path.getFileName() + " from " + before + " to " + shard.position + " bytes");
+    }
+
+    private static final class Shard {
+
+        final Path path;
+        final int initialBytes;
+        FileChannel channel;
+        MappedByteBuffer buffer;
+        int position;
+        long deadBytes;
+
+        Shard(Path path, int initialBytes) throws IOException {
+            this.path = path;
+            this.initialBytes = initialBytes;
+            open(Math.max(initialBytes, Files.exists(path) ? (int) Math.min(MAX_SHARD_BYTES, Files.size(path)) : 0));
+        }
+
+        void open(int size) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        /**
+         * Appends a record, or a tombstone when the record is null.
+         */
+        Entry write(String conversationId, ConversationRecord record) {
+            byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+            byte[] content = record == null || record.getContent() == null
+                    ? null
+                    : record.getContent().getBytes(StandardCharsets.UTF_8);
+            int length = 1 + 8 + 4 + 2 + id.length + 4 + (content == null ? 0 : content.length);
+            ensureCapacity(position + 4 + length + 4);
+
+            int at = position + 4;
+            byte type = record == null ? TOMBSTONE : (byte) record.getType().ordinal();
+            buffer.put(at, type);
+            buffer.putLong(at + 1, record == null ? System.currentTimeMillis() : record.getTimestamp());
+            buffer.putInt(at + 9, record == null ? 0 : record.getCompacted());
+            buffer.putShort(at + 13, (short) id.length);
+            buffer.put(at + 15, id);
+            at += 15 + id.length;
+            buffer.putInt(at, content == null ? -1 : content.length);
+            if (content != null) {
+                buffer.put(at + 4, content);
+            }
+            // the length goes in last so that a torn record ends the log
+            buffer.putInt(position, length);
+
+            Entry entry = new Entry(position, 4 + length, type, record == null ? 0 : record.getTimestamp());
+            position += entry.size;
+            return entry;
+        }
+
+        String readId(int offset) {
+            int idLength = buffer.getShort(offset + 17);
+            byte[] id = new byte[idLength];
+            buffer.get(offset + 19, id);
+            return new String(id, StandardCharsets.UTF_8);
+        }
+
+        ConversationRecord read(int offset) {
+            byte type = buffer.get(offset + 4);
+            long timestamp = buffer.getLong(offset + 5);
+            int compacted = buffer.getInt(offset + 13);
+            int at = offset + 19 + buffer.getShort(offset + 17);
+            int contentLength = buffer.getInt(at);
+            String content = null;
+            if (contentLength >= 0) {
+                byte[] bytes = new byte[contentLength];
+                buffer.get(at + 4, bytes);
+                content = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new ConversationRecord(ConversationRecord.Type.values()[type], content, compacted, timestamp);
+        }
+
+        private void ensureCapacity(long needed) {
+            if (needed <= buffer.capacity()) {
+                return;
+            }
+            if (needed > MAX_SHARD_BYTES) {
+                throw new IllegalStateException("Conversation shard " + path + " is full");
+            }
+            try {
+                // remapping a larger region extends the file; the old mapping is released by GC
+                buffer.force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        Math.min(MAX_SHARD_BYTES, Math.max(needed, (long) buffer.capacity() * 2)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot grow conversation shard " + path, e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final int offset;
+        final int size;
+        final byte type;
+        final long timestamp;
+
+        Entry(int offset, int size, byte type, long timestamp) {
+            this.offset = offset;
+            this.size = size;
+            this.type = type;
+            this.timestamp = timestamp;
+        }
+
+        boolean isSummary() {
+            return type == ConversationRecord.Type.SUMMARY.ordinal();
+        }
+
+        boolean isMemory() {
+            return type == ConversationRecord.Type.MEMORY.ordinal();
+        }
+    }
+
+    /**
+     * Offsets of a conversation's live records. Guarded by its shard's lock.
+     */
+    private static final class Conversation {
+
+        final Shard shard;
+        final int maxMemories;
+        final List<Entry> entries = new ArrayList<>();
+        int memories;
+        // timestamp of the newest message the live summary replaced
+        long covered = Long.MIN_VALUE;
+        volatile long lastAccess;
+
+        Conversation(Shard shard, int maxMemories) {
+            this.shard = shard;
+            this.maxMemories = maxMemories;
+        }
+
+        /**
+         * Adds a record and drops the entries a summary makes obsolete, or the oldest
+         * memory record over the cap, as {@link ConversationRecord#fold} does. A summary
+         * covering less than the live one is dead on arrival.
+         *
+         * @return the bytes that became dead
+         */
+        long add(Entry entry, int compacted) {
+            if (entry.isSummary() && compacted == 0 && entry.timestamp < covered) {
+                return entry.size;
+            }
+            long dead = 0;
+            if (entry.isMemory() && ++memories > maxMemories) {
+                for (int i = 0; i < entries.size(); i++) {
+                    if (entries.get(i).isMemory()) {
+                        dead += entries.remove(i).size;
+                        memories--;
+                        break;
+                    }
+                }
+            }
+            if (entry.isSummary()) {
+                int remaining = compacted;
+                for (int i = 0; i < entries.size(); ) {
+                    Entry existing = entries.get(i);
+                    boolean replaced = !existing.isSummary() && !existing.isMemory()
+                            && (compacted > 0 ? remaining-- > 0 : existing.timestamp <= entry.timestamp);
+                    if (replaced) {
+                        covered = Math.max(covered, existing.timestamp);
+                    }
+                    if (existing.isSummary() || replaced) {
+                        dead += existing.size;
+                        entries.remove(i);
+                    } else {
+                        i++;
+                    }
+                }
+                if (compacted == 0) {
+                    covered = entry.timestamp;
+                }
+            }
+            entries.add(entry);
+            return dead;
+        }
+
+        /*
+         * The live records with the summary moved to the front, where it replaces
+         * nothing, so replaying them rebuilds the same conversation.
+         */
+        List<ConversationRecord> read() {
+            List<ConversationRecord> records = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                ConversationRecord record = shard.read(entry.offset);
+                if (entry.isSummary()) {
+                    records.add(0, new ConversationRecord(record.getType(), record.getContent(), 0, covered));
+                } else {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+
+        long liveBytes() {
+            long bytes = 0;
+            for (Entry entry : entries) {
+                bytes += entry.size;
+            }
+            return bytes;
+        }
+
+        void replace(List<Entry> moved) {
+            entries.clear();
+            entries.addAll(moved);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.sk.deadline;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * The point in time by which a request must be answered. It travels two ways, so
+ * every hop can give itself only the time that is left:
+ *
+ * - in the Reactor context of the request's Mono, for the chat and embedding calls
+ *   ({@link #bound(Mono)});
+ * - in a thread local while blocking code runs for the request, i.e. kernel functions
+ *   and outbound HTTP ({@link #current()}, {@link #callWithin}).
+ */
+public final class Deadline {
+
+    public static final String CONTEXT_KEY = "com.sk.deadline";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtMillis;
+
+    private Deadline(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public static Deadline after(long millis) {
+        return new Deadline(System.currentTimeMillis() + millis);
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, expiresAtMillis - System.currentTimeMillis());
+    }
+
+    public Duration remaining() {
+        return Duration.ofMillis(remainingMillis());
+    }
+
+    public boolean isExpired() {
+        return remainingMillis() == 0;
+    }
+
+    /**
+     * This deadline, or an earlier one {@code millis} from now.
+     */
+    public Deadline atMost(long millis) {
+        return new Deadline(Math.min(expiresAtMillis, System.currentTimeMillis() + millis));
+    }
+
+    /**
+     * Fails the Mono with {@link DeadlineExceededException} once the deadline passes,
+     * cancelling whatever it is still waiting for, and hands the deadline to everything
+     * upstream through the Reactor context.
+     */
+    public <T> Mono<T> enforce(Mono<T> mono) {
+        return Mono.defer(() -> isExpired()
+                        ? Mono.<T>error(new DeadlineExceededException())
+                        : mono.timeout(remaining(), Mono.error(DeadlineExceededException::new)))
+                .contextWrite(Context.of(CONTEXT_KEY, this));
+    }
+
+    public static Deadline from(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, null);
+    }
+
+    /**
+     * Bounds a Mono by the deadline found in its subscriber context or, failing that,
+     * the current deadline of the thread assembling it, if there is one.
+     */
+    public static <T> Mono<T> bound(Mono<T> mono) {
+        Deadline assembledWith = CURRENT.get();
+        return Mono.deferContextual(context -> {
+            Deadline deadline = from(context) != null ? from(context) : assembledWith;
+            return deadline == null ? mono : deadline.enforce(mono);
+        });
+    }
+
+    /**
+     * Enforces the current thread's deadline, if there is one, on a Mono assembled for
+     * the request; see {@link DeadlineFilter}.
+     */
+    public static <T> Mono<T> enforceCurrent(Mono<T> mono) {
+        Deadline deadline = CURRENT.get();
+        return deadline == null ? mono : deadline.enforce(mono);
+    }
+
+    /**
+     * The deadline of the request the current thread is working for, or null.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * The time left for the current request, no more than {@code cap}.
+     */
+    public static Duration remaining(Duration cap) {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return cap;
+        }
+        Duration remaining = deadline.remaining();
+        return remaining.compareTo(cap) < 0 ? remaining : cap;
+    }
+
+    /**
+     * Runs blocking work with {@code deadline} as the current thread's deadline.
+     */
+    public static <T> T callWithin(Deadline deadline, Supplier<T> work) {
+        Deadline previous = bind(deadline);
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Makes {@code deadline} the current thread's deadline and returns the one it replaces,
+     * to be put back with {@link #restore} in a finally block.
+     */
+    public static Deadline bind(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        return previous;
+    }
+
+    public static void restore(Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[" + remainingMillis() + " ms left]";
+    }
+}
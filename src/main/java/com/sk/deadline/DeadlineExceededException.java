@@ -0,0 +1,12 @@
+package com.sk.deadline;
+
+/**
+ * The request ran out of time; whatever it was still waiting for has been cancelled.
+ * Surfaced to clients as 504.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException() {
+        super("The request did not complete within its deadline");
+    }
+}
@@ -0,0 +1,61 @@
+package com.sk.deadline;
+
+import com.sk.config.DeadlineConfig;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Starts the clock of every request. The deadline comes from the client's timeout
+ * header (capped by deadline.max-ms) or else the route's default, the route being the
+ * last path segment (chapter2, skChat, ...) as in {@link com.sk.kernel.chat.ChatRoute}.
+ * It is the current deadline while the controller runs; controllers returning a Mono
+ * hand it on with {@link Deadline#enforce}.
+ */
+@Component
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    private final DeadlineConfig config;
+
+    @Autowired
+    public DeadlineFilter(DeadlineConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!config.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Deadline previous = Deadline.bind(Deadline.after(timeoutMillis(request)));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Deadline.restore(previous);
+        }
+    }
+
+    private long timeoutMillis(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String route = path.substring(path.lastIndexOf('/') + 1);
+        long timeout = config.getTimeoutMs(route);
+        String header = request.getHeader(config.getHeader());
+        if (header != null) {
+            try {
+                // a client may ask for less time than the route allows, or more up to the cap
+                timeout = Math.min(Long.parseLong(header.trim()), config.getMaxMs());
+            } catch (NumberFormatException e) {
+                // ignore a malformed header and keep the route's default
+            }
+        }
+        return Math.max(0, timeout);
+    }
+}
@@ -0,0 +1,125 @@
+package com.sk.dependency;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The share of the process one dependency may occupy: at most maxConcurrent calls in
+ * progress, and a bounded scheduler of its own (threads, queue) for the blocking
+ * work that calls it. A call finding its bulkhead full fails at once with
+ * {@link BulkheadFullException} instead of waiting, so a slow weather API ties up
+ * weather's threads and connections only, never those of chat or search.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int threads;
+    private final int queue;
+    private final Semaphore permits;
+    private volatile Scheduler scheduler;
+
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrent, int threads, int queue) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.threads = threads;
+        this.queue = queue;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Takes a place if one is free; a caller that gets true must call {@link #exit()}.
+     */
+    public boolean tryEnter() {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        admitted.incrementAndGet();
+        peak.accumulateAndGet(maxConcurrent - permits.availablePermits(), Math::max);
+        return true;
+    }
+
+    public void exit() {
+        permits.release();
+    }
+
+    /**
+     * Counts work turned away by the bulkhead's scheduler because its queue was full.
+     */
+    public void onRejected() {
+        rejected.incrementAndGet();
+    }
+
+    public BulkheadFullException full() {
+        return new BulkheadFullException(name);
+    }
+
+    /**
+     * Runs a cold Mono inside the bulkhead, holding its place until the Mono
+     * terminates or is cancelled.
+     */
+    public <T> Mono<T> limit(Mono<T> work) {
+        return Mono.defer(() -> {
+            if (!tryEnter()) {
+                return Mono.error(full());
+            }
+            return work.doFinally(signal -> exit());
+        });
+    }
+
+    /**
+     * The dependency's own threads for blocking calls; created on first use.
+     */
+    public Scheduler scheduler() {
+        Scheduler current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                current = scheduler;
+                if (current == null) {
+                    current = Schedulers.newBoundedElastic(threads, queue, "bulkhead-" + name, 60, true);
+                    scheduler = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public void dispose() {
+        Scheduler current = scheduler;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("inUse", maxConcurrent - permits.availablePermits());
+        stats.put("peak", peak.get());
+        stats.put("admitted", admitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("threads", threads);
+        stats.put("queue", queue);
+        return stats;
+    }
+}
@@ -0,0 +1,16 @@
+package com.sk.dependency;
+
+import com.sk.ratelimit.AdmissionRejectedException;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a dependency already has as many calls in progress as its bulkhead
+ * allows. Like any other load shedding it reaches clients as 503 with Retry-After.
+ */
+public class BulkheadFullException extends AdmissionRejectedException {
+
+    public BulkheadFullException(String dependency) {
+        super("Too many calls to " + dependency + " in progress", Duration.ofSeconds(1));
+    }
+}
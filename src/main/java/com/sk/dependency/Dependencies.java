@@ -0,0 +1,131 @@
+package com.sk.dependency;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import com.sk.config.AzureAIConfig;
+import com.sk.metrics.StatsSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The upstream services the application calls, each a {@link Dependency} configured
+ * under client.dependencies.&lt;name&gt; (see {@link AzureAIConfig}).
+ *
+ * Each is also a bulkhead: its own concurrency limit, its own threads for the tool
+ * calls that use it, and its own connection pool (an Azure HTTP client for chat,
+ * embeddings and search, a JDK client in the outbound pool for geo and weather).
+ */
+@Component
+public class Dependencies implements StatsSource {
+
+    public static final String GEO = "geo";
+    public static final String WEATHER = "weather";
+    public static final String SEARCH = "search";
+    public static final String EMBEDDINGS = "embeddings";
+    public static final String CHAT = "chat";
+    public static final String FAST_CHAT = "fast-chat";
+
+    // the dependency whose threads run each plugin's tool calls
+    private static final Map<String, String> PLUGINS = Map.of(
+            "GeocodingPlugin", GEO,
+            "WeatherPlugin", WEATHER,
+            "AISearchPlugin", SEARCH);
+
+    private final AzureAIConfig config;
+    private final Map<String, Dependency> dependencies = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+    private final Map<String, HttpClient> httpClients = new ConcurrentHashMap<>();
+
+    @Autowired
+    public Dependencies(AzureAIConfig config) {
+        this.config = config;
+    }
+
+    public Dependency get(String name) {
+        return dependencies.computeIfAbsent(name, n -> new Dependency(n,
+                config.getDependencyTimeoutPercentile(n),
+                config.getDependencyTimeoutMultiplier(n),
+                config.getDependencyMinTimeoutMs(n),
+                config.getDependencyMaxTimeoutMs(n),
+                config.getDependencyMaxRetries(n),
+                config.getDependencyBaseBackoffMs(n),
+                config.getDependencyMaxBackoffMs(n),
+                config.getDependencyRetryBudgetPercent(n),
+                new Bulkhead(n, config.getDependencyMaxConcurrent(n), config.getDependencyThreads(n),
+                        config.getDependencyQueue(n))));
+    }
+
+    /**
+     * The dependency a plugin's tool calls go to, or null for plugins that call nothing.
+     */
+    public Dependency forPlugin(String plugin) {
+        String name = PLUGINS.get(plugin);
+        return name == null ? null : get(name);
+    }
+
+    /**
+     * An Azure SDK HTTP client with a connection pool of the dependency's own, at most
+     * max-concurrent connections.
+     */
+    public HttpClient httpClient(String name) {
+        return httpClients.computeIfAbsent(name, n -> {
+            ConnectionProvider connections = ConnectionProvider.builder("dependency-" + n)
+                    .maxConnections(config.getDependencyMaxConcurrent(n))
+                    .pendingAcquireMaxCount(config.getDependencyQueue(n))
+                    .build();
+            connectionProviders.put(n, connections);
+            return new NettyAsyncHttpClientBuilder().connectionProvider(connections).build();
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+        dependencies.values().forEach(dependency -> dependency.getBulkhead().dispose());
+    }
+
+    /**
+     * The dependency an outbound HTTP call goes to, by the host of the configured
+     * geo and weather URLs, or null for any other host.
+     */
+    public Dependency forUri(URI uri) {
+        String host = uri.getHost();
+        if (host == null) {
+            return null;
+        }
+        if (host.equalsIgnoreCase(hostOf(config.getGeourl()))) {
+            return get(GEO);
+        }
+        if (host.equalsIgnoreCase(hostOf(config.getWeatherurl()))) {
+            return get(WEATHER);
+        }
+        return null;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return url == null || url.isEmpty() ? null : URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return "dependencies";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        dependencies.forEach((name, dependency) -> stats.put(name, dependency.getStats()));
+        return stats;
+    }
+}
@@ -0,0 +1,214 @@
+package com.sk.dependency;
+
+import com.azure.core.exception.HttpResponseException;
+import com.sk.deadline.Deadline;
+import com.sk.metrics.LatencyRecorder;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One upstream service (geo, weather, search, embeddings, chat) with a timeout that
+ * follows its own latency and a budget for retrying it.
+ *
+ * The timeout of an attempt is a rolling percentile of recent attempt latencies times
+ * a multiplier, kept between a floor and a ceiling (the ceiling until enough samples
+ * exist), and never past the request's {@link Deadline}. Failed attempts that may
+ * succeed on a second try (timeouts, connection errors, 5xx) are retried after a
+ * full-jitter exponential backoff, as long as the retry budget allows: every call
+ * earns {@code retryBudgetPercent / 100} of a retry and every retry spends one, so
+ * when the upstream is down retries add at most that share of extra load instead of
+ * multiplying it.
+ *
+ * Calls also run inside the dependency's {@link Bulkhead}, so when it is saturated
+ * further calls fail at once rather than queue behind the slow ones.
+ */
+public class Dependency {
+
+    private static final int MIN_SAMPLES = 20;
+
+    private final String name;
+    private final double timeoutPercentile;
+    private final double timeoutMultiplier;
+    private final long minTimeoutMillis;
+    private final long maxTimeoutMillis;
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double budgetRatio;
+    private final double maxBudget;
+    private final LatencyRecorder latencies = new LatencyRecorder(500);
+    private final Bulkhead bulkhead;
+
+    private double budget;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesOverBudget = new AtomicLong();
+
+    public Dependency(String name, double timeoutPercentile, double timeoutMultiplier, long minTimeoutMillis,
+                      long maxTimeoutMillis, int maxRetries, long baseBackoffMillis, long maxBackoffMillis,
+                      double retryBudgetPercent, Bulkhead bulkhead) {
+        this.name = name;
+        this.timeoutPercentile = timeoutPercentile;
+        this.timeoutMultiplier = timeoutMultiplier;
+        this.minTimeoutMillis = minTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.budgetRatio = retryBudgetPercent / 100.0;
+        this.maxBudget = Math.max(1, budgetRatio * 100);
+        // a fresh process may retry a little before it has earned anything
+        this.budget = maxBudget;
+        this.bulkhead = bulkhead;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * The timeout for the next attempt, before the request's deadline is applied.
+     */
+    public long timeoutMillis() {
+        if (latencies.count() < MIN_SAMPLES) {
+            return maxTimeoutMillis;
+        }
+        long adaptive = (long) (latencies.percentile(timeoutPercentile) * timeoutMultiplier);
+        return Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, adaptive));
+    }
+
+    /**
+     * The timeout for the next attempt, cut to the time left before {@code deadline} (may be null).
+     */
+    public long timeoutMillis(Deadline deadline) {
+        long timeout = timeoutMillis();
+        return deadline == null ? timeout : Math.min(timeout, deadline.remainingMillis());
+    }
+
+    /**
+     * Called once per call, before its first attempt.
+     */
+    public void onCall() {
+        calls.incrementAndGet();
+        synchronized (this) {
+            budget = Math.min(maxBudget, budget + budgetRatio);
+        }
+    }
+
+    /**
+     * Records how long an attempt took; failed and timed-out attempts count too, so a
+     * dependency that slows down gets a longer timeout instead of timing out forever.
+     */
+    public void onAttempt(long millis, boolean failed, boolean timedOut) {
+        latencies.record(millis);
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        if (timedOut) {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * How long to wait before retry number {@code retry} (1 for the first), or -1 if it
+     * must not be made: too many retries already, no time left before the deadline, or
+     * no retry budget left.
+     */
+    public long retryDelayMillis(int retry, Deadline deadline) {
+        if (retry > maxRetries) {
+            return -1;
+        }
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(retry - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (deadline != null && delay >= deadline.remainingMillis()) {
+            return -1;
+        }
+        synchronized (this) {
+            if (budget < 1) {
+                retriesOverBudget.incrementAndGet();
+                return -1;
+            }
+            budget -= 1;
+        }
+        retries.incrementAndGet();
+        return delay;
+    }
+
+    /**
+     * Runs a cold Mono against this dependency: each attempt gets the adaptive timeout
+     * and retryable failures are retried within the budget. The deadline comes from the
+     * subscriber context, or else from the thread that assembled the Mono. A call that
+     * finds the bulkhead full fails with {@link BulkheadFullException}.
+     */
+    public <T> Mono<T> execute(Mono<T> work) {
+        Deadline assembledWith = Deadline.current();
+        return bulkhead.limit(Mono.deferContextual(context -> {
+            Deadline deadline = Deadline.from(context) != null ? Deadline.from(context) : assembledWith;
+            onCall();
+            return attempt(work, deadline, 0);
+        }));
+    }
+
+    private <T> Mono<T> attempt(Mono<T> work, Deadline deadline, int retry) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return work.timeout(Duration.ofMillis(timeoutMillis(deadline)))
+                    .doOnSuccess(value -> onAttempt((System.nanoTime() - start) / 1_000_000, false, false))
+                    .onErrorResume(error -> {
+                        onAttempt((System.nanoTime() - start) / 1_000_000, true, error instanceof TimeoutException);
+                        long delay = isRetryable(error) ? retryDelayMillis(retry + 1, deadline) : -1;
+                        if (delay < 0) {
+                            return Mono.error(error);
+                        }
+                        return Mono.delay(Duration.ofMillis(delay)).then(attempt(work, deadline, retry + 1));
+                    });
+        });
+    }
+
+    /*
+     * Timeouts, connection failures and server errors may go away on a second try;
+     * client errors and throttling (retried by the admission controllers) do not.
+     */
+    static boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof IOException) {
+                return true;
+            }
+            if (cause instanceof HttpResponseException) {
+                HttpResponseException http = (HttpResponseException) cause;
+                int status = http.getResponse() == null ? 0 : http.getResponse().getStatusCode();
+                return status == 408 || status >= 500;
+            }
+        }
+        return false;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.get());
+        stats.put("failedAttempts", failures.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("retries", retries.get());
+        stats.put("retriesOverBudget", retriesOverBudget.get());
+        stats.put("retryBudget", budget);
+        stats.put("p50Millis", latencies.percentile(0.5));
+        stats.put("p99Millis", latencies.percentile(0.99));
+        stats.put("timeoutMillis", timeoutMillis());
+        stats.put("bulkhead", bulkhead.getStats());
+        return stats;
+    }
+}
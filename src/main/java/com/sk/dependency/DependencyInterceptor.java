@@ -0,0 +1,94 @@
+package com.sk.dependency;
+
+import com.sk.deadline.Deadline;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Applies the {@link Dependency} of the called host to RestTemplate calls: each
+ * attempt runs under the dependency's adaptive timeout (handed to the request factory
+ * as the current {@link Deadline}), and connection failures, timeouts, 408 and 5xx
+ * answers are retried with jittered backoff within the dependency's retry budget.
+ * Throttling (429) is not retried here but returned to the caller.
+ * The call holds a place in the dependency's {@link Bulkhead} throughout; when none
+ * is free it fails at once with {@link BulkheadFullException}.
+ */
+public class DependencyInterceptor implements ClientHttpRequestInterceptor {
+
+    private final Dependencies dependencies;
+
+    public DependencyInterceptor(Dependencies dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Dependency dependency = dependencies.forUri(request.getURI());
+        if (dependency == null) {
+            return execution.execute(request, body);
+        }
+        Bulkhead bulkhead = dependency.getBulkhead();
+        if (!bulkhead.tryEnter()) {
+            throw bulkhead.full();
+        }
+        try {
+            return execute(dependency, request, body, execution);
+        } finally {
+            bulkhead.exit();
+        }
+    }
+
+    private static ClientHttpResponse execute(Dependency dependency, HttpRequest request, byte[] body,
+                                              ClientHttpRequestExecution execution) throws IOException {
+        Deadline deadline = Deadline.current();
+        dependency.onCall();
+        for (int retry = 1; ; retry++) {
+            long timeout = dependency.timeoutMillis(deadline);
+            Deadline attemptDeadline = deadline == null ? Deadline.after(timeout) : deadline.atMost(timeout);
+            long start = System.nanoTime();
+            Deadline previous = Deadline.bind(attemptDeadline);
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                int status = response.getStatusCode().value();
+                // as in Dependency.isRetryable: a 429 goes back to the caller at once, so
+                // its rate limiter sees it and honours Retry-After
+                boolean failed = status == 408 || status >= 500;
+                dependency.onAttempt((System.nanoTime() - start) / 1_000_000, failed, false);
+                if (!failed) {
+                    return response;
+                }
+                long delay = dependency.retryDelayMillis(retry, deadline);
+                if (delay < 0) {
+                    return response;
+                }
+                response.close();
+                pause(delay);
+            } catch (IOException e) {
+                dependency.onAttempt((System.nanoTime() - start) / 1_000_000, true, e instanceof SocketTimeoutException);
+                long delay = dependency.retryDelayMillis(retry, deadline);
+                if (delay < 0) {
+                    throw e;
+                }
+                pause(delay);
+            } finally {
+                Deadline.restore(previous);
+            }
+        }
+    }
+
+    private static void pause(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.sk.history;
+
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.config.ConversationConfig;
+import com.sk.config.HistoryConfig;
+import com.sk.conversation.ConversationStore;
+import com.sk.kernel.chat.ChatRoute;
+import com.sk.kernel.kernelUtil;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the token-budgeted session histories (with a long-term memory where the
+ * route enables one) and writes the rolling summaries they compact older turns into.
+ */
+@Component
+public class HistoryManager implements StatsSource {
+
+    private static final String SUMMARY_PROMPT =
+            "You maintain a running summary of a conversation between a user and an assistant. "
+                    + "Merge the existing summary with the new messages into one updated summary. "
+                    + "Keep names, places, dates, preferences, decisions and open questions; drop small talk. "
+                    + "Write at most %d words of plain prose.";
+
+    // a summary that never arrives must not hold the conversation's compaction forever
+    private static final Duration SUMMARY_TIMEOUT = Duration.ofMinutes(2);
+
+    private final kernelUtil kernelUtil;
+    private final HistoryConfig historyConfig;
+    private final ConversationStore store;
+    private final Map<String, ManagedChatHistory> open;
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong failedCompactions = new AtomicLong();
+    private final AtomicLong compactedMessages = new AtomicLong();
+    private final AtomicLong compactedTokens = new AtomicLong();
+    private final AtomicLong reopened = new AtomicLong();
+    private final AtomicLong memoryRecalls = new AtomicLong();
+    private final AtomicLong recalledExchanges = new AtomicLong();
+
+    @Autowired
+    public HistoryManager(kernelUtil kernelUtil, HistoryConfig historyConfig, ConversationStore store,
+                          ConversationConfig conversationConfig) {
+        this.kernelUtil = kernelUtil;
+        this.historyConfig = historyConfig;
+        this.store = store;
+        int maxOpen = conversationConfig.getMaxOpen();
+        // working windows of the most recently used conversations; the rest live in the store
+        this.open = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ManagedChatHistory> eldest) {
+                return size() > maxOpen;
+            }
+        };
+    }
+
+    /**
+     * The conversation's history, from the open working windows or replayed from the
+     * store. With a shared store another instance may have taken the last turn, so the
+     * history is always replayed.
+     */
+    public ManagedChatHistory open(String route, String conversationId) {
+        String key = route + ":" + conversationId;
+        if (!store.isShared()) {
+            synchronized (open) {
+                ManagedChatHistory history = open.get(key);
+                if (history != null) {
+                    return history;
+                }
+            }
+        }
+        SessionMemory memory = historyConfig.isMemoryEnabled(route)
+                ? new SessionMemory(kernelUtil, this, store, key, historyConfig.getMemoryMaxEntries(),
+                        historyConfig.getMemoryTopK(), historyConfig.getMemoryMinScore())
+                : null;
+        ManagedChatHistory history = new ManagedChatHistory(key, store, historyConfig.getMaxTokens(route), this,
+                memory, historyConfig.getMemoryMaxTokens());
+        reopened.incrementAndGet();
+        if (store.isShared()) {
+            return history;
+        }
+        synchronized (open) {
+            // another request may have opened it meanwhile; keep the first one
+            ManagedChatHistory existing = open.putIfAbsent(key, history);
+            return existing != null ? existing : history;
+        }
+    }
+
+    /**
+     * Forgets the conversation, both its open window and its stored log.
+     */
+    public void delete(String route, String conversationId) {
+        String key = route + ":" + conversationId;
+        synchronized (open) {
+            open.remove(key);
+        }
+        store.delete(key);
+    }
+
+    /**
+     * Claims the conversation's compaction; false while one is already running on this
+     * instance. Another instance sharing the store may still compact the same messages,
+     * which the summaries' timestamps make harmless.
+     */
+    boolean beginCompaction(String conversationId) {
+        return compacting.add(conversationId);
+    }
+
+    void endCompaction(String conversationId) {
+        compacting.remove(conversationId);
+    }
+
+    void onRecall(List<String> recalled) {
+        memoryRecalls.incrementAndGet();
+        recalledExchanges.addAndGet(recalled.size());
+    }
+
+    /*
+     * Runs on a background scheduler; the turn that triggered it has already been
+     * answered with the window it had.
+     */
+    Mono<String> summarize(String previousSummary, List<ChatMessageContent<?>> messages, int tokens) {
+        return Mono.defer(() -> {
+            StringBuilder transcript = new StringBuilder();
+            if (previousSummary != null) {
+                transcript.append("Existing summary:\n").append(previousSummary).append("\n\n");
+            }
+            transcript.append("New messages:\n");
+            for (ChatMessageContent<?> message : messages) {
+                transcript.append(message.getAuthorRole()).append(": ").append(message.getContent()).append('\n');
+            }
+            ChatHistory request = new ChatHistory(String.format(SUMMARY_PROMPT, historyConfig.getSummaryMaxTokens() * 3 / 4));
+            request.addUserMessage(transcript.toString());
+            try {
+                return kernelUtil.chatCompletionService()
+                        .getChatMessageContentsAsync(request, kernelUtil.kernelBuilderWithoutPlugin(), null);
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
+        })
+                .flatMap(response -> response == null || response.isEmpty() || response.get(0).getContent() == null
+                        ? Mono.<String>error(new IllegalStateException("Empty summary"))
+                        : Mono.just(response.get(0).getContent().trim()))
+                .timeout(SUMMARY_TIMEOUT)
+                .doOnNext(summary -> {
+                    compactions.incrementAndGet();
+                    compactedMessages.addAndGet(messages.size());
+                    compactedTokens.addAndGet(tokens);
+                })
+                .doOnError(error -> {
+                    failedCompactions.incrementAndGet();
+                    System.out.println("History summarisation failed: " + error.getMessage());
+                })
+                .contextWrite(ChatRoute.named("summary"))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public String getStatsName() {
+        return "history";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (open) {
+            stats.put("openConversations", open.size());
+        }
+        stats.put("reopenedFromStore", reopened.get());
+        stats.put("store", store.getStats());
+        stats.put("compactionsRunning", compacting.size());
+        stats.put("compactions", compactions.get());
+        stats.put("failedCompactions", failedCompactions.get());
+        stats.put("compactedMessages", compactedMessages.get());
+        stats.put("compactedTokens", compactedTokens.get());
+        stats.put("memoryRecalls", memoryRecalls.get());
+        stats.put("recalledExchanges", recalledExchanges.get());
+        return stats;
+    }
+}
@@ -0,0 +1,264 @@
+package com.sk.history;
+
+import com.microsoft.semantickernel.services.chatcompletion.AuthorRole;
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.conversation.ConversationRecord;
+import com.sk.conversation.ConversationStore;
+import com.sk.ratelimit.TokenEstimator;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A conversation kept within a token budget. Every message and summary is appended
+ * to the {@link ConversationStore}, so the object only holds the working window and
+ * can be dropped and re-opened from the store at any time.
+ *
+ * {@link #toChatHistory()} sends the rolling summary of older turns plus as many
+ * recent messages as fit in the budget. Once the kept messages pass three quarters
+ * of the budget, the oldest ones are summarised in the background until half of the
+ * budget is left; until that summary arrives they still take part in the window as
+ * far as they fit, so nothing drops out of the prompt while it is being compacted.
+ * With a {@link SessionMemory} attached, {@link #prepare()} also brings back the
+ * earlier exchanges relevant to the current question.
+ *
+ * Messages are stamped with strictly increasing timestamps, which identify them and
+ * their exchanges across re-opens.
+ */
+public class ManagedChatHistory {
+
+    private final String conversationId;
+    private final ConversationStore store;
+    private final int maxTokens;
+    private final HistoryManager manager;
+    private final SessionMemory memory;
+    private final int memoryMaxTokens;
+
+    private final List<ChatMessageContent<?>> messages = new ArrayList<>();
+    private final List<Integer> messageTokens = new ArrayList<>();
+    private final List<Long> messageTimestamps = new ArrayList<>();
+    private long lastTimestamp;
+    private String pendingUserMessage;
+    private long pendingExchange;
+    private int totalTokens;
+    private String summary;
+    private int summaryTokens;
+
+    /**
+     * @param memory          optional long-term memory of exchanges that left the window
+     * @param memoryMaxTokens the share of the budget kept for recalled exchanges
+     */
+    ManagedChatHistory(String conversationId, ConversationStore store, int maxTokens, HistoryManager manager,
+                       SessionMemory memory, int memoryMaxTokens) {
+        this.conversationId = conversationId;
+        this.store = store;
+        this.maxTokens = maxTokens;
+        this.manager = manager;
+        this.memory = memory;
+        this.memoryMaxTokens = memory == null ? 0 : memoryMaxTokens;
+        restore(store.load(conversationId));
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public synchronized void addUserMessage(String content) {
+        long timestamp = nextTimestamp();
+        store.append(conversationId, ConversationRecord.user(content, timestamp));
+        pendingUserMessage = content;
+        pendingExchange = timestamp;
+        add(new ChatMessageContent<>(AuthorRole.USER, content), timestamp);
+    }
+
+    public synchronized void addAssistantMessage(String content) {
+        long timestamp = nextTimestamp();
+        store.append(conversationId, ConversationRecord.assistant(content, timestamp));
+        add(new ChatMessageContent<>(AuthorRole.ASSISTANT, content), timestamp);
+        if (memory != null && pendingUserMessage != null) {
+            memory.remember(pendingExchange, pendingUserMessage, content);
+            pendingUserMessage = null;
+        }
+    }
+
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * Builds the history to send: the summary as a system message, then the newest
+     * messages that fit in what is left of the budget. The latest message is always
+     * included.
+     */
+    public synchronized ChatHistory toChatHistory() {
+        return toChatHistory(List.of());
+    }
+
+    /**
+     * Like {@link #toChatHistory()}, but first recalls the earlier exchanges most
+     * relevant to the latest user message from the session memory, if there is one.
+     * They are sent in a system message in a fixed share of the budget, so the prompt
+     * size stays about the same however long the session gets.
+     */
+    public Mono<ChatHistory> prepare() {
+        String query;
+        long before;
+        synchronized (this) {
+            if (memory == null || pendingUserMessage == null) {
+                return Mono.just(toChatHistory());
+            }
+            query = pendingUserMessage;
+            before = messageTimestamps.get(windowStart(maxTokens - summaryTokens - memoryMaxTokens));
+        }
+        return memory.recall(query, before).map(this::toChatHistory);
+    }
+
+    private synchronized ChatHistory toChatHistory(List<String> recalled) {
+        StringBuilder memoryText = new StringBuilder();
+        int memoryTokens = 0;
+        for (String exchange : recalled) {
+            int tokens = TokenEstimator.countText(exchange);
+            if (memoryTokens + tokens > memoryMaxTokens) {
+                break;
+            }
+            memoryText.append(exchange).append("\n\n");
+            memoryTokens += tokens;
+        }
+        int start = windowStart(maxTokens - summaryTokens - memoryTokens);
+
+        ChatHistory chatHistory = new ChatHistory();
+        if (summary != null) {
+            chatHistory.addSystemMessage("Summary of the earlier conversation: " + summary);
+        }
+        if (memoryTokens > 0) {
+            chatHistory.addSystemMessage("Earlier parts of the conversation that may be relevant:\n" + memoryText);
+        }
+        for (int i = start; i < messages.size(); i++) {
+            chatHistory.addMessage(messages.get(i));
+        }
+        return chatHistory;
+    }
+
+    /**
+     * Index of the oldest message of the newest run that fits in the budget.
+     */
+    private int windowStart(int budget) {
+        int start = messages.size();
+        int used = 0;
+        while (start > 0 && (start == messages.size() || used + messageTokens.get(start - 1) <= budget)) {
+            used += messageTokens.get(start - 1);
+            start--;
+        }
+        // do not open the window with an answer whose question was cut off
+        if (start < messages.size() - 1 && messages.get(start).getAuthorRole() == AuthorRole.ASSISTANT) {
+            start++;
+        }
+        return start;
+    }
+
+    /*
+     * Replays the stored log. Summaries in a loaded log always come first and replace
+     * nothing, so only the live messages, the latest summary and the remembered
+     * exchanges are rebuilt.
+     */
+    private void restore(List<ConversationRecord> records) {
+        for (ConversationRecord record : ConversationRecord.fold(records)) {
+            lastTimestamp = Math.max(lastTimestamp, record.getTimestamp());
+            if (record.getType() == ConversationRecord.Type.SUMMARY) {
+                summary = record.getContent();
+                summaryTokens = TokenEstimator.countText(summary);
+            } else if (record.getType() == ConversationRecord.Type.MEMORY) {
+                if (memory != null) {
+                    memory.restore(record);
+                }
+            } else if (record.getType() == ConversationRecord.Type.USER) {
+                pendingUserMessage = record.getContent();
+                pendingExchange = record.getTimestamp();
+                append(new ChatMessageContent<>(AuthorRole.USER, record.getContent()), record.getTimestamp());
+            } else {
+                pendingUserMessage = null;
+                append(new ChatMessageContent<>(AuthorRole.ASSISTANT, record.getContent()), record.getTimestamp());
+            }
+        }
+    }
+
+    /*
+     * The clock, but always past the newest record, so no two messages of the
+     * conversation share a timestamp.
+     */
+    private long nextTimestamp() {
+        lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+        return lastTimestamp;
+    }
+
+    private void add(ChatMessageContent<?> message, long timestamp) {
+        append(message, timestamp);
+        compactIfNeeded();
+    }
+
+    private void append(ChatMessageContent<?> message, long timestamp) {
+        int tokens = TokenEstimator.countText(message.getContent());
+        messages.add(message);
+        messageTokens.add(tokens);
+        messageTimestamps.add(timestamp);
+        totalTokens += tokens;
+    }
+
+    private void compactIfNeeded() {
+        if (totalTokens + summaryTokens <= maxTokens * 3 / 4) {
+            return;
+        }
+        // summarise the oldest messages, keeping at least the latest exchange verbatim
+        int count = 0;
+        int tokens = 0;
+        while (count < messages.size() - 2 && totalTokens - tokens > maxTokens / 2) {
+            tokens += messageTokens.get(count);
+            count++;
+        }
+        // with a shared store every turn has its own history object, so the one
+        // compaction at a time is tracked per conversation by the manager
+        if (count == 0 || !manager.beginCompaction(conversationId)) {
+            return;
+        }
+        List<ChatMessageContent<?>> batch = new ArrayList<>(messages.subList(0, count));
+        int batchTokens = tokens;
+        long lastCovered = messageTimestamps.get(count - 1);
+        manager.summarize(summary, batch, batchTokens)
+                .subscribe(
+                        newSummary -> onCompacted(batch.size(), batchTokens, lastCovered, newSummary),
+                        error -> onCompactionFailed(),
+                        this::onCompactionDone);
+    }
+
+    private synchronized void onCompacted(int count, int tokens, long lastCovered, String newSummary) {
+        store.append(conversationId, ConversationRecord.summary(newSummary, lastCovered));
+        messages.subList(0, count).clear();
+        messageTokens.subList(0, count).clear();
+        messageTimestamps.subList(0, count).clear();
+        totalTokens -= tokens;
+        summary = newSummary;
+        summaryTokens = TokenEstimator.countText(newSummary);
+    }
+
+    private synchronized void onCompactionFailed() {
+        // the messages age out of the window and are retried on the next turn, but
+        // a summariser that keeps failing must not let the session grow without bound
+        manager.endCompaction(conversationId);
+        long lastDropped = Long.MIN_VALUE;
+        while (totalTokens > maxTokens * 2 && messages.size() > 2) {
+            totalTokens -= messageTokens.remove(0);
+            messages.remove(0);
+            lastDropped = messageTimestamps.remove(0);
+        }
+        if (lastDropped != Long.MIN_VALUE) {
+            store.append(conversationId, ConversationRecord.summary(summary, lastDropped));
+        }
+    }
+
+    private synchronized void onCompactionDone() {
+        manager.endCompaction(conversationId);
+        compactIfNeeded();
+    }
+}
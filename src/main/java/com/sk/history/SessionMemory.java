@@ -0,0 +1,152 @@
+package com.sk.history;
+
+import com.sk.cache.VectorMath;
+import com.sk.conversation.ConversationRecord;
+import com.sk.conversation.ConversationStore;
+import com.sk.kernel.kernelUtil;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Long-term memory of one session: every finished exchange is embedded in the
+ * background, and a new turn recalls the few most similar earlier exchanges instead
+ * of replaying the whole conversation.
+ *
+ * Embedded exchanges are appended to the conversation's log as memory records, and
+ * restored from it when the conversation is opened again, so recall keeps working
+ * after the history was evicted, after a restart and with a shared store.
+ */
+public class SessionMemory {
+
+    private static final Duration RECALL_TIMEOUT = Duration.ofSeconds(3);
+
+    private final kernelUtil kernelUtil;
+    private final HistoryManager manager;
+    private final ConversationStore store;
+    private final String conversationId;
+    private final int maxEntries;
+    private final int topK;
+    private final double minScore;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    SessionMemory(kernelUtil kernelUtil, HistoryManager manager, ConversationStore store, String conversationId,
+                  int maxEntries, int topK, double minScore) {
+        this.kernelUtil = kernelUtil;
+        this.manager = manager;
+        this.store = store;
+        this.conversationId = conversationId;
+        this.maxEntries = maxEntries;
+        this.topK = topK;
+        this.minScore = minScore;
+    }
+
+    /**
+     * Embeds the exchange off the request path and logs it. Failures only mean it
+     * cannot be recalled.
+     *
+     * @param exchange the timestamp of the exchange's user message
+     */
+    void remember(long exchange, String user, String assistant) {
+        String text = "User: " + user + "\nAssistant: " + assistant;
+        kernelUtil.generateEmbeddings(Collections.singletonList(text))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(embeddings -> {
+                    if (!embeddings.isEmpty()) {
+                        float[] vector = VectorMath.normalize(embeddings.get(0).getVector());
+                        store.append(conversationId, ConversationRecord.memory(text, vector, exchange));
+                        add(new Entry(exchange, text, vector));
+                    }
+                }, error -> System.out.println("Session memory embedding failed: " + error.getMessage()));
+    }
+
+    /**
+     * Takes back an exchange embedded earlier, from a memory record of the log.
+     */
+    void restore(ConversationRecord record) {
+        add(new Entry(record.getTimestamp(), record.getMemoryText(), record.getMemoryVector()));
+    }
+
+    /**
+     * The most relevant remembered exchanges older than {@code beforeExchange} (the
+     * timestamp of the oldest message still in the window), best first.
+     */
+    Mono<List<String>> recall(String query, long beforeExchange) {
+        synchronized (this) {
+            boolean anyOlder = false;
+            for (Entry entry : entries) {
+                anyOlder |= entry.exchange < beforeExchange;
+            }
+            if (!anyOlder) {
+                return Mono.just(List.of());
+            }
+        }
+        return kernelUtil.generateEmbeddings(Collections.singletonList(query))
+                .timeout(RECALL_TIMEOUT)
+                .map(embeddings -> embeddings.isEmpty()
+                        ? List.<String>of()
+                        : search(VectorMath.normalize(embeddings.get(0).getVector()), beforeExchange))
+                .doOnNext(manager::onRecall)
+                // memory is an enhancement, the turn goes ahead without it
+                .onErrorReturn(List.of());
+    }
+
+    private synchronized void add(Entry entry) {
+        entries.addLast(entry);
+        while (entries.size() > maxEntries) {
+            entries.removeFirst();
+        }
+    }
+
+    private synchronized List<String> search(float[] query, long beforeExchange) {
+        List<Entry> best = new ArrayList<>(topK + 1);
+        List<Double> scores = new ArrayList<>(topK + 1);
+        for (Entry entry : entries) {
+            if (entry.exchange >= beforeExchange) {
+                continue;
+            }
+            double score = VectorMath.cosine(query, entry.vector);
+            if (score < minScore) {
+                continue;
+            }
+            int at = 0;
+            while (at < scores.size() && scores.get(at) >= score) {
+                at++;
+            }
+            if (at < topK) {
+                best.add(at, entry);
+                scores.add(at, score);
+                if (best.size() > topK) {
+                    best.remove(topK);
+                    scores.remove(topK);
+                }
+            }
+        }
+        // present them in conversation order
+        best.sort((a, b) -> Long.compare(a.exchange, b.exchange));
+        List<String> texts = new ArrayList<>(best.size());
+        for (Entry entry : best) {
+            texts.add(entry.text);
+        }
+        return texts;
+    }
+
+    private static final class Entry {
+        final long exchange;
+        final String text;
+        final float[] vector;
+
+        Entry(long exchange, String text, float[] vector) {
+            this.exchange = exchange;
+            this.text = text;
+            this.vector = vector;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.sk.http;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads String response bodies through a per-thread buffer that is kept between
+ * calls, instead of growing a fresh byte array for every forecast or geocoding
+ * answer. Buffers that had to grow past MAX_RETAINED are not kept.
+ */
+public class BufferedStringHttpMessageConverter extends StringHttpMessageConverter {
+
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED = 1024 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[INITIAL_SIZE]);
+
+    @Override
+    protected String readInternal(Class<? extends String> clazz, HttpInputMessage inputMessage) throws IOException {
+        byte[] buffer = BUFFER.get();
+        long contentLength = inputMessage.getHeaders().getContentLength();
+        if (contentLength >= buffer.length && contentLength < Integer.MAX_VALUE - 8) {
+            // one spare byte, so reading to the end does not grow it again
+            buffer = new byte[(int) contentLength + 1];
+        }
+        int length = 0;
+        InputStream in = inputMessage.getBody();
+        for (int n; (n = in.read(buffer, length, buffer.length - length)) != -1; ) {
+            length += n;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        if (buffer.length <= MAX_RETAINED) {
+            BUFFER.set(buffer);
+        }
+        return new String(buffer, 0, length, charsetOf(inputMessage.getHeaders().getContentType()));
+    }
+
+    private Charset charsetOf(MediaType contentType) {
+        if (contentType != null && contentType.getCharset() != null) {
+            return contentType.getCharset();
+        }
+        if (contentType != null && contentType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+            // JSON is UTF-8 unless it says otherwise
+            return StandardCharsets.UTF_8;
+        }
+        return getDefaultCharset();
+    }
+}
@@ -0,0 +1,61 @@
+package com.sk.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * A response read completely into memory, so it can be handed to every caller that
+ * shares it and kept for revalidation. Its body and headers are never modified.
+ */
+final class CachedResponse {
+
+    final int status;
+    final HttpHeaders headers;
+    final byte[] body;
+
+    CachedResponse(int status, HttpHeaders headers, byte[] body) {
+        this.status = status;
+        HttpHeaders copy = new HttpHeaders();
+        copy.putAll(headers);
+        this.headers = HttpHeaders.readOnlyHttpHeaders(copy);
+        this.body = body;
+    }
+
+    /**
+     * A fresh response over this one, for a single caller.
+     */
+    ClientHttpResponse open() {
+        return new ClientHttpResponse() {
+
+            @Override
+            public HttpStatusCode getStatusCode() {
+                return HttpStatusCode.valueOf(status);
+            }
+
+            @Override
+            public String getStatusText() {
+                HttpStatus resolved = HttpStatus.resolve(status);
+                return resolved == null ? "" : resolved.getReasonPhrase();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
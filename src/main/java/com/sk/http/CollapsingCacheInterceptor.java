@@ -0,0 +1,257 @@
+package com.sk.http;
+
+import com.sk.deadline.Deadline;
+import com.sk.metrics.StatsSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The outbound gateway in front of every plugin GET:
+ *
+ * - identical GETs (same URL and Accept) in flight at the same time share one
+ *   upstream call, and each caller gets its own copy of the answer;
+ * - 200 answers are kept with their ETag, Last-Modified and Cache-Control, and served
+ *   as they are while Cache-Control says they are fresh;
+ * - once stale, they are revalidated with If-None-Match / If-Modified-Since, so data
+ *   that has not changed costs a 304 instead of the full payload.
+ *
+ * Answers marked no-store, or with neither validators nor a max-age, are not kept.
+ * It runs first in the RestTemplate chain, so served and shared answers take no
+ * bulkhead place, retry budget or connection.
+ */
+public class CollapsingCacheInterceptor implements ClientHttpRequestInterceptor, StatsSource {
+
+    // the headers a 304 may update on the stored answer
+    private static final List<String> REVALIDATED_HEADERS = List.of(
+            HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES,
+            HttpHeaders.DATE, HttpHeaders.AGE);
+
+    private final boolean enabled;
+    private final long waitMs;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * @param waitMs how long a caller waits for a shared call when it has no deadline
+     */
+    public CollapsingCacheInterceptor(boolean enabled, int maxEntries, long waitMs) {
+        this.enabled = enabled;
+        this.waitMs = waitMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        if (!enabled || request.getMethod() != HttpMethod.GET) {
+            return execution.execute(request, body);
+        }
+        String key = request.getURI() + " " + request.getHeaders().getFirst(HttpHeaders.ACCEPT);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(entry.response.body.length);
+            return entry.response.open();
+        }
+
+        CompletableFuture<CachedResponse> flight = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing, request).open();
+        }
+        try {
+            CachedResponse response = fetch(key, entry, request, body, execution);
+            flight.complete(response);
+            return response.open();
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private CachedResponse fetch(String key, Entry stale, HttpRequest request, byte[] body,
+                                 ClientHttpRequestExecution execution) throws IOException {
+        if (stale != null) {
+            if (stale.etag != null) {
+                request.getHeaders().set(HttpHeaders.IF_NONE_MATCH, stale.etag);
+            }
+            if (stale.lastModified != null) {
+                request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, stale.lastModified);
+            }
+        }
+        CachedResponse fresh;
+        try (ClientHttpResponse response = execution.execute(request, body)) {
+            int status = response.getStatusCode().value();
+            if (status == 304 && stale != null) {
+                revalidated.incrementAndGet();
+                bytesSaved.addAndGet(stale.response.body.length);
+                HttpHeaders headers = new HttpHeaders();
+                headers.putAll(stale.response.headers);
+                for (String name : REVALIDATED_HEADERS) {
+                    List<String> values = response.getHeaders().get(name);
+                    if (values != null) {
+                        headers.put(name, values);
+                    }
+                }
+                fresh = new CachedResponse(stale.response.status, headers, stale.response.body);
+            } else {
+                (stale == null ? misses : changed).incrementAndGet();
+                fresh = new CachedResponse(status, response.getHeaders(), StreamUtils.copyToByteArray(response.getBody()));
+            }
+        }
+        store(key, fresh);
+        return fresh;
+    }
+
+    private void store(String key, CachedResponse response) {
+        long maxAgeSeconds = response.status == 200 ? maxAgeSeconds(response.headers) : -1;
+        String etag = response.headers.getETag();
+        String lastModified = response.headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        synchronized (entries) {
+            if (maxAgeSeconds < 0 || (etag == null && lastModified == null && maxAgeSeconds == 0)) {
+                entries.remove(key);
+                return;
+            }
+            entries.put(key, new Entry(response, etag, lastModified,
+                    System.currentTimeMillis() + maxAgeSeconds * 1000));
+        }
+    }
+
+    /*
+     * How long the answer is fresh, less the time it already spent in upstream caches
+     * (Age): 0 when it must be revalidated before each use, -1 when it must not be kept.
+     */
+    private static long maxAgeSeconds(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl == null) {
+            return 0;
+        }
+        long maxAge = 0;
+        long sharedMaxAge = -1;
+        for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+            directive = directive.trim();
+            try {
+                if (directive.equals("no-store")) {
+                    return -1;
+                } else if (directive.equals("no-cache")) {
+                    return 0;
+                } else if (directive.startsWith("s-maxage=")) {
+                    sharedMaxAge = Long.parseLong(directive.substring("s-maxage=".length()).replace("\"", ""));
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+                }
+            } catch (NumberFormatException ignored) {
+                // a malformed lifetime means none
+            }
+        }
+        long lifetime = sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+        String age = headers.getFirst(HttpHeaders.AGE);
+        if (age != null) {
+            try {
+                lifetime -= Long.parseLong(age.trim());
+            } catch (NumberFormatException ignored) {
+                // no usable Age, take the lifetime as it is
+            }
+        }
+        return Math.max(0, lifetime);
+    }
+
+    private CachedResponse await(CompletableFuture<CachedResponse> flight, HttpRequest request) throws IOException {
+        Deadline deadline = Deadline.current();
+        long wait = deadline == null ? waitMs : deadline.remainingMillis();
+        try {
+            return flight.get(wait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Shared call to " + request.getURI().getHost()
+                    + " did not answer within " + wait + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared call to "
+                    + request.getURI().getHost());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SocketTimeoutException) {
+                SocketTimeoutException timedOut = new SocketTimeoutException(cause.getMessage());
+                timedOut.initCause(cause);
+                throw timedOut;
+            }
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return "outboundCache";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("inFlight", inFlight.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("revalidated", revalidated.get());
+        stats.put("changed", changed.get());
+        stats.put("bytesSaved", bytesSaved.get());
+        return stats;
+    }
+
+    private static final class Entry {
+        final CachedResponse response;
+        final String etag;
+        final String lastModified;
+        final long expiresAt;
+
+        Entry(CachedResponse response, String etag, String lastModified, long expiresAt) {
+            this.response = response;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sk.http;
+
+import com.sk.metrics.LatencyRecorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The connections one host may use at a time, and what its calls have cost. Over
+ * HTTP/1.1 every call in progress holds a connection of its own, so limiting the
+ * calls in progress limits the connections to the host.
+ */
+final class HostPool {
+
+    final Semaphore permits;
+    final AtomicInteger waiting = new AtomicInteger();
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    final AtomicLong poolTimeouts = new AtomicLong();
+    final AtomicLong http2 = new AtomicLong();
+    final AtomicLong gzipped = new AtomicLong();
+    final AtomicLong bytesRead = new AtomicLong();
+    final LatencyRecorder latency = new LatencyRecorder(500);
+
+    private final int maxConnections;
+
+    HostPool(int maxConnections) {
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = requests.get();
+        stats.put("maxConnections", maxConnections);
+        stats.put("inUse", maxConnections - permits.availablePermits());
+        stats.put("waiting", waiting.get());
+        stats.put("requests", count);
+        stats.put("failures", failures.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("poolTimeouts", poolTimeouts.get());
+        stats.put("http2Share", count == 0 ? 0 : (double) http2.get() / count);
+        stats.put("gzipped", gzipped.get());
+        stats.put("bytesRead", bytesRead.get());
+        stats.put("p50Millis", latency.percentile(0.5));
+        stats.put("p99Millis", latency.percentile(0.99));
+        return stats;
+    }
+}
@@ -0,0 +1,210 @@
+package com.sk.http;
+
+import com.sk.deadline.Deadline;
+import com.sk.metrics.StatsSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * The one outbound HTTP engine behind the shared RestTemplate. JDK {@link HttpClient}s
+ * keep connections alive and reuse them across plugins, and speak HTTP/2 to hosts
+ * that offer it. Each pool (a dependency such as geo or weather, or "shared" for any
+ * other host) has a client and so a set of connections of its own. On top of them:
+ *
+ * - each host may have at most max-connections-per-host calls in progress; a call
+ *   waits up to pool-wait-ms for one to finish;
+ * - a call, body included, never takes longer than the read timeout, nor past the
+ *   current request's {@link Deadline}; one made after the deadline has passed fails
+ *   without connecting;
+ * - responses are requested gzip-compressed and decompressed as they are read;
+ * - per-host pool use and latency are exported as "outboundHttp" in /api/stats.
+ *
+ * Timeouts surface as {@link SocketTimeoutException}, as they did with
+ * HttpURLConnection, so the dependency layer keeps recognising them.
+ */
+public class PooledHttpClient implements ClientHttpRequestFactory, StatsSource {
+
+    // set by the JDK client itself; it refuses them on a request
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+    private static final String SHARED_POOL = "shared";
+
+    private final Function<URI, String> poolOf;
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxConnectionsPerHost;
+    private final long poolWaitMs;
+    private final boolean http2;
+    private final Map<String, HostPool> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * @param poolOf the pool a URI's calls use, or null for the shared one
+     */
+    public PooledHttpClient(Function<URI, String> poolOf, int connectTimeoutMs, int readTimeoutMs,
+                            int maxConnectionsPerHost, long poolWaitMs, boolean http2) {
+        this.poolOf = poolOf;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.poolWaitMs = poolWaitMs;
+        this.http2 = http2;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new PooledHttpRequest(this, uri, httpMethod);
+    }
+
+    private HttpClient clientFor(URI uri) {
+        String pool = poolOf.apply(uri);
+        return clients.computeIfAbsent(pool == null ? SHARED_POOL : pool, p -> HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    ClientHttpResponse execute(URI uri, HttpMethod method, HttpHeaders headers, byte[] body) throws IOException {
+        String host = uri.getAuthority();
+        HostPool pool = hosts.computeIfAbsent(host, h -> new HostPool(maxConnectionsPerHost));
+        long timeout = readTimeoutMs;
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            long remaining = deadline.remainingMillis();
+            if (remaining == 0) {
+                throw new SocketTimeoutException("Request deadline passed before " + host + " was called");
+            }
+            timeout = Math.min(timeout, remaining);
+        }
+        acquire(pool, host, Math.min(poolWaitMs, timeout));
+        if (deadline != null) {
+            // the wait for a connection came out of the same time
+            timeout = Math.min(timeout, Math.max(1, deadline.remainingMillis()));
+        }
+
+        pool.requests.incrementAndGet();
+        long start = System.nanoTime();
+        // the request's own timeout only covers the wait for the headers; the response
+        // closes the body when the rest of the time is up
+        CompletableFuture<HttpResponse<InputStream>> call = clientFor(uri).sendAsync(
+                toRequest(uri, method, headers, body, timeout), HttpResponse.BodyHandlers.ofInputStream());
+        HttpResponse<InputStream> response;
+        try {
+            response = call.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw timedOut(pool, start, host, timeout, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof HttpTimeoutException) {
+                throw timedOut(pool, start, host, timeout, e.getCause());
+            }
+            release(pool, start, true);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Calling " + host + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            release(pool, start, true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling " + host);
+        }
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            pool.http2.incrementAndGet();
+        }
+        return new PooledHttpResponse(response, pool, host, start, timeout);
+    }
+
+    private static SocketTimeoutException timedOut(HostPool pool, long start, String host, long timeout,
+                                                   Throwable cause) {
+        release(pool, start, true);
+        pool.timeouts.incrementAndGet();
+        SocketTimeoutException timedOut = new SocketTimeoutException(host + " did not answer within " + timeout + " ms");
+        timedOut.initCause(cause);
+        return timedOut;
+    }
+
+    private static HttpRequest toRequest(URI uri, HttpMethod method, HttpHeaders headers, byte[] body, long timeout) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(Duration.ofMillis(timeout));
+        headers.forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        if (!headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+        builder.method(method.name(), body.length == 0
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(body));
+        return builder.build();
+    }
+
+    private static void acquire(HostPool pool, String host, long waitMs) throws IOException {
+        if (pool.permits.tryAcquire()) {
+            return;
+        }
+        pool.waiting.incrementAndGet();
+        try {
+            if (!pool.permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                pool.poolTimeouts.incrementAndGet();
+                throw new SocketTimeoutException("No connection to " + host + " free within " + waitMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + host);
+        } finally {
+            pool.waiting.decrementAndGet();
+        }
+    }
+
+    static void release(HostPool pool, long startNanos, boolean failed) {
+        if (failed) {
+            pool.failures.incrementAndGet();
+        }
+        pool.latency.record((System.nanoTime() - startNanos) / 1_000_000);
+        pool.permits.release();
+    }
+
+    @Override
+    public String getStatsName() {
+        return "outboundHttp";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("http2", http2);
+        stats.put("maxConnectionsPerHost", maxConnectionsPerHost);
+        stats.put("pools", new TreeMap<>(clients).keySet());
+        Map<String, Object> perHost = new TreeMap<>();
+        hosts.forEach((host, pool) -> perHost.put(host, pool.getStats()));
+        stats.put("hosts", perHost);
+        return stats;
+    }
+}
@@ -0,0 +1,159 @@
+package com.sk.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A response streamed from the connection, so the body is decompressed as it is
+ * read and lands straight in the reader's buffer. Its host's connection is held until
+ * the response is closed, which RestTemplate does once the body has been read.
+ *
+ * The body has what is left of the call's time limit: when it runs out the stream is
+ * closed from a timer, and a read blocked on the connection fails with
+ * {@link SocketTimeoutException}.
+ */
+final class PooledHttpResponse implements ClientHttpResponse {
+
+    private final HttpResponse<InputStream> response;
+    private final HostPool pool;
+    private final String host;
+    private final long startNanos;
+    private final long timeoutMillis;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final boolean gzipped;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final CompletableFuture<Void> watchdog;
+    private volatile boolean expired;
+    private InputStream body;
+
+    PooledHttpResponse(HttpResponse<InputStream> response, HostPool pool, String host, long startNanos,
+                       long timeoutMillis) {
+        this.response = response;
+        this.pool = pool;
+        this.host = host;
+        this.startNanos = startNanos;
+        this.timeoutMillis = timeoutMillis;
+        response.headers().map().forEach(headers::addAll);
+        this.gzipped = "gzip".equalsIgnoreCase(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        if (gzipped) {
+            // callers see the decompressed body
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            pool.gzipped.incrementAndGet();
+        }
+        long left = Math.max(0, startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime());
+        this.watchdog = CompletableFuture.runAsync(this::expire,
+                CompletableFuture.delayedExecutor(left, TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() {
+        return HttpStatusCode.valueOf(response.statusCode());
+    }
+
+    @Override
+    public String getStatusText() {
+        HttpStatus status = HttpStatus.resolve(response.statusCode());
+        return status == null ? "" : status.getReasonPhrase();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            InputStream counted = new BodyInputStream(response.body());
+            body = gzipped ? new GZIPInputStream(counted) : counted;
+        }
+        return body;
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        watchdog.cancel(false);
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+            // the connection is dropped instead of reused
+        } finally {
+            PooledHttpClient.release(pool, startNanos, expired || response.statusCode() >= 500);
+        }
+    }
+
+    private void expire() {
+        if (closed.get()) {
+            return;
+        }
+        expired = true;
+        pool.timeouts.incrementAndGet();
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+            // the reader fails either way
+        }
+    }
+
+    /**
+     * Counts the bytes read and reports a body cut off by the time limit as a timeout.
+     */
+    private final class BodyInputStream extends FilterInputStream {
+
+        BodyInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if (b >= 0) {
+                    pool.bytesRead.incrementAndGet();
+                }
+                return b;
+            } catch (IOException e) {
+                throw timedOutOr(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    pool.bytesRead.addAndGet(n);
+                }
+                return n;
+            } catch (IOException e) {
+                throw timedOutOr(e);
+            }
+        }
+
+        private IOException timedOutOr(IOException e) {
+            if (!expired) {
+                return e;
+            }
+            SocketTimeoutException timedOut = new SocketTimeoutException(
+                    host + " did not send the whole body within " + timeoutMillis + " ms");
+            timedOut.initCause(e);
+            return timedOut;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.sk.kernel.chat;
+
+import com.microsoft.semantickernel.Kernel;
+import com.microsoft.semantickernel.orchestration.InvocationContext;
+import com.microsoft.semantickernel.orchestration.ToolCallBehavior;
+import com.microsoft.semantickernel.plugin.KernelPlugin;
+import com.microsoft.semantickernel.semanticfunctions.KernelFunction;
+import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.microsoft.semantickernel.services.chatcompletion.StreamingChatContent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One chat completion request as seen by a {@link DelegatingChatCompletionService}.
+ * It is either a chat history or a rendered prompt, together with the kernel and
+ * invocation context, and can be replayed against any other ChatCompletionService.
+ */
+public final class ChatCall {
+
+    private final ChatHistory chatHistory;
+    private final String prompt;
+    private final Kernel kernel;
+    private final InvocationContext invocationContext;
+    // set only on calls built to be classified, which have no kernel
+    private final Boolean toolsOnOffer;
+
+    private ChatCall(ChatHistory chatHistory, String prompt, Kernel kernel, InvocationContext invocationContext) {
+        this(chatHistory, prompt, kernel, invocationContext, null);
+    }
+
+    private ChatCall(ChatHistory chatHistory, String prompt, Kernel kernel, InvocationContext invocationContext,
+                     Boolean toolsOnOffer) {
+        this.chatHistory = chatHistory;
+        this.prompt = prompt;
+        this.kernel = kernel;
+        this.invocationContext = invocationContext;
+        this.toolsOnOffer = toolsOnOffer;
+    }
+
+    public static ChatCall of(ChatHistory chatHistory, Kernel kernel, InvocationContext invocationContext) {
+        return new ChatCall(chatHistory, null, kernel, invocationContext);
+    }
+
+    public static ChatCall of(String prompt, Kernel kernel, InvocationContext invocationContext) {
+        return new ChatCall(null, prompt, kernel, invocationContext);
+    }
+
+    /**
+     * A request that is only described, to be classified before it is built, e.g. to
+     * learn which deployment it will go to; it cannot be sent.
+     */
+    public static ChatCall describing(ChatHistory chatHistory, boolean toolsOnOffer) {
+        return new ChatCall(chatHistory, null, null, null, toolsOnOffer);
+    }
+
+    public Mono<List<ChatMessageContent<?>>> invoke(ChatCompletionService service) {
+        if (chatHistory != null) {
+            return service.getChatMessageContentsAsync(chatHistory, kernel, invocationContext);
+        }
+        return service.getChatMessageContentsAsync(prompt, kernel, invocationContext);
+    }
+
+    public Flux<StreamingChatContent<?>> stream(ChatCompletionService service) {
+        if (chatHistory != null) {
+            return service.getStreamingChatMessageContentsAsync(chatHistory, kernel, invocationContext);
+        }
+        return service.getStreamingChatMessageContentsAsync(prompt, kernel, invocationContext);
+    }
+
+    public ChatHistory getChatHistory() {
+        return chatHistory;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public InvocationContext getInvocationContext() {
+        return invocationContext;
+    }
+
+    /**
+     * All message text of the request, used for token estimates and classification.
+     */
+    public String text() {
+        if (chatHistory == null) {
+            return prompt == null ? "" : prompt;
+        }
+        StringBuilder text = new StringBuilder();
+        for (ChatMessageContent<?> message : chatHistory.getMessages()) {
+            if (message.getContent() != null) {
+                text.append(message.getContent()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * The content of the most recent message, i.e. the user's current turn.
+     */
+    public String lastMessage() {
+        if (chatHistory == null) {
+            return prompt == null ? "" : prompt;
+        }
+        List<ChatMessageContent<?>> messages = chatHistory.getMessages();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            String content = messages.get(i).getContent();
+            if (content != null) {
+                return content;
+            }
+        }
+        return "";
+    }
+
+    public int messageCount() {
+        return chatHistory == null ? 1 : chatHistory.getMessages().size();
+    }
+
+    /**
+     * True when the kernel carries plugins the model may call during this request.
+     */
+    public boolean hasTools() {
+        if (toolsOnOffer != null) {
+            return toolsOnOffer;
+        }
+        if (kernel == null || invocationContext == null || invocationContext.getToolCallBehavior() == null) {
+            return false;
+        }
+        for (KernelPlugin plugin : kernel.getPlugins()) {
+            if (!plugin.getFunctions().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True when the service itself runs the tools the model asks for, so sending this
+     * request twice would run them twice.
+     */
+    public boolean autoInvokesTools() {
+        return hasTools() && invocationContext.getToolCallBehavior().isAutoInvokeAllowed()
+                && invocationContext.getToolCallBehavior().getMaximumAutoInvokeAttempts() > 0;
+    }
+
+    /**
+     * The same request with the same tools on offer, but returning the model's tool calls
+     * instead of running them, so it can be sent more than once. Null when the tool
+     * behaviour cannot be rebuilt that way.
+     */
+    public ChatCall withoutAutoInvoke() {
+        if (chatHistory == null || !(invocationContext.getToolCallBehavior() instanceof ToolCallBehavior.AllowedKernelFunctions)) {
+            return null;
+        }
+        ToolCallBehavior.AllowedKernelFunctions allowed =
+                (ToolCallBehavior.AllowedKernelFunctions) invocationContext.getToolCallBehavior();
+        ToolCallBehavior behavior;
+        if (allowed.isAllKernelFunctionsAllowed()) {
+            behavior = ToolCallBehavior.allowAllKernelFunctions(false);
+        } else {
+            List<KernelFunction<?>> functions = new ArrayList<>();
+            for (KernelFunction<?> function : kernel.getFunctions()) {
+                if (allowed.isFunctionAllowed(function)) {
+                    functions.add(function);
+                }
+            }
+            behavior = ToolCallBehavior.allowOnlyKernelFunctions(false, functions);
+        }
+        return new ChatCall(chatHistory, null, kernel,
+                InvocationContext.copy(invocationContext).withToolCallBehavior(behavior).build());
+    }
+
+    /**
+     * The same request with {@code messages} appended to its history, e.g. a tool round
+     * that has already run.
+     */
+    public ChatCall continuedWith(List<ChatMessageContent<?>> messages) {
+        List<ChatMessageContent<?>> history = new ArrayList<>(chatHistory.getMessages());
+        history.addAll(messages);
+        return new ChatCall(new ChatHistory(history), null, kernel, invocationContext);
+    }
+}
@@ -0,0 +1,185 @@
+package com.sk.kernel.chat;
+
+import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.sk.ratelimit.AdmissionController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One chat deployment behind the {@link LoadBalancedChatCompletionService}, with the
+ * health figures the balancer routes on: EWMA latency, EWMA error rate, in-flight
+ * requests and the quota headroom of its admission controller.
+ *
+ * An endpoint is ejected after too many consecutive failures or a high error rate,
+ * unless it is the last one not ejected. The error rate only counts once the endpoint
+ * has seen 2 / alpha outcomes since it was admitted, so a new or re-admitted endpoint
+ * is judged by the consecutive-failure limit alone. The two limits interact: from a
+ * clean record, alpha 0.2 takes the rate past 0.5 on the 4th failure in a row, before
+ * an eject-after-failures of 5, so the rate limit decides bursts unless it is set higher
+ * than 1 - (1 - alpha)^eject-after-failures. Once the ejection expires a single probe request is let through; if it succeeds
+ * the endpoint is re-admitted, otherwise it is ejected again for twice as long.
+ */
+public class ChatEndpoint {
+
+    private static final long MAX_EJECTION_NANOS = 300_000_000_000L;
+
+    private final String name;
+    private final ChatCompletionService service;
+    private final AdmissionController admission;
+    private final double alpha;
+    private final int ejectAfterFailures;
+    private final double ejectErrorRate;
+    private final long baseEjectionNanos;
+    private final int minSamples;
+
+    private double ewmaLatencyMillis;
+    private double ewmaErrorRate;
+    private int consecutiveFailures;
+    private int samples;
+    private long ejectedUntilNanos;
+    private long ejectionNanos;
+    private boolean ejected;
+    private boolean probing;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong ejections = new AtomicLong();
+
+    public ChatEndpoint(String name, ChatCompletionService service, AdmissionController admission,
+                        double alpha, int ejectAfterFailures, double ejectErrorRate, long ejectionMillis) {
+        this.name = name;
+        this.service = service;
+        this.admission = admission;
+        this.alpha = alpha;
+        this.ejectAfterFailures = ejectAfterFailures;
+        this.ejectErrorRate = ejectErrorRate;
+        this.baseEjectionNanos = ejectionMillis * 1_000_000;
+        this.ejectionNanos = baseEjectionNanos;
+        this.minSamples = (int) Math.ceil(2 / alpha);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ChatCompletionService getService() {
+        return service;
+    }
+
+    /**
+     * Whether a request may be sent now. After an ejection expires, only one probe
+     * request is allowed until its outcome is known.
+     */
+    public synchronized boolean tryAcquire() {
+        if (ejected) {
+            if (probing || System.nanoTime() < ejectedUntilNanos) {
+                return false;
+            }
+            probing = true;
+        }
+        inFlight.incrementAndGet();
+        requests.incrementAndGet();
+        return true;
+    }
+
+    public synchronized boolean isAvailable() {
+        return !ejected || (!probing && System.nanoTime() >= ejectedUntilNanos);
+    }
+
+    public synchronized boolean isEjected() {
+        return ejected;
+    }
+
+    public synchronized long ejectedUntilNanos() {
+        return ejected ? ejectedUntilNanos : 0;
+    }
+
+    /**
+     * Lower is better: latency inflated by the error rate and queueing, divided by the
+     * share of the token quota still available.
+     */
+    public synchronized double score() {
+        double latency = ewmaLatencyMillis == 0 ? 1 : ewmaLatencyMillis;
+        double headroom = Math.max(0.05, admission.headroom());
+        return latency * (1 + 10 * ewmaErrorRate) * (1 + inFlight.get()) / headroom;
+    }
+
+    public synchronized double ewmaLatencyMillis() {
+        return ewmaLatencyMillis;
+    }
+
+    public synchronized void onSuccess(long latencyMillis) {
+        ewmaLatencyMillis = ewmaLatencyMillis == 0
+                ? latencyMillis
+                : alpha * latencyMillis + (1 - alpha) * ewmaLatencyMillis;
+        onSuccess();
+    }
+
+    /**
+     * A success whose latency says nothing about the endpoint, e.g. a tool loop.
+     */
+    public synchronized void onSuccess() {
+        inFlight.decrementAndGet();
+        ewmaErrorRate = (1 - alpha) * ewmaErrorRate;
+        consecutiveFailures = 0;
+        samples++;
+        if (ejected) {
+            System.out.println("Chat endpoint " + name + " re-admitted");
+            ejected = false;
+            probing = false;
+            ejectionNanos = baseEjectionNanos;
+            samples = 0;
+        }
+    }
+
+    /**
+     * Records a failure; {@code mayEject} is false when this is the last endpoint that
+     * is not ejected.
+     */
+    public synchronized void onFailure(boolean mayEject) {
+        inFlight.decrementAndGet();
+        failures.incrementAndGet();
+        ewmaErrorRate = alpha + (1 - alpha) * ewmaErrorRate;
+        consecutiveFailures++;
+        samples++;
+        if (ejected) {
+            // the probe failed, back off for longer
+            probing = false;
+            ejectionNanos = Math.min(MAX_EJECTION_NANOS, ejectionNanos * 2);
+            ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+        } else if (mayEject && (consecutiveFailures >= ejectAfterFailures
+                || samples >= minSamples && ewmaErrorRate >= ejectErrorRate)) {
+            System.out.println("Chat endpoint " + name + " ejected after " + consecutiveFailures + " failures");
+            ejected = true;
+            ejections.incrementAndGet();
+            ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+            samples = 0;
+        }
+    }
+
+    /**
+     * Releases a slot taken by {@link #tryAcquire} without judging the endpoint, e.g.
+     * when the request was rejected locally or cancelled by the caller.
+     */
+    public synchronized void onAbandoned() {
+        inFlight.decrementAndGet();
+        probing = false;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ewmaLatencyMillis", Math.round(ewmaLatencyMillis));
+        stats.put("ewmaErrorRate", ewmaErrorRate);
+        stats.put("inFlight", inFlight.get());
+        stats.put("requests", requests.get());
+        stats.put("failures", failures.get());
+        stats.put("ejected", ejected);
+        stats.put("ejections", ejections.get());
+        stats.put("admission", admission.getStats());
+        return stats;
+    }
+}
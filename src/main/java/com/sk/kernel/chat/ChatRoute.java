@@ -0,0 +1,31 @@
+package com.sk.kernel.chat;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Names the application route a chat completion belongs to (chapter2, skChat, ...).
+ * The name travels in the Reactor context of the completion call, so services deep in
+ * the kernel can apply per-route settings without changing any SK signatures:
+ *
+ * <pre>
+ * service.getChatMessageContentsAsync(history, kernel, context)
+ *        .contextWrite(ChatRoute.named("chapter2"))
+ * </pre>
+ */
+public final class ChatRoute {
+
+    public static final String CONTEXT_KEY = "com.sk.chat.route";
+    public static final String DEFAULT = "default";
+
+    private ChatRoute() {
+    }
+
+    public static Context named(String route) {
+        return Context.of(CONTEXT_KEY, route);
+    }
+
+    public static String of(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, DEFAULT);
+    }
+}
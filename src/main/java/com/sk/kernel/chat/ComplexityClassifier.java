@@ -0,0 +1,121 @@
+package com.sk.kernel.chat;
+
+import com.microsoft.semantickernel.Kernel;
+import com.microsoft.semantickernel.orchestration.InvocationContext;
+import com.microsoft.semantickernel.orchestration.PromptExecutionSettings;
+import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.ratelimit.TokenEstimator;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Sorts chat requests into {@link RequestClass#SIMPLE} and {@link RequestClass#COMPLEX}.
+ *
+ * Cheap heuristics decide most requests: prompt size, conversation length, whether
+ * the model may call tools and a few keywords that signal retrieval or reasoning.
+ * Requests they cannot place are either treated as complex or, when a classifier
+ * service is configured, handed to a small model with a one-word answer.
+ */
+public class ComplexityClassifier {
+
+    // the whole message, e.g. "hi!" or "ok, thanks" but not "hi, what's the weather?"
+    private static final Pattern SMALL_TALK = Pattern.compile(
+            "^((hi|hello|hey|thanks|thank you|ok|okay|bye|good (morning|afternoon|evening)|how are you)[!.?, ]*)+$");
+
+    private static final Pattern COMPLEX_HINTS = Pattern.compile(
+            ".*\\b(explain|compare|analy[sz]e|why|step by step|summari[sz]e|plan|code|calculate"
+                    + "|handbook|policy|policies|benefit|weather|forecast|search|recipe)\\b.*");
+
+    private static final String CLASSIFIER_PROMPT =
+            "Classify the user's request for a chat assistant. Answer with exactly one word: "
+                    + "SIMPLE for small talk or a short factual question, "
+                    + "COMPLEX for anything that needs tools, documents, several steps or careful reasoning.";
+
+    private final int longPromptTokens;
+    private final int maxMessages;
+    private final ChatCompletionService classifierService;
+    private final Kernel classifierKernel;
+    private final InvocationContext classifierContext;
+
+    private final AtomicLong classifierCalls = new AtomicLong();
+
+    /**
+     * @param classifierService optional small model for requests the heuristics cannot place
+     */
+    public ComplexityClassifier(int longPromptTokens, int maxMessages, ChatCompletionService classifierService) {
+        this.longPromptTokens = longPromptTokens;
+        this.maxMessages = maxMessages;
+        this.classifierService = classifierService;
+        if (classifierService != null) {
+            this.classifierKernel = Kernel.builder()
+                    .withAIService(ChatCompletionService.class, classifierService)
+                    .build();
+            this.classifierContext = InvocationContext.builder()
+                    .withPromptExecutionSettings(PromptExecutionSettings.builder()
+                            .withMaxTokens(3)
+                            .withTemperature(0.0)
+                            .build())
+                    .build();
+        } else {
+            this.classifierKernel = null;
+            this.classifierContext = null;
+        }
+    }
+
+    public long getClassifierCalls() {
+        return classifierCalls.get();
+    }
+
+    public Mono<RequestClass> classify(ChatCall call) {
+        RequestClass heuristic = heuristic(call);
+        if (heuristic != RequestClass.UNSURE) {
+            return Mono.just(heuristic);
+        }
+        if (classifierService == null) {
+            return Mono.just(RequestClass.COMPLEX);
+        }
+        classifierCalls.incrementAndGet();
+        ChatHistory history = new ChatHistory(CLASSIFIER_PROMPT);
+        history.addUserMessage(call.lastMessage());
+        return classifierService.getChatMessageContentsAsync(history, classifierKernel, classifierContext)
+                .map(ComplexityClassifier::parse)
+                // a failed classification must not fail the request itself
+                .onErrorReturn(RequestClass.COMPLEX);
+    }
+
+    RequestClass heuristic(ChatCall call) {
+        String last = call.lastMessage().trim().toLowerCase(Locale.ROOT);
+        boolean smallTalk = SMALL_TALK.matcher(last).matches();
+
+        if (TokenEstimator.countText(call.text()) > longPromptTokens || call.messageCount() > maxMessages) {
+            return RequestClass.COMPLEX;
+        }
+        if (call.hasTools()) {
+            // with tools on offer only a message that is nothing but small talk is safe on the small model
+            return smallTalk ? RequestClass.SIMPLE : RequestClass.COMPLEX;
+        }
+        if (smallTalk || call.getPrompt() != null) {
+            // rendered prompt templates carry their own instructions
+            return RequestClass.SIMPLE;
+        }
+        if (COMPLEX_HINTS.matcher(last).matches()) {
+            return RequestClass.COMPLEX;
+        }
+        return TokenEstimator.countText(last) <= 30 ? RequestClass.SIMPLE : RequestClass.UNSURE;
+    }
+
+    private static RequestClass parse(List<ChatMessageContent<?>> response) {
+        if (response == null || response.isEmpty() || response.get(0).getContent() == null) {
+            return RequestClass.COMPLEX;
+        }
+        return response.get(0).getContent().trim().toUpperCase(Locale.ROOT).startsWith("SIMPLE")
+                ? RequestClass.SIMPLE
+                : RequestClass.COMPLEX;
+    }
+}
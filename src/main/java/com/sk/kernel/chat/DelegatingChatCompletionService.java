@@ -0,0 +1,64 @@
+package com.sk.kernel.chat;
+
+import com.microsoft.semantickernel.Kernel;
+import com.microsoft.semantickernel.orchestration.InvocationContext;
+import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.microsoft.semantickernel.services.chatcompletion.StreamingChatContent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Base class for ChatCompletionService wrappers. Kernels only ever see the
+ * ChatCompletionService interface; the wrappers funnel the history and prompt
+ * variants of each call into {@link #execute} and {@link #executeStreaming}.
+ */
+public abstract class DelegatingChatCompletionService implements ChatCompletionService {
+
+    private final String modelId;
+
+    protected DelegatingChatCompletionService(String modelId) {
+        this.modelId = modelId;
+    }
+
+    protected abstract Mono<List<ChatMessageContent<?>>> execute(ChatCall call);
+
+    protected abstract Flux<StreamingChatContent<?>> executeStreaming(ChatCall call);
+
+    @Override
+    public Mono<List<ChatMessageContent<?>>> getChatMessageContentsAsync(ChatHistory chatHistory, Kernel kernel,
+                                                                          InvocationContext invocationContext) {
+        return execute(ChatCall.of(chatHistory, kernel, invocationContext));
+    }
+
+    @Override
+    public Mono<List<ChatMessageContent<?>>> getChatMessageContentsAsync(String prompt, Kernel kernel,
+                                                                          InvocationContext invocationContext) {
+        return execute(ChatCall.of(prompt, kernel, invocationContext));
+    }
+
+    @Override
+    public Flux<StreamingChatContent<?>> getStreamingChatMessageContentsAsync(ChatHistory chatHistory, Kernel kernel,
+                                                                              InvocationContext invocationContext) {
+        return executeStreaming(ChatCall.of(chatHistory, kernel, invocationContext));
+    }
+
+    @Override
+    public Flux<StreamingChatContent<?>> getStreamingChatMessageContentsAsync(String prompt, Kernel kernel,
+                                                                              InvocationContext invocationContext) {
+        return executeStreaming(ChatCall.of(prompt, kernel, invocationContext));
+    }
+
+    @Override
+    public String getModelId() {
+        return modelId;
+    }
+
+    @Override
+    public String getServiceId() {
+        return null;
+    }
+}
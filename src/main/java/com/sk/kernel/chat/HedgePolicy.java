@@ -0,0 +1,96 @@
+package com.sk.kernel.chat;
+
+import com.sk.metrics.LatencyRecorder;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when the {@link LoadBalancedChatCompletionService} sends a duplicate of a
+ * slow request, and how many duplicates it can afford.
+ *
+ * The hedge delay is a rolling percentile of recent completion latencies (never below
+ * the configured minimum). Every primary request earns {@code budgetPercent / 100} of a
+ * hedge, and sending one spends a whole one, so hedges stay within that share of
+ * extra load even when the upstream is slow across the board.
+ */
+public class HedgePolicy {
+
+    private static final int MIN_SAMPLES = 20;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayMillis;
+    private final double budgetRatio;
+    private final double maxBudget;
+    private final LatencyRecorder latencies = new LatencyRecorder(500);
+
+    private double budget;
+
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+
+    public HedgePolicy(boolean enabled, double percentile, long minDelayMillis, double budgetPercent) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.budgetRatio = budgetPercent / 100.0;
+        // allow a small burst of hedges, but not a backlog built up over a quiet hour
+        this.maxBudget = Math.max(1, budgetRatio * 100);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void recordLatency(long millis) {
+        latencies.record(millis);
+    }
+
+    /**
+     * Called once per primary request; returns how long to wait before hedging it.
+     */
+    public Duration onRequest() {
+        synchronized (this) {
+            budget = Math.min(maxBudget, budget + budgetRatio);
+        }
+        long delay = latencies.count() < MIN_SAMPLES ? -1 : latencies.percentile(percentile);
+        return Duration.ofMillis(Math.max(minDelayMillis, delay));
+    }
+
+    /**
+     * Spends one hedge from the budget, if there is one left.
+     */
+    public boolean tryHedge() {
+        synchronized (this) {
+            if (budget < 1) {
+                overBudget.incrementAndGet();
+                return false;
+            }
+            budget -= 1;
+        }
+        hedged.incrementAndGet();
+        return true;
+    }
+
+    public void onHedgeWon() {
+        hedgeWins.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("p50Millis", latencies.percentile(0.5));
+        stats.put("p90Millis", latencies.percentile(0.9));
+        stats.put("p99Millis", latencies.percentile(0.99));
+        stats.put("hedgeDelayMillis", Math.max(minDelayMillis,
+                latencies.count() < MIN_SAMPLES ? -1 : latencies.percentile(percentile)));
+        stats.put("hedged", hedged.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("skippedOverBudget", overBudget.get());
+        return stats;
+    }
+}
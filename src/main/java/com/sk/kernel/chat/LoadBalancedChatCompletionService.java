@@ -0,0 +1,353 @@
+package com.sk.kernel.chat;
+
+import com.azure.core.exception.HttpResponseException;
+import com.microsoft.semantickernel.aiservices.openai.chatcompletion.OpenAIFunctionToolCall;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.microsoft.semantickernel.services.chatcompletion.StreamingChatContent;
+import com.sk.deadline.Deadline;
+import com.sk.ratelimit.AdmissionRejectedException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads chat completions over several endpoints/deployments.
+ *
+ * Each request samples two healthy endpoints at random and goes to the one with the
+ * better {@link ChatEndpoint#score()} (power of two choices), which steers traffic
+ * away from slow, failing or quota-starved deployments without herding everyone onto
+ * the single best one. A request that fails on one endpoint is retried once on each
+ * of the others, and a slow one can be hedged (see {@link HedgePolicy}). Requests
+ * that auto-invoke tools only hedge and fail over their first model round, so every
+ * tool runs once. Failover and hedges all stop when the request's {@link Deadline}
+ * passes.
+ */
+public class LoadBalancedChatCompletionService extends DelegatingChatCompletionService {
+
+    private final List<ChatEndpoint> endpoints;
+    private final HedgePolicy hedging;
+
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong noEndpointAvailable = new AtomicLong();
+    private final AtomicLong toolRounds = new AtomicLong();
+    private final AtomicLong unsplitToolCalls = new AtomicLong();
+
+    public LoadBalancedChatCompletionService(String modelId, List<ChatEndpoint> endpoints, HedgePolicy hedging) {
+        super(modelId);
+        this.endpoints = List.copyOf(endpoints);
+        this.hedging = hedging;
+    }
+
+    public List<ChatEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /*
+     * With hedging on, a request that has not answered within the hedge delay is sent
+     * again, preferably to another endpoint. Whichever answers first wins and the other
+     * is cancelled. A failed hedge is ignored; the primary still fails over as usual.
+     *
+     * A request that auto-invokes tools is split: its first model round is sent with
+     * auto-invoke off, so it can be hedged and failed over like any other, the tools it
+     * asks for run once here, and the rest of the tool loop continues on the endpoint
+     * that won. Only that first round is timed.
+     */
+    @Override
+    protected Mono<List<ChatMessageContent<?>>> execute(ChatCall call) {
+        if (!call.autoInvokesTools()) {
+            return Deadline.bound(balanced(call).map(answer -> answer.messages));
+        }
+        ChatCall firstRound = call.withoutAutoInvoke();
+        if (firstRound == null) {
+            // a failover would run the tools again
+            unsplitToolCalls.incrementAndGet();
+            return Deadline.bound(continueOn(null, call));
+        }
+        return Deadline.bound(balanced(firstRound).flatMap(answer -> {
+            List<OpenAIFunctionToolCall> toolCalls = ToolRound.requested(answer.messages);
+            if (toolCalls.isEmpty()) {
+                return Mono.just(answer.messages);
+            }
+            toolRounds.incrementAndGet();
+            return ToolRound.run(call, answer.messages, toolCalls)
+                    .flatMap(done -> continueOn(answer.endpoint, call.continuedWith(done))
+                            .map(rest -> ToolRound.answer(call.getInvocationContext(), done, rest)));
+        }));
+    }
+
+    private Mono<Answer> balanced(ChatCall call) {
+        Set<ChatEndpoint> tried = ConcurrentHashMap.newKeySet();
+        if (!hedging.isEnabled()) {
+            return attempt(call, tried);
+        }
+        return Mono.defer(() -> {
+            Mono<Answer> hedge = Mono.delay(hedging.onRequest())
+                    .then(Mono.defer(() -> {
+                        ChatEndpoint endpoint = hedgeEndpoint(tried);
+                        if (endpoint == null) {
+                            return Mono.<Answer>never();
+                        }
+                        return send(call, endpoint, true)
+                                .doOnNext(response -> hedging.onHedgeWon())
+                                .onErrorResume(error -> Mono.never());
+                    }));
+            return Mono.firstWithSignal(attempt(call, tried), hedge);
+        });
+    }
+
+    /*
+     * The tool loop goes on where the first round answered, unless that endpoint has
+     * been ejected meanwhile. It is sent once, without failover or hedging, and not
+     * timed: its latency includes the tools.
+     */
+    private Mono<List<ChatMessageContent<?>>> continueOn(ChatEndpoint winner, ChatCall call) {
+        return Mono.defer(() -> {
+            ChatEndpoint endpoint = winner != null && winner.tryAcquire() ? winner
+                    : choose(winner == null ? Set.of() : Set.of(winner));
+            if (endpoint == null) {
+                return Mono.error(noEndpointError());
+            }
+            return send(call, endpoint, false).map(answer -> answer.messages);
+        });
+    }
+
+    @Override
+    protected Flux<StreamingChatContent<?>> executeStreaming(ChatCall call) {
+        Set<ChatEndpoint> tried = ConcurrentHashMap.newKeySet();
+        if (!hedging.isEnabled() || call.autoInvokesTools()) {
+            return streamAttempt(call, tried);
+        }
+        return Flux.defer(() -> {
+            // for streams "answered" means the first chunk arrived
+            Flux<StreamingChatContent<?>> hedge = Mono.delay(hedging.onRequest())
+                    .flatMapMany(ignored -> {
+                        ChatEndpoint endpoint = hedgeEndpoint(tried);
+                        if (endpoint == null) {
+                            return Flux.<StreamingChatContent<?>>never();
+                        }
+                        AtomicBoolean started = new AtomicBoolean();
+                        return stream(call, endpoint)
+                                .doOnNext(chunk -> {
+                                    if (started.compareAndSet(false, true)) {
+                                        hedging.onHedgeWon();
+                                    }
+                                })
+                                .onErrorResume(error -> started.get() ? Flux.error(error) : Flux.never());
+                    });
+            return Flux.firstWithSignal(streamAttempt(call, tried), hedge);
+        });
+    }
+
+    private Mono<Answer> attempt(ChatCall call, Set<ChatEndpoint> tried) {
+        return Mono.defer(() -> {
+            ChatEndpoint endpoint = choose(tried);
+            if (endpoint == null) {
+                return Mono.error(noEndpointError());
+            }
+            tried.add(endpoint);
+            return send(call, endpoint, true)
+                    .onErrorResume(error -> {
+                        if (isRetryable(error) && tried.size() < endpoints.size()) {
+                            failovers.incrementAndGet();
+                            return attempt(call, tried);
+                        }
+                        return Mono.error(error);
+                    });
+        });
+    }
+
+    private Flux<StreamingChatContent<?>> streamAttempt(ChatCall call, Set<ChatEndpoint> tried) {
+        return Flux.defer(() -> {
+            ChatEndpoint endpoint = choose(tried);
+            if (endpoint == null) {
+                return Flux.error(noEndpointError());
+            }
+            tried.add(endpoint);
+            return stream(call, endpoint);
+        });
+    }
+
+    /*
+     * Only single model round trips are timed; the latency of a tool loop says more
+     * about the tools than about the endpoint.
+     */
+    private Mono<Answer> send(ChatCall call, ChatEndpoint endpoint, boolean timed) {
+        long start = System.nanoTime();
+        return call.invoke(endpoint.getService())
+                .map(messages -> new Answer(endpoint, messages))
+                .doOnSuccess(answer -> {
+                    if (!timed) {
+                        endpoint.onSuccess();
+                        return;
+                    }
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    endpoint.onSuccess(millis);
+                    hedging.recordLatency(millis);
+                })
+                .doOnError(error -> release(endpoint, error))
+                .doOnCancel(endpoint::onAbandoned);
+    }
+
+    private Flux<StreamingChatContent<?>> stream(ChatCall call, ChatEndpoint endpoint) {
+        long start = System.nanoTime();
+        return call.stream(endpoint.getService())
+                .doOnComplete(() -> endpoint.onSuccess((System.nanoTime() - start) / 1_000_000))
+                .doOnError(error -> release(endpoint, error))
+                .doOnCancel(endpoint::onAbandoned);
+    }
+
+    /*
+     * A hedge prefers an endpoint the request has not been sent to; with a single
+     * endpoint it goes to the same deployment, which still lands on another replica.
+     */
+    private ChatEndpoint hedgeEndpoint(Set<ChatEndpoint> tried) {
+        if (!hedging.tryHedge()) {
+            return null;
+        }
+        ChatEndpoint endpoint = choose(tried);
+        if (endpoint == null) {
+            endpoint = choose(Set.of());
+        }
+        if (endpoint != null) {
+            tried.add(endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * Power of two choices among the endpoints that are not ejected and not yet tried.
+     */
+    ChatEndpoint choose(Set<ChatEndpoint> tried) {
+        List<ChatEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (ChatEndpoint endpoint : endpoints) {
+            if (!tried.contains(endpoint) && endpoint.isAvailable()) {
+                candidates.add(endpoint);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            ChatEndpoint picked;
+            if (candidates.size() == 1) {
+                picked = candidates.get(0);
+            } else {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int first = random.nextInt(candidates.size());
+                int second = random.nextInt(candidates.size() - 1);
+                if (second >= first) {
+                    second++;
+                }
+                ChatEndpoint a = candidates.get(first);
+                ChatEndpoint b = candidates.get(second);
+                picked = a.score() <= b.score() ? a : b;
+            }
+            if (picked.tryAcquire()) {
+                return picked;
+            }
+            // lost the race for a probe slot
+            candidates.remove(picked);
+        }
+        return null;
+    }
+
+    private void release(ChatEndpoint endpoint, Throwable error) {
+        if (isEndpointFailure(error)) {
+            endpoint.onFailure(hasOtherHealthy(endpoint));
+        } else {
+            endpoint.onAbandoned();
+        }
+    }
+
+    /*
+     * The last endpoint that is not ejected stays in: failing requests there beat
+     * rejecting them all.
+     */
+    private boolean hasOtherHealthy(ChatEndpoint endpoint) {
+        for (ChatEndpoint other : endpoints) {
+            if (other != endpoint && !other.isEjected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Local admission rejections and client errors (bad request, content filter) say
+     * nothing about the endpoint's health; throttling, server errors, timeouts and
+     * connection failures do.
+     */
+    private static boolean isEndpointFailure(Throwable error) {
+        if (error instanceof AdmissionRejectedException) {
+            return false;
+        }
+        HttpResponseException http = httpError(error);
+        if (http != null && http.getResponse() != null) {
+            int status = http.getResponse().getStatusCode();
+            return status == 408 || status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        return error instanceof AdmissionRejectedException || isEndpointFailure(error);
+    }
+
+    private static HttpResponseException httpError(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                return (HttpResponseException) cause;
+            }
+        }
+        return null;
+    }
+
+    private AdmissionRejectedException noEndpointError() {
+        noEndpointAvailable.incrementAndGet();
+        long now = System.nanoTime();
+        long soonest = Long.MAX_VALUE;
+        for (ChatEndpoint endpoint : endpoints) {
+            long until = endpoint.ejectedUntilNanos();
+            if (until > now) {
+                soonest = Math.min(soonest, until - now);
+            }
+        }
+        Duration retryAfter = soonest == Long.MAX_VALUE ? Duration.ofSeconds(1) : Duration.ofNanos(soonest);
+        return new AdmissionRejectedException("No healthy chat endpoint available", retryAfter);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("failovers", failovers.get());
+        stats.put("noEndpointAvailable", noEndpointAvailable.get());
+        stats.put("toolRounds", toolRounds.get());
+        stats.put("unsplitToolCalls", unsplitToolCalls.get());
+        stats.put("hedging", hedging.getStats());
+        Map<String, Object> perEndpoint = new LinkedHashMap<>();
+        for (ChatEndpoint endpoint : endpoints) {
+            perEndpoint.put(endpoint.getName(), endpoint.getStats());
+        }
+        stats.put("endpoints", perEndpoint);
+        return stats;
+    }
+
+    /**
+     * The messages of a model round and the endpoint that answered it.
+     */
+    private static final class Answer {
+        final ChatEndpoint endpoint;
+        final List<ChatMessageContent<?>> messages;
+
+        Answer(ChatEndpoint endpoint, List<ChatMessageContent<?>> messages) {
+            this.endpoint = endpoint;
+            this.messages = messages;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.sk.kernel.chat;
+
+/**
+ * How demanding a chat request is, as judged by the {@link ComplexityClassifier}.
+ */
+public enum RequestClass {
+    /** Small talk, short questions and rendered prompt templates. */
+    SIMPLE,
+    /** Tool use, retrieval, long conversations and reasoning-heavy questions. */
+    COMPLEX,
+    /** The heuristics could not decide; the optional classifier model breaks the tie. */
+    UNSURE
+}
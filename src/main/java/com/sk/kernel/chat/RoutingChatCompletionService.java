@@ -0,0 +1,159 @@
+package com.sk.kernel.chat;
+
+import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.microsoft.semantickernel.services.chatcompletion.StreamingChatContent;
+import com.sk.metrics.LatencyRecorder;
+import com.sk.ratelimit.TokenEstimator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends simple requests to a fast, cheap deployment and everything else to the large
+ * one. Each route (see {@link ChatRoute}) is configured as "fast", "large" or "auto";
+ * only "auto" routes are classified by the {@link ComplexityClassifier}.
+ */
+public class RoutingChatCompletionService extends DelegatingChatCompletionService {
+
+    public static final String AUTO = "auto";
+    public static final String FAST = "fast";
+    public static final String LARGE = "large";
+
+    private final ChatCompletionService fast;
+    private final ChatCompletionService large;
+    private final ComplexityClassifier classifier;
+    private final Function<String, String> routeModes;
+    private final double fastCostPer1kTokens;
+    private final double largeCostPer1kTokens;
+
+    private final Map<String, ClassStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * @param routeModes maps a route name to its mode: {@link #AUTO}, {@link #FAST} or {@link #LARGE}
+     */
+    public RoutingChatCompletionService(ChatCompletionService fast, ChatCompletionService large,
+                                        ComplexityClassifier classifier, Function<String, String> routeModes,
+                                        double fastCostPer1kTokens, double largeCostPer1kTokens) {
+        super(large.getModelId());
+        this.fast = fast;
+        this.large = large;
+        this.classifier = classifier;
+        this.routeModes = routeModes;
+        this.fastCostPer1kTokens = fastCostPer1kTokens;
+        this.largeCostPer1kTokens = largeCostPer1kTokens;
+    }
+
+    @Override
+    protected Mono<List<ChatMessageContent<?>>> execute(ChatCall call) {
+        return Mono.deferContextual(context -> classify(call, ChatRoute.of(context)))
+                .flatMap(requestClass -> {
+                    boolean toFast = requestClass == RequestClass.SIMPLE;
+                    ClassStats classStats = statsFor(requestClass, toFast);
+                    int promptTokens = TokenEstimator.estimatePrompt(call);
+                    long start = System.nanoTime();
+                    return call.invoke(toFast ? fast : large)
+                            .doOnSuccess(response -> classStats.record(
+                                    (System.nanoTime() - start) / 1_000_000, promptTokens, completionTokens(response)));
+                });
+    }
+
+    @Override
+    protected Flux<StreamingChatContent<?>> executeStreaming(ChatCall call) {
+        return Mono.deferContextual(context -> classify(call, ChatRoute.of(context)))
+                .flatMapMany(requestClass -> {
+                    boolean toFast = requestClass == RequestClass.SIMPLE;
+                    ClassStats classStats = statsFor(requestClass, toFast);
+                    int promptTokens = TokenEstimator.estimatePrompt(call);
+                    AtomicLong completionTokens = new AtomicLong();
+                    long start = System.nanoTime();
+                    return call.stream(toFast ? fast : large)
+                            .doOnNext(chunk -> completionTokens.addAndGet(TokenEstimator.countText(chunk.getContent())))
+                            .doOnComplete(() -> classStats.record(
+                                    (System.nanoTime() - start) / 1_000_000, promptTokens, completionTokens.get()));
+                });
+    }
+
+    /**
+     * The deployment a call on the route goes to, e.g. to key cached answers by it.
+     */
+    public Mono<String> deploymentFor(String route, ChatCall call) {
+        return classify(call, route).map(requestClass -> requestClass == RequestClass.SIMPLE
+                ? fast.getModelId()
+                : large.getModelId());
+    }
+
+    private Mono<RequestClass> classify(ChatCall call, String route) {
+        String mode = routeModes.apply(route);
+        if (FAST.equalsIgnoreCase(mode)) {
+            return Mono.just(RequestClass.SIMPLE);
+        }
+        if (!AUTO.equalsIgnoreCase(mode)) {
+            return Mono.just(RequestClass.COMPLEX);
+        }
+        return classifier.classify(call);
+    }
+
+    private ClassStats statsFor(RequestClass requestClass, boolean toFast) {
+        String key = requestClass.name().toLowerCase() + "->" + (toFast ? FAST : LARGE);
+        return stats.computeIfAbsent(key, k -> new ClassStats(toFast ? fastCostPer1kTokens : largeCostPer1kTokens));
+    }
+
+    private static long completionTokens(List<ChatMessageContent<?>> response) {
+        long tokens = 0;
+        if (response != null) {
+            for (ChatMessageContent<?> message : response) {
+                tokens += TokenEstimator.countText(message.getContent());
+            }
+        }
+        return tokens;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("classifierCalls", classifier.getClassifierCalls());
+        Map<String, Object> perClass = new LinkedHashMap<>();
+        stats.forEach((key, classStats) -> perClass.put(key, classStats.getStats()));
+        result.put("classes", perClass);
+        return result;
+    }
+
+    /**
+     * Latency and estimated token cost of one request class on one deployment.
+     */
+    private static final class ClassStats {
+
+        private final double costPer1kTokens;
+        private final LatencyRecorder latencies = new LatencyRecorder(500);
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong completionTokens = new AtomicLong();
+
+        ClassStats(double costPer1kTokens) {
+            this.costPer1kTokens = costPer1kTokens;
+        }
+
+        void record(long latencyMillis, long prompt, long completion) {
+            latencies.record(latencyMillis);
+            promptTokens.addAndGet(prompt);
+            completionTokens.addAndGet(completion);
+        }
+
+        Map<String, Object> getStats() {
+            long tokens = promptTokens.get() + completionTokens.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", latencies.total());
+            stats.put("p50Millis", latencies.percentile(0.5));
+            stats.put("p90Millis", latencies.percentile(0.9));
+            stats.put("promptTokens", promptTokens.get());
+            stats.put("completionTokens", completionTokens.get());
+            stats.put("estimatedCost", tokens * costPer1kTokens / 1000);
+            return stats;
+        }
+    }
+}
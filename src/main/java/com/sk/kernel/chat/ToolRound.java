@@ -0,0 +1,97 @@
+package com.sk.kernel.chat;
+
+import com.microsoft.semantickernel.Kernel;
+import com.microsoft.semantickernel.aiservices.openai.chatcompletion.OpenAIChatMessageContent;
+import com.microsoft.semantickernel.aiservices.openai.chatcompletion.OpenAIFunctionToolCall;
+import com.microsoft.semantickernel.contextvariables.ContextVariableTypes;
+import com.microsoft.semantickernel.orchestration.FunctionResultMetadata;
+import com.microsoft.semantickernel.orchestration.InvocationContext;
+import com.microsoft.semantickernel.orchestration.InvocationReturnMode;
+import com.microsoft.semantickernel.semanticfunctions.KernelFunction;
+import com.microsoft.semantickernel.services.chatcompletion.AuthorRole;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the tool calls a model answer asked for, once, outside the chat service, so the
+ * model round trip that asked for them can be failed over and hedged like any other.
+ * The results go back as tool messages, worded the way the chat service words them
+ * when it invokes the tools itself.
+ */
+final class ToolRound {
+
+    private ToolRound() {
+    }
+
+    /**
+     * The tool calls in the last message of an answer; empty when it is a final answer.
+     */
+    static List<OpenAIFunctionToolCall> requested(List<ChatMessageContent<?>> answer) {
+        if (answer == null || answer.isEmpty()) {
+            return List.of();
+        }
+        ChatMessageContent<?> last = answer.get(answer.size() - 1);
+        if (!(last instanceof OpenAIChatMessageContent) || ((OpenAIChatMessageContent<?>) last).getToolCall() == null) {
+            return List.of();
+        }
+        return ((OpenAIChatMessageContent<?>) last).getToolCall();
+    }
+
+    /**
+     * Runs the calls one after the other; returns the message that asked for them
+     * followed by one tool message per call.
+     */
+    static Mono<List<ChatMessageContent<?>>> run(ChatCall call, List<ChatMessageContent<?>> answer,
+                                                 List<OpenAIFunctionToolCall> toolCalls) {
+        ChatMessageContent<?> request = answer.get(answer.size() - 1);
+        return Flux.fromIterable(toolCalls)
+                .concatMap(toolCall -> invoke(call.getKernel(), call.getInvocationContext(), toolCall)
+                        .map(result -> toolMessage(toolCall, result)))
+                .collectList()
+                .map(results -> {
+                    List<ChatMessageContent<?>> messages = new ArrayList<>(results.size() + 1);
+                    messages.add(request);
+                    messages.addAll(results);
+                    return messages;
+                });
+    }
+
+    /**
+     * What the whole call returns, by its return mode: {@code done} are the messages of
+     * the round run here, {@code rest} what the continuation returned.
+     */
+    static List<ChatMessageContent<?>> answer(InvocationContext context, List<ChatMessageContent<?>> done,
+                                              List<ChatMessageContent<?>> rest) {
+        if (context.returnMode() == InvocationReturnMode.NEW_MESSAGES_ONLY) {
+            List<ChatMessageContent<?>> messages = new ArrayList<>(done);
+            messages.addAll(rest);
+            return messages;
+        }
+        // the continuation's full history already holds them, and the last message is its own
+        return rest;
+    }
+
+    private static Mono<String> invoke(Kernel kernel, InvocationContext context, OpenAIFunctionToolCall toolCall) {
+        return Mono.defer(() -> {
+            KernelFunction<?> function = kernel.getFunction(toolCall.getPluginName(), toolCall.getFunctionName());
+            ContextVariableTypes types = context.getContextVariableTypes();
+            return function.invokeAsync(kernel)
+                    .withArguments(toolCall.getArguments())
+                    .addKernelHooks(context.getKernelHooks())
+                    .withTypes(types)
+                    .withResultType(types.getVariableTypeForClass(String.class))
+                    .map(result -> result.getResult() == null
+                            ? "Completed successfully with no return value"
+                            : result.getResult());
+        }).onErrorResume(error -> Mono.just("Call failed: " + error.getMessage()));
+    }
+
+    private static ChatMessageContent<?> toolMessage(OpenAIFunctionToolCall toolCall, String result) {
+        return new ChatMessageContent<>(AuthorRole.TOOL, result, null, null, null,
+                FunctionResultMetadata.build(toolCall.getId()));
+    }
+}
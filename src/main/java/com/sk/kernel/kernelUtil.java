@@ -5,42 +5,63 @@ import com.azure.ai.openai.OpenAIAsyncClient;
 import com.azure.ai.openai.OpenAIClientBuilder;
 import com.azure.core.credential.AzureKeyCredential;
 import com.azure.core.credential.KeyCredential;
+import com.azure.core.http.policy.ExponentialBackoffOptions;
+import com.azure.core.http.policy.RetryOptions;
 import com.microsoft.semantickernel.Kernel;
 import com.microsoft.semantickernel.aiservices.openai.chatcompletion.OpenAIChatCompletion;
+import com.microsoft.semantickernel.aiservices.openai.textembedding.OpenAITextEmbeddingGenerationService;
 import com.microsoft.semantickernel.plugin.KernelPlugin;
 import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
 
+import com.microsoft.semantickernel.services.textembedding.Embedding;
 import com.sk.config.AzureAIConfig;
+import com.sk.config.ChatEndpointConfig;
+import com.sk.deadline.Deadline;
+import com.sk.dependency.Dependencies;
+import com.sk.kernel.chat.ChatCall;
+import com.sk.kernel.chat.ChatEndpoint;
+import com.sk.kernel.chat.ComplexityClassifier;
+import com.sk.kernel.chat.HedgePolicy;
+import com.sk.kernel.chat.LoadBalancedChatCompletionService;
+import com.sk.kernel.chat.RoutingChatCompletionService;
+import com.sk.metrics.StatsSource;
+import com.sk.ratelimit.AdmissionController;
+import com.sk.ratelimit.AdmittedChatCompletionService;
+import com.sk.ratelimit.TokenEstimator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
-public class kernelUtil {
+public class kernelUtil implements StatsSource {
 
     @Autowired
     AzureAIConfig config;
 
-    public Kernel kernelBuilder(List<KernelPlugin> plugins) throws IOException {
-
-        OpenAIAsyncClient clientasync = new OpenAIClientBuilder()
-                .credential(new AzureKeyCredential(config.getOpenAiApiKey()))
-                .endpoint(config.getOpenAiEndpoint())
-                .buildAsyncClient();
+    @Autowired
+    Dependencies dependencies;
 
+    private volatile OpenAITextEmbeddingGenerationService embeddingService;
+    private volatile LoadBalancedChatCompletionService loadBalancer;
+    private volatile ChatCompletionService chatCompletionService;
+    private volatile RoutingChatCompletionService router;
+    private volatile AdmissionController embeddingAdmission;
 
-        ChatCompletionService chatCompletion = OpenAIChatCompletion.builder()
-                .withOpenAIAsyncClient(clientasync)
-                .withModelId(config.getChatDeploymentName())
-                .build();
+    public Kernel kernelBuilder(List<KernelPlugin> plugins) throws IOException {
 
         Kernel kernel = null;
 
         // Initialize the kernel with the chat completion service and the plugins
         Kernel.Builder kernelBuilder = Kernel.builder()
-                .withAIService(ChatCompletionService.class, chatCompletion);
+                .withAIService(ChatCompletionService.class, chatCompletionService());
 
         for (KernelPlugin plugin : plugins) {
             kernelBuilder.withPlugin(plugin);
@@ -52,39 +73,230 @@ public class kernelUtil {
 
     public Kernel kernelBuilderWithoutPlugin() throws IOException {
 
-        // Challenge 2 for Create the client
-        OpenAIAsyncClient clientasync = new OpenAIClientBuilder()
-                .credential(new AzureKeyCredential(config.getOpenAiApiKey()))
-                .endpoint(config.getOpenAiEndpoint())
-                .buildAsyncClient();
-
-        // Challenge 2 Create the chat completion service
-        ChatCompletionService chatCompletion = OpenAIChatCompletion.builder()
-                .withOpenAIAsyncClient(clientasync)
-                .withModelId(config.getChatDeploymentName())
-                .build();
-
         Kernel kernel = null;
 
         kernel = Kernel.builder()
-                .withAIService(ChatCompletionService.class, chatCompletion)
+                .withAIService(ChatCompletionService.class, chatCompletionService())
                 .build();
         return kernel;
 
     }
 
+    /*
+     * All kernels share one chat completion service. It balances over every configured
+     * endpoint/deployment and admits each call against that deployment's TPM/RPM quota,
+     * so it is built once instead of per request. When a fast deployment is configured,
+     * simple requests are routed to it instead.
+     */
+    public ChatCompletionService chatCompletionService() throws IOException {
+        ChatCompletionService service = chatCompletionService;
+        if (service == null) {
+            synchronized (this) {
+                service = chatCompletionService;
+                if (service == null) {
+                    service = loadBalancer();
+                    String fastDeployment = config.getFastDeploymentName();
+                    if (fastDeployment != null && !fastDeployment.isEmpty()) {
+                        ChatCompletionService fast = new AdmittedChatCompletionService(
+                                OpenAIChatCompletion.builder()
+                                        .withOpenAIAsyncClient(openAIAsyncClient(Dependencies.FAST_CHAT))
+                                        .withModelId(fastDeployment)
+                                        .build(),
+                                new AdmissionController(fastDeployment,
+                                        config.getFastTokensPerMinute(), config.getFastRequestsPerMinute(),
+                                        Duration.ofMillis(config.getAdmissionMaxQueueWaitMs()),
+                                        config.getAdmissionMaxRetries(),
+                                        Duration.ofMillis(config.getAdmissionBaseBackoffMs())),
+                                config.getChatExpectedCompletionTokens(),
+                                dependencies.get(Dependencies.FAST_CHAT));
+                        ComplexityClassifier classifier = new ComplexityClassifier(
+                                config.getRoutingLongPromptTokens(), config.getRoutingMaxSimpleMessages(),
+                                config.isRoutingClassifierEnabled() ? fast : null);
+                        router = new RoutingChatCompletionService(fast, service, classifier,
+                                config::getRoutingMode,
+                                config.getFastCostPer1kTokens(), config.getLargeCostPer1kTokens());
+                        service = router;
+                    }
+                    chatCompletionService = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * The deployment a single-message request on the route is answered by, after
+     * complexity routing.
+     *
+     * @param toolsOnOffer whether the request's kernel has plugins the model may call
+     */
+    public Mono<String> chatDeploymentFor(String route, String userMessage, boolean toolsOnOffer) {
+        return Mono.defer(() -> {
+            try {
+                chatCompletionService();
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            if (router == null) {
+                return Mono.just(config.getChatDeploymentName());
+            }
+            ChatHistory history = new ChatHistory();
+            history.addUserMessage(userMessage);
+            return router.deploymentFor(route, ChatCall.describing(history, toolsOnOffer));
+        });
+    }
+
+    private LoadBalancedChatCompletionService loadBalancer() throws IOException {
+        LoadBalancedChatCompletionService service = loadBalancer;
+        if (service == null) {
+            synchronized (this) {
+                service = loadBalancer;
+                if (service == null) {
+                    List<ChatEndpointConfig> endpointConfigs = config.getChatEndpoints();
+                    // With several endpoints a throttled call fails over instead of waiting out Retry-After
+                    int retries = endpointConfigs.size() > 1 ? 0 : config.getAdmissionMaxRetries();
+                    List<ChatEndpoint> endpoints = new ArrayList<>();
+                    for (ChatEndpointConfig endpointConfig : endpointConfigs) {
+                        // Challenge 2 Create the chat completion service
+                        ChatCompletionService chatCompletion = OpenAIChatCompletion.builder()
+                                .withOpenAIAsyncClient(openAIAsyncClient(endpointConfig.getEndpoint(), endpointConfig.getApiKey(),
+                                        Dependencies.CHAT))
+                                .withModelId(endpointConfig.getDeploymentName())
+                                .build();
+                        AdmissionController admission = new AdmissionController(
+                                endpointConfig.getName() + "/" + endpointConfig.getDeploymentName(),
+                                endpointConfig.getTokensPerMinute(), endpointConfig.getRequestsPerMinute(),
+                                Duration.ofMillis(config.getAdmissionMaxQueueWaitMs()),
+                                retries,
+                                Duration.ofMillis(config.getAdmissionBaseBackoffMs()));
+                        endpoints.add(new ChatEndpoint(endpointConfig.getName(),
+                                new AdmittedChatCompletionService(chatCompletion, admission,
+                                        config.getChatExpectedCompletionTokens(), dependencies.get(Dependencies.CHAT)),
+                                admission,
+                                config.getBalancerEwmaAlpha(),
+                                config.getBalancerEjectAfterFailures(),
+                                config.getBalancerEjectErrorRate(),
+                                config.getBalancerEjectionSeconds() * 1000));
+                    }
+                    HedgePolicy hedging = new HedgePolicy(config.isHedgeEnabled(), config.getHedgePercentile(),
+                            config.getHedgeMinDelayMs(), config.getHedgeBudgetPercent());
+                    service = new LoadBalancedChatCompletionService(config.getChatDeploymentName(), endpoints, hedging);
+                    loadBalancer = service;
+                }
+            }
+        }
+        return service;
+    }
+
     public OpenAIAsyncClient openAIAsyncClient() throws IOException {
+        return openAIAsyncClient(Dependencies.CHAT);
+    }
 
-        if (config.getOpenAiEndpoint() != null && !config.getOpenAiEndpoint().isEmpty()) {
+    private OpenAIAsyncClient openAIAsyncClient(String dependency) {
+        return openAIAsyncClient(config.getOpenAiEndpoint(), config.getOpenAiApiKey(), dependency);
+    }
+
+    /*
+     * Each dependency (chat, fast-chat, embeddings) talks through its own connection
+     * pool, so one of them backing up cannot starve the others of connections.
+     */
+    private OpenAIAsyncClient openAIAsyncClient(String endpoint, String apiKey, String dependency) {
+
+        // Throttling is retried by the admission controllers, which honour Retry-After
+        // for every caller at once, so the client itself does not retry on top of that
+        RetryOptions noClientRetries = new RetryOptions(new ExponentialBackoffOptions().setMaxRetries(0));
+
+        if (endpoint != null && !endpoint.isEmpty()) {
             return new OpenAIClientBuilder()
-                    .endpoint(config.getOpenAiEndpoint())
-                    .credential(new AzureKeyCredential(config.getOpenAiApiKey()))
+                    .endpoint(endpoint)
+                    .credential(new AzureKeyCredential(apiKey))
+                    .retryOptions(noClientRetries)
+                    .httpClient(dependencies.httpClient(dependency))
                     .buildAsyncClient();
         }
         return new OpenAIClientBuilder()
-                .credential(new KeyCredential(config.getOpenAiApiKey()))
+                .credential(new KeyCredential(apiKey))
+                .retryOptions(noClientRetries)
+                .httpClient(dependencies.httpClient(dependency))
                 .buildAsyncClient();
     }
 
+    /*
+     * The embedding service is stateless, so one instance is shared by the search
+     * plugin and the caches instead of building a new client for every query.
+     */
+    public OpenAITextEmbeddingGenerationService embeddingService() throws IOException {
+        OpenAITextEmbeddingGenerationService service = embeddingService;
+        if (service == null) {
+            synchronized (this) {
+                service = embeddingService;
+                if (service == null) {
+                    service = OpenAITextEmbeddingGenerationService.builder()
+                            .withOpenAIAsyncClient(openAIAsyncClient(Dependencies.EMBEDDINGS))
+                            .withDeploymentName(config.getEmbeddingDeploymentName())
+                            .withModelId(config.getEmbeddingDeploymentName())
+                            .withDimensions(1536)
+                            .build();
+                    embeddingService = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * Generates embeddings through the embedding deployment's admission control, within
+     * the request's deadline if the subscriber context carries one.
+     */
+    public Mono<List<Embedding>> generateEmbeddings(List<String> data) {
+        int estimatedTokens = 0;
+        for (String text : data) {
+            estimatedTokens += TokenEstimator.countText(text);
+        }
+        return Deadline.bound(embeddingAdmission().admit(estimatedTokens, () -> {
+            try {
+                return dependencies.get(Dependencies.EMBEDDINGS).execute(embeddingService().generateEmbeddingsAsync(data));
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+        }));
+    }
+
+    private AdmissionController embeddingAdmission() {
+        if (embeddingAdmission == null) {
+            synchronized (this) {
+                if (embeddingAdmission == null) {
+                    embeddingAdmission = new AdmissionController(config.getEmbeddingDeploymentName(),
+                            config.getEmbeddingTokensPerMinute(), config.getEmbeddingRequestsPerMinute(),
+                            Duration.ofMillis(config.getAdmissionMaxQueueWaitMs()),
+                            config.getAdmissionMaxRetries(),
+                            Duration.ofMillis(config.getAdmissionBaseBackoffMs()));
+                }
+            }
+        }
+        return embeddingAdmission;
+    }
+
+    @Override
+    public String getStatsName() {
+        return "admission";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        try {
+            stats.put("chat", loadBalancer().getStats());
+            chatCompletionService();
+            if (router != null) {
+                stats.put("routing", router.getStats());
+            }
+        } catch (IOException e) {
+            stats.put("chat", e.getMessage());
+        }
+        stats.put("embedding", embeddingAdmission().getStats());
+        return stats;
+    }
+
 
 }
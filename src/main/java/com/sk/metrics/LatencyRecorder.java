@@ -0,0 +1,51 @@
+package com.sk.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and answers percentile
+ * queries over them, so thresholds follow the current behaviour of a dependency
+ * rather than its all-time history.
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+    private long total;
+
+    public LatencyRecorder(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        total++;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 1, e.g. 0.9 for p90
+     * @return the percentile over the current window, or -1 when no samples exist yet
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public synchronized long total() {
+        return total;
+    }
+}
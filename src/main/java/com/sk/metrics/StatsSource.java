@@ -0,0 +1,13 @@
+package com.sk.metrics;
+
+import java.util.Map;
+
+/**
+ * A component that exposes runtime counters through the /api/stats endpoint.
+ */
+public interface StatsSource {
+
+    String getStatsName();
+
+    Map<String, Object> getStats();
+}
@@ -1,13 +1,26 @@
 package com.sk.model;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
+/**
+ * Either a new message for a conversation the server keeps ({@code message} plus an
+ * optional {@code conversationId}), or the full history for stateless callers
+ * ({@code messages}).
+ */
 public class ChatRequest {
 
     @JsonProperty("messages")
     private List<Message> messages;
 
+    @JsonProperty("conversationId")
+    @JsonAlias("sessionId")
+    private String conversationId;
+
+    @JsonProperty("message")
+    private String message;
+
     public List<Message> getMessages() {
         return messages;
     }
@@ -16,6 +29,22 @@ public class ChatRequest {
         this.messages = messages;
     }
 
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
     public static class Message {
         private String role;
         private String content;
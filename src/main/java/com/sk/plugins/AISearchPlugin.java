@@ -6,7 +6,6 @@ import com.azure.core.util.MetricsOptions;
 import com.azure.core.util.TracingOptions;
 import com.azure.search.documents.indexes.SearchIndexAsyncClient;
 import com.azure.search.documents.indexes.SearchIndexClientBuilder;
-import com.microsoft.semantickernel.aiservices.openai.textembedding.OpenAITextEmbeddingGenerationService;
 import com.microsoft.semantickernel.connectors.data.azureaisearch.AzureAISearchVectorStore;
 import com.microsoft.semantickernel.connectors.data.azureaisearch.AzureAISearchVectorStoreOptions;
 import com.microsoft.semantickernel.connectors.data.azureaisearch.AzureAISearchVectorStoreRecordCollectionOptions;
@@ -15,15 +14,18 @@ import com.microsoft.semantickernel.data.vectorstorage.VectorStoreRecordCollecti
 import com.microsoft.semantickernel.semanticfunctions.annotations.DefineKernelFunction;
 import com.microsoft.semantickernel.semanticfunctions.annotations.KernelFunctionParameter;
 import com.microsoft.semantickernel.services.textembedding.Embedding;
+import com.sk.cache.RetrievalCache;
+import com.sk.cache.VectorMath;
 import com.sk.config.AzureAIConfig;
+import com.sk.dependency.Dependencies;
 import com.sk.kernel.kernelUtil;
 import com.sk.model.Handbook;
+import com.sk.tools.ToolCall;
+import com.sk.tools.ToolInvoker;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
-import java.io.IOException;
-import java.time.Duration;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -34,11 +36,18 @@ public class AISearchPlugin {
 
     private final AzureAIConfig config;
     private final com.sk.kernel.kernelUtil kernelUtil;
+    private final RetrievalCache retrievalCache;
+    private final Dependencies dependencies;
+    private final ToolInvoker toolCalls;
 
     @Autowired
-    public AISearchPlugin(AzureAIConfig openaibean, kernelUtil kernelUtil) {
+    public AISearchPlugin(AzureAIConfig openaibean, kernelUtil kernelUtil, RetrievalCache retrievalCache,
+                          Dependencies dependencies, ToolInvoker toolCalls) {
         this.config = openaibean;
         this.kernelUtil = kernelUtil;
+        this.retrievalCache = retrievalCache;
+        this.dependencies = dependencies;
+        this.toolCalls = toolCalls;
     }
 
     @DefineKernelFunction(description = "Search documents for employer Contoso", name = "contoso_search")
@@ -47,67 +56,79 @@ public class AISearchPlugin {
         if (inputString == null || inputString.trim().isEmpty()) {
             return "Error: Search query cannot be empty";
         }
-        System.out.println("Searching for: " + inputString);
         try {
-            // Create embedding service
-            OpenAITextEmbeddingGenerationService embeddingService = createEmbeddingService();
-
-            // Create search client and vector store
-            AzureAISearchVectorStore vectorStore = createVectorStore();
-
-            // Get collection
-            VectorStoreRecordCollection<String, Handbook> collection = vectorStore.getCollection(
-                config.getAzure_search_indexname(),
-                AzureAISearchVectorStoreRecordCollectionOptions.<Handbook>builder()
-                    .withRecordClass(Handbook.class)
-                    .build()
-            );
-
-            // Generate embeddings
-            List<Embedding> embeddings = embeddingService
-                .generateEmbeddingsAsync(Collections.singletonList(inputString))
-                .timeout(Duration.ofSeconds(30))
-                .block();
-
-            if (embeddings == null || embeddings.isEmpty()) {
-                return "Error: Failed to generate embeddings";
-            }
-
-            // Perform vector search
-            List<VectorSearchResult<Handbook>> searchResults = collection
-                .searchAsync(embeddings.get(0).getVector(), null)
-                .timeout(Duration.ofSeconds(30))
-                .block();
-
-            if (searchResults == null || searchResults.isEmpty()) {
-                return "No matching results found";
-            }
-
-            // Get best match
-            return searchResults.stream()
-                .max(Comparator.comparing(VectorSearchResult::getScore))
-                .map(result -> result.getRecord().getChunk())
-                .orElse("No result found");
-
+            return toolCalls.invoke(ToolCall.of("AISearchPlugin", "contoso_search", "query", inputString),
+                    () -> search(inputString));
         } catch (Exception e) {
             e.printStackTrace();
             return "Error: " + e.getMessage();
         }
     }
 
-    private OpenAITextEmbeddingGenerationService createEmbeddingService() throws IOException, IOException {
-        return OpenAITextEmbeddingGenerationService.builder()
-            .withOpenAIAsyncClient(kernelUtil.openAIAsyncClient())
-            .withDeploymentName(config.getEmbeddingDeploymentName())
-            .withModelId(config.getEmbeddingDeploymentName())
-            .withDimensions(1536)
-            .build();
+    private String search(String inputString) {
+        System.out.println("Searching for: " + inputString);
+        String indexName = config.getAzure_search_indexname();
+        String cached = retrievalCache.getExact(indexName, inputString);
+        if (cached != null) {
+            System.out.println("Retrieval cache hit (exact) for: " + inputString);
+            return cached;
+        }
+        long cacheGeneration = retrievalCache.generation();
+        // Create search client and vector store
+        AzureAISearchVectorStore vectorStore = createVectorStore();
+
+        // Get collection
+        VectorStoreRecordCollection<String, Handbook> collection = vectorStore.getCollection(
+            indexName,
+            AzureAISearchVectorStoreRecordCollectionOptions.<Handbook>builder()
+                .withRecordClass(Handbook.class)
+                .build()
+        );
+
+        // Generate embeddings
+        List<Embedding> embeddings = kernelUtil
+            .generateEmbeddings(Collections.singletonList(inputString))
+            .block();
+
+        if (embeddings == null || embeddings.isEmpty()) {
+            return "Error: Failed to generate embeddings";
+        }
+
+        // Paraphrases of an earlier query land close to it in embedding space
+        float[] queryVector = VectorMath.normalize(embeddings.get(0).getVector());
+        cached = retrievalCache.getSimilar(indexName, queryVector);
+        if (cached != null) {
+            System.out.println("Retrieval cache hit (similar) for: " + inputString);
+            return cached;
+        }
+
+        // Perform vector search
+        // under the search dependency's timeout and retry budget, within the request's deadline
+        List<VectorSearchResult<Handbook>> searchResults = dependencies.get(Dependencies.SEARCH)
+            .execute(collection.searchAsync(embeddings.get(0).getVector(), null))
+            .block();
+
+        if (searchResults == null || searchResults.isEmpty()) {
+            return "No matching results found";
+        }
+
+        // Get best match
+        String bestMatch = searchResults.stream()
+            .max(Comparator.comparing(VectorSearchResult::getScore))
+            .map(result -> result.getRecord().getChunk())
+            .orElse(null);
+        if (bestMatch == null) {
+            return "No result found";
+        }
+        retrievalCache.put(indexName, inputString, queryVector, bestMatch, cacheGeneration);
+        return bestMatch;
     }
 
     private AzureAISearchVectorStore createVectorStore() {
         SearchIndexAsyncClient searchClient = new SearchIndexClientBuilder()
             .endpoint(config.getAzure_search_Endpoint())
             .credential(new AzureKeyCredential(config.getAzure_search_key()))
+            .httpClient(dependencies.httpClient(Dependencies.SEARCH))
             .clientOptions(new ClientOptions()
                 .setApplicationId("SemanticKernel-Basics"))
             .buildAsyncClient();
@@ -0,0 +1,261 @@
+package com.sk.plugins;
+
+import com.sk.config.AzureAIConfig;
+import com.sk.deadline.Deadline;
+import com.sk.metrics.StatsSource;
+import com.sk.ratelimit.TokenBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Calls the geocoding service for {@link GeocodingPlugin}, within the provider's
+ * request rate.
+ *
+ * An address is looked up as several queries at once: the full address, then ever
+ * shorter prefixes of its comma-separated parts down to the first one. The first
+ * query starts straight away; each next one starts after client.geo.hedge-delay-ms,
+ * or as soon as all queries before it came back empty. The best-ranked non-empty
+ * answer wins and the queries still running or waiting are cancelled, so an
+ * ambiguous address costs a hedge delay rather than a full round trip.
+ *
+ * Every request takes a slot from one token bucket shared by all lookups. A query
+ * waits for its slot on a timer instead of a sleeping thread, gives it back when it
+ * is cancelled before being sent, and a 429 from the provider pauses the bucket for
+ * its Retry-After. The bucket holds client.geo.rate-limit.requests slots, so hedging
+ * only saves time when that is more than 1: with a single slot each next query waits
+ * a whole rate-limit period for its turn, whatever the hedge delay.
+ */
+@Component
+public class GeocodingClient implements StatsSource {
+
+    private final AzureAIConfig config;
+    private final RestTemplate restTemplate;
+    private final TokenBucket rateLimit;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong rateWaitMillis = new AtomicLong();
+    private final AtomicLongArray wins;
+
+    @Autowired
+    public GeocodingClient(AzureAIConfig config, RestTemplate restTemplate) {
+        this.config = config;
+        this.restTemplate = restTemplate;
+        this.rateLimit = new TokenBucket(config.getGeoRateLimitRequests(), config.getGeoRateLimitPeriodMs());
+        this.wins = new AtomicLongArray(Math.max(1, config.getGeoMaxVariants()));
+    }
+
+    /**
+     * The search answer (a JSON array) of the best-ranked query that found anything;
+     * empty when none did, an error when none did and at least one failed.
+     */
+    public Mono<String> coordinates(String address) {
+        List<String> queries = variants(address);
+        Deadline deadline = Deadline.current();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Mono<Map.Entry<Integer, String>>> attempts = new ArrayList<>();
+        Mono<Long> previousEmpty = Mono.never();
+        for (int i = 0; i < queries.size(); i++) {
+            int rank = i;
+            String url = config.getGeourl() + "search?q=" + URLEncoder.encode(queries.get(i), StandardCharsets.UTF_8)
+                    + "&format=json"
+                    + "&api_key=" + config.getGeokey();
+            Sinks.Empty<Void> empty = Sinks.empty();
+            Duration hedgeDelay = Duration.ofMillis(rank * config.getGeoHedgeDelayMs());
+            Mono<Long> start = rank == 0
+                    ? Mono.just(0L)
+                    : Mono.firstWithSignal(Mono.delay(hedgeDelay), previousEmpty)
+                            .doOnSuccess(signal -> hedged.incrementAndGet());
+            attempts.add(start
+                    .then(get(url, deadline))
+                    .filter(body -> !body.isBlank() && !body.trim().equals("[]"))
+                    .map(body -> Map.entry(rank, body))
+                    .doOnSuccess(found -> {
+                        // only a query that found nothing lets the next one start early
+                        if (found == null) {
+                            empty.tryEmitEmpty();
+                        }
+                    })
+                    .onErrorResume(error -> {
+                        errors.add(error);
+                        return Mono.empty();
+                    }));
+            previousEmpty = rank == 0
+                    ? empty.asMono().then(Mono.just(0L))
+                    : Mono.when(previousEmpty, empty.asMono()).then(Mono.just(0L));
+        }
+        lookups.incrementAndGet();
+        // subscribes to every attempt at once but emits in rank order, so the first
+        // answer out is the best one; taking it cancels the others
+        return Flux.mergeSequential(attempts)
+                .next()
+                .doOnNext(best -> wins.incrementAndGet(best.getKey()))
+                .map(Map.Entry::getValue)
+                .switchIfEmpty(Mono.defer(() -> {
+                    notFound.incrementAndGet();
+                    return errors.isEmpty() ? Mono.empty() : Mono.error(errors.get(0));
+                }));
+    }
+
+    /**
+     * The reverse-geocoding answer for a point.
+     */
+    public Mono<String> address(double latitude, double longitude) {
+        String url = config.getGeourl() + "reverse?lat=" + latitude + "&lon=" + longitude
+                + "&api_key=" + config.getGeokey();
+        return get(url, Deadline.current());
+    }
+
+    /*
+     * The full address first, then shorter prefixes of its parts down to the first
+     * part; when there are more than max-variants, the middle ones are dropped.
+     */
+    private List<String> variants(String address) {
+        List<String> parts = Arrays.stream(address.split(","))
+                .map(String::trim)
+                .filter(part -> !part.isEmpty())
+                .toList();
+        LinkedHashSet<String> variants = new LinkedHashSet<>();
+        for (int count = parts.size(); count > 0; count--) {
+            variants.add(String.join(" ", parts.subList(0, count)));
+        }
+        if (variants.isEmpty()) {
+            variants.add(address.trim());
+        }
+        List<String> ranked = new ArrayList<>(variants);
+        int max = Math.max(1, config.getGeoMaxVariants());
+        if (ranked.size() > max) {
+            String shortest = ranked.get(ranked.size() - 1);
+            ranked = new ArrayList<>(ranked.subList(0, max));
+            if (max > 1) {
+                ranked.set(max - 1, shortest);
+            }
+        }
+        return ranked;
+    }
+
+    /*
+     * One request, sent once it has a rate-limit slot. A request cancelled before it
+     * answered (a better-ranked query won) counts as cancelled; its thread is
+     * interrupted, which aborts the HTTP exchange.
+     */
+    private Mono<String> get(String url, Deadline deadline) {
+        return Mono.defer(() -> {
+            AtomicBoolean answered = new AtomicBoolean();
+            return slot(deadline)
+                    .then(Mono.fromCallable(() -> Deadline.callWithin(deadline, () -> fetch(url)))
+                            .subscribeOn(Schedulers.boundedElastic()))
+                    .doOnSuccess(body -> answered.set(true))
+                    .doOnCancel(() -> {
+                        if (!answered.get()) {
+                            cancelled.incrementAndGet();
+                        }
+                    });
+        });
+    }
+
+    private String fetch(String url) {
+        requests.incrementAndGet();
+        System.out.println("geocoding URL-->" + url);
+        try {
+            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+            if (response.getStatusCode() != HttpStatus.OK) {
+                throw new IllegalStateException("HTTP Error: " + response.getStatusCode()
+                        + ", Body: " + response.getBody());
+            }
+            return response.getBody() == null ? "" : response.getBody();
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            throttled.incrementAndGet();
+            rateLimit.pauseFor(TimeUnit.SECONDS.toNanos(retryAfterSeconds(e)));
+            throw e;
+        }
+    }
+
+    /*
+     * Reserves a request slot, waiting for it on a timer. A reservation cancelled
+     * while waiting is given back.
+     */
+    private Mono<Void> slot(Deadline deadline) {
+        return Mono.defer(() -> {
+            long maxWaitMs = config.getGeoRateLimitMaxWaitMs();
+            if (deadline != null) {
+                maxWaitMs = Math.min(maxWaitMs, deadline.remainingMillis());
+            }
+            long waitNanos = rateLimit.reserve(1, TimeUnit.MILLISECONDS.toNanos(maxWaitMs));
+            if (waitNanos < 0) {
+                rateLimited.incrementAndGet();
+                return Mono.error(new IllegalStateException(
+                        "Geocoding rate limit reached, no request slot within " + maxWaitMs + " ms"));
+            }
+            if (waitNanos == 0) {
+                return Mono.empty();
+            }
+            rateWaitMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            return Mono.delay(Duration.ofNanos(waitNanos))
+                    .doOnCancel(() -> rateLimit.refund(1))
+                    .then();
+        });
+    }
+
+    private static long retryAfterSeconds(HttpClientErrorException e) {
+        String retryAfter = e.getResponseHeaders() == null ? null : e.getResponseHeaders().getFirst("Retry-After");
+        try {
+            return retryAfter == null ? 1 : Math.max(1, Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ignored) {
+            return 1;
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return "geocoding";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lookups", lookups.get());
+        stats.put("requests", requests.get());
+        stats.put("hedged", hedged.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("notFound", notFound.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("throttled", throttled.get());
+        stats.put("rateWaitMillis", rateWaitMillis.get());
+        stats.put("rateSlotsAvailable", rateLimit.available());
+        List<Long> byVariant = new ArrayList<>();
+        for (int i = 0; i < wins.length(); i++) {
+            byVariant.add(wins.get(i));
+        }
+        stats.put("winsByVariant", byVariant);
+        return stats;
+    }
+}
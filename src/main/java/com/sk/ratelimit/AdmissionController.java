@@ -0,0 +1,214 @@
+package com.sk.ratelimit;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for one Azure OpenAI deployment.
+ *
+ * Every call reserves its estimated token cost and one request from buckets sized to
+ * the deployment's TPM and RPM quota. A call that cannot be admitted within the
+ * queue deadline is rejected straight away with {@link AdmissionRejectedException}
+ * rather than being sent upstream to collect a 429. When the upstream throttles
+ * anyway, its Retry-After pauses the buckets for every caller and the call is retried
+ * with jittered exponential backoff. A throttled or cancelled call gives its
+ * reservation back.
+ */
+public class AdmissionController {
+
+    private static final HttpHeaderName RETRY_AFTER_MS = HttpHeaderName.fromString("retry-after-ms");
+    private static final HttpHeaderName X_MS_RETRY_AFTER_MS = HttpHeaderName.fromString("x-ms-retry-after-ms");
+
+    private final String name;
+    private final TokenBucket tokenBucket;
+    private final TokenBucket requestBucket;
+    private final long maxQueueWaitNanos;
+    private final int maxRetries;
+    private final Duration baseBackoff;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong queueWaitMillis = new AtomicLong();
+    private final AtomicLong reservedTokens = new AtomicLong();
+
+    public AdmissionController(String name, int tokensPerMinute, int requestsPerMinute,
+                               Duration maxQueueWait, int maxRetries, Duration baseBackoff) {
+        this.name = name;
+        this.tokenBucket = new TokenBucket(tokensPerMinute, 60_000);
+        this.requestBucket = new TokenBucket(requestsPerMinute, 60_000);
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.maxRetries = maxRetries;
+        this.baseBackoff = baseBackoff;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Runs the call once its estimated cost fits in the deployment quota.
+     *
+     * @param estimatedTokens prompt plus expected completion tokens
+     * @param call            the upstream call, subscribed once per attempt
+     */
+    public <T> Mono<T> admit(int estimatedTokens, Supplier<Mono<T>> call) {
+        return attempt(estimatedTokens, () -> call.get().flux(), 0).singleOrEmpty();
+    }
+
+    /**
+     * Streaming variant of {@link #admit}: a throttled stream is retried as long as it
+     * has not emitted anything yet.
+     */
+    public <T> Flux<T> admitMany(int estimatedTokens, Supplier<Flux<T>> call) {
+        return attempt(estimatedTokens, call, 0);
+    }
+
+    /**
+     * Fraction of the token quota currently available, between 0 and 1.
+     */
+    public double headroom() {
+        return Math.max(0, tokenBucket.available()) / tokenBucket.capacity();
+    }
+
+    private <T> Flux<T> attempt(int estimatedTokens, Supplier<Flux<T>> call, int attemptNumber) {
+        return Flux.defer(() -> {
+            long waitNanos = reserve(estimatedTokens);
+            if (waitNanos < 0) {
+                rejected.incrementAndGet();
+                return Flux.error(new AdmissionRejectedException(
+                        "Deployment " + name + " is at capacity, try again later",
+                        Duration.ofNanos(nanosUntilAdmitted(estimatedTokens))));
+            }
+            admitted.incrementAndGet();
+            reservedTokens.addAndGet(estimatedTokens);
+            Flux<T> upstream = Flux.defer(call);
+            if (waitNanos > 0) {
+                queued.incrementAndGet();
+                queueWaitMillis.addAndGet(waitNanos / 1_000_000);
+                upstream = Mono.delay(Duration.ofNanos(waitNanos))
+                        .doOnCancel(() -> refund(estimatedTokens))
+                        .thenMany(upstream);
+            }
+            AtomicBoolean emitted = new AtomicBoolean();
+            return upstream
+                    .doOnNext(item -> emitted.set(true))
+                    .onErrorResume(error -> {
+                        Duration retryAfter = retryAfter(error);
+                        if (retryAfter == null || emitted.get()) {
+                            return Flux.error(error);
+                        }
+                        throttled.incrementAndGet();
+                        tokenBucket.pauseFor(retryAfter.toNanos());
+                        requestBucket.pauseFor(retryAfter.toNanos());
+                        // the throttled call used none of its reservation
+                        refund(estimatedTokens);
+                        if (attemptNumber >= maxRetries) {
+                            return Flux.error(error);
+                        }
+                        retries.incrementAndGet();
+                        return Mono.delay(backoff(attemptNumber, retryAfter))
+                                .thenMany(attempt(estimatedTokens, call, attemptNumber + 1));
+                    });
+        });
+    }
+
+    private long reserve(int estimatedTokens) {
+        long requestWait = requestBucket.reserve(1, maxQueueWaitNanos);
+        if (requestWait < 0) {
+            return -1;
+        }
+        long tokenWait = tokenBucket.reserve(estimatedTokens, maxQueueWaitNanos);
+        if (tokenWait < 0) {
+            requestBucket.refund(1);
+            return -1;
+        }
+        return Math.max(requestWait, tokenWait);
+    }
+
+    private void refund(int estimatedTokens) {
+        requestBucket.refund(1);
+        tokenBucket.refund(estimatedTokens);
+    }
+
+    /*
+     * When both buckets could take the call again: what a rejected caller is told to
+     * wait before retrying.
+     */
+    private long nanosUntilAdmitted(int estimatedTokens) {
+        return Math.max(requestBucket.nanosUntilAvailable(1), tokenBucket.nanosUntilAvailable(estimatedTokens));
+    }
+
+    /*
+     * Exponential backoff with +/-20% jitter, never shorter than what the upstream asked for,
+     * so that callers throttled together do not retry in lockstep.
+     */
+    private Duration backoff(int attempt, Duration retryAfter) {
+        long exponential = baseBackoff.toMillis() << Math.min(attempt, 10);
+        long delay = Math.max(exponential, retryAfter.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (delay * jitter));
+    }
+
+    /**
+     * The back-off requested by a throttling response, or null if the error is not a throttle.
+     */
+    static Duration retryAfter(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                HttpResponse response = ((HttpResponseException) cause).getResponse();
+                if (response == null || response.getStatusCode() != 429) {
+                    return null;
+                }
+                String millis = response.getHeaderValue(RETRY_AFTER_MS);
+                if (millis == null) {
+                    millis = response.getHeaderValue(X_MS_RETRY_AFTER_MS);
+                }
+                if (millis != null) {
+                    try {
+                        return Duration.ofMillis(Long.parseLong(millis.trim()));
+                    } catch (NumberFormatException ignored) {
+                        // fall through to Retry-After
+                    }
+                }
+                String seconds = response.getHeaderValue(HttpHeaderName.RETRY_AFTER);
+                if (seconds != null) {
+                    try {
+                        return Duration.ofSeconds(Long.parseLong(seconds.trim()));
+                    } catch (NumberFormatException ignored) {
+                        // HTTP-date form, use the default back-off
+                    }
+                }
+                return Duration.ofSeconds(1);
+            }
+        }
+        return null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("admitted", admitted.get());
+        stats.put("queued", queued.get());
+        stats.put("rejected", rejected.get());
+        stats.put("throttled", throttled.get());
+        stats.put("retries", retries.get());
+        stats.put("queueWaitMillis", queueWaitMillis.get());
+        stats.put("reservedTokens", reservedTokens.get());
+        stats.put("availableTokens", (long) tokenBucket.available());
+        stats.put("availableRequests", (long) requestBucket.available());
+        return stats;
+    }
+}
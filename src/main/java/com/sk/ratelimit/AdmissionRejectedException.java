@@ -0,0 +1,21 @@
+package com.sk.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request cannot be admitted within its queue deadline. Surfaced to
+ * clients as 503 with a Retry-After header.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
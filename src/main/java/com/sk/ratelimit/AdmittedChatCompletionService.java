@@ -0,0 +1,53 @@
+package com.sk.ratelimit;
+
+import com.microsoft.semantickernel.services.chatcompletion.ChatCompletionService;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.microsoft.semantickernel.services.chatcompletion.StreamingChatContent;
+import com.sk.kernel.chat.ChatCall;
+import com.sk.dependency.Dependency;
+import com.sk.kernel.chat.DelegatingChatCompletionService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Sends chat completions through the deployment's {@link AdmissionController}; once
+ * admitted, a completion runs under the chat {@link Dependency}'s timeout.
+ */
+public class AdmittedChatCompletionService extends DelegatingChatCompletionService {
+
+    private final ChatCompletionService delegate;
+    private final AdmissionController admission;
+    private final int expectedCompletionTokens;
+    private final Dependency dependency;
+
+    public AdmittedChatCompletionService(ChatCompletionService delegate, AdmissionController admission,
+                                         int expectedCompletionTokens, Dependency dependency) {
+        super(delegate.getModelId());
+        this.delegate = delegate;
+        this.admission = admission;
+        this.expectedCompletionTokens = expectedCompletionTokens;
+        this.dependency = dependency;
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    @Override
+    protected Mono<List<ChatMessageContent<?>>> execute(ChatCall call) {
+        // the time spent queueing for admission is not the upstream's latency
+        return admission.admit(estimate(call), () -> dependency.execute(call.invoke(delegate)));
+    }
+
+    @Override
+    protected Flux<StreamingChatContent<?>> executeStreaming(ChatCall call) {
+        // admission covers the stream itself, so a 429 before the first chunk is retried
+        return admission.admitMany(estimate(call), () -> call.stream(delegate));
+    }
+
+    private int estimate(ChatCall call) {
+        return TokenEstimator.estimatePrompt(call) + expectedCompletionTokens;
+    }
+}
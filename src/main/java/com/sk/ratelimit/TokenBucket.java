@@ -0,0 +1,101 @@
+package com.sk.ratelimit;
+
+/**
+ * Reservation based token bucket. Callers reserve an amount up front and are told
+ * how long to wait before it is available, instead of sleeping inside the bucket, so
+ * the wait can be scheduled without blocking a thread.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+
+    private double available;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    /**
+     * @param capacity     the burst size, and the amount refilled every period
+     * @param periodMillis the refill period, e.g. 60000 for per-minute quotas
+     */
+    public TokenBucket(double capacity, long periodMillis) {
+        this.capacity = capacity;
+        this.refillPerNano = capacity / (periodMillis * 1_000_000.0);
+        this.available = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves the amount if it becomes available within the given wait.
+     *
+     * @return the nanoseconds to wait before using the reservation, or -1 if the
+     * reservation would take longer than {@code maxWaitNanos} (nothing is reserved then)
+     */
+    public synchronized long reserve(double amount, long maxWaitNanos) {
+        long now = System.nanoTime();
+        refill(now);
+        // A single request larger than the whole bucket can still run once it is full
+        double needed = Math.min(amount, capacity);
+        long wait = Math.max(0, pausedUntilNanos - now);
+        if (available < needed) {
+            wait = Math.max(wait, (long) ((needed - available) / refillPerNano));
+        }
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        available -= needed;
+        return wait;
+    }
+
+    /**
+     * Nanoseconds until the amount could be reserved without waiting, counting a pause.
+     */
+    public synchronized long nanosUntilAvailable(double amount) {
+        long now = System.nanoTime();
+        refill(now);
+        double needed = Math.min(amount, capacity);
+        long wait = Math.max(0, pausedUntilNanos - now);
+        if (available < needed) {
+            wait = Math.max(wait, (long) ((needed - available) / refillPerNano));
+        }
+        return wait;
+    }
+
+    /**
+     * Non-blocking variant of {@link #reserve} that only succeeds when no wait is needed.
+     */
+    public boolean tryAcquire(double amount) {
+        return reserve(amount, 0) == 0;
+    }
+
+    /**
+     * Returns an unused reservation, e.g. when the actual cost was lower than estimated.
+     */
+    public synchronized void refund(double amount) {
+        available = Math.min(capacity, available + amount);
+    }
+
+    /**
+     * Stops handing out capacity until the given time, used when the upstream asks
+     * callers to back off with Retry-After.
+     */
+    public synchronized void pauseFor(long nanos) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + nanos);
+    }
+
+    public synchronized double available() {
+        refill(System.nanoTime());
+        return available;
+    }
+
+    public double capacity() {
+        return capacity;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefillNanos) {
+            available = Math.min(capacity, available + (now - lastRefillNanos) * refillPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
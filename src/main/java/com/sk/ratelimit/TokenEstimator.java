@@ -0,0 +1,70 @@
+package com.sk.ratelimit;
+
+import com.microsoft.semantickernel.plugin.KernelPlugin;
+import com.microsoft.semantickernel.semanticfunctions.InputVariable;
+import com.microsoft.semantickernel.semanticfunctions.KernelFunction;
+import com.sk.kernel.chat.ChatCall;
+import com.sk.tokenizer.BpeTokenizer;
+
+/**
+ * Up-front token cost estimates for chat and embedding requests, exact when a
+ * {@link BpeTokenizer} is installed and heuristic otherwise.
+ */
+public final class TokenEstimator {
+
+    // Fixed per-message overhead of the chat format (role, separators)
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private static volatile BpeTokenizer tokenizer;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Switches all estimates to exact BPE counts. Without a tokenizer the estimates
+     * fall back to the character heuristic.
+     */
+    public static void setTokenizer(BpeTokenizer bpeTokenizer) {
+        tokenizer = bpeTokenizer;
+    }
+
+    public static BpeTokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public static int countText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        BpeTokenizer bpe = tokenizer;
+        if (bpe != null) {
+            return bpe.count(text);
+        }
+        // English text averages about four characters per token
+        return (text.length() + 3) / 4;
+    }
+
+    /**
+     * Prompt tokens of the call: every message plus the schema of each function the
+     * model is allowed to call.
+     */
+    public static int estimatePrompt(ChatCall call) {
+        int tokens = countText(call.text()) + call.messageCount() * TOKENS_PER_MESSAGE;
+        if (call.hasTools()) {
+            for (KernelPlugin plugin : call.getKernel().getPlugins()) {
+                for (KernelFunction<?> function : plugin.getFunctions().values()) {
+                    tokens += estimateFunction(function);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    public static int estimateFunction(KernelFunction<?> function) {
+        int tokens = TOKENS_PER_MESSAGE + countText(function.getName()) + countText(function.getDescription());
+        for (InputVariable parameter : function.getMetadata().getParameters()) {
+            tokens += TOKENS_PER_MESSAGE + countText(parameter.getName()) + countText(parameter.getDescription());
+        }
+        return tokens;
+    }
+}
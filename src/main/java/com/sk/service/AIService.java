@@ -3,16 +3,23 @@ package com.sk.service;
 import com.microsoft.semantickernel.services.ServiceNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.util.Map;
+
+import com.sk.cache.AnswerCache;
+import com.sk.cache.Prompts;
 import com.sk.chapters.chapter2;
 import com.sk.chapters.chapter3;
 import com.sk.chapters.chapter4;
 import com.sk.chapters.chapter5;
+import com.sk.kernel.kernelUtil;
+import com.sk.metrics.StatsSource;
 
 
 @Service
-public class AIService {
+public class AIService implements StatsSource {
 
 
     //private final AzureOpenAiChatModel chatModel;
@@ -24,34 +31,64 @@ public class AIService {
 
     private final chapter5 chapter5;
 
+    private final AnswerCache answerCache;
+
+    private final kernelUtil kernelUtil;
+
+    private final SingleFlight<String> inFlight = new SingleFlight<>();
 
 
 
     @Autowired
-    public AIService(chapter2 chapter2, chapter3 chapter3, chapter4 chapter4, chapter5 chapter5) {
+    public AIService(chapter2 chapter2, chapter3 chapter3, chapter4 chapter4, chapter5 chapter5,
+                     AnswerCache answerCache, kernelUtil kernelUtil) {
         //this.chatModel = chatModel;
         this.chapter2 = chapter2;
         this.chapter3 = chapter3;
         this.chapter4 = chapter4;
         this.chapter5 = chapter5;
+        this.answerCache = answerCache;
+        this.kernelUtil = kernelUtil;
 
     }
 
 
-    public String extractChapter2Message(String message) throws IOException, ServiceNotFoundException {
-        return chapter2.SendMessage(message);
+    public Mono<String> extractChapter2Message(String conversationId, String message) {
+        return chapter2.sendMessageAsync(conversationId, message);
     }
 
     public String extractChapter3Message(String message) throws IOException, ServiceNotFoundException {
         return chapter3.sendMessage(message);
     }
 
-    public String extractChapter4Message(String message) throws IOException, ServiceNotFoundException {
-        return chapter4.sendMessage(message);
+    /*
+     * chapter4 and chapter5 are stateless, so identical concurrent prompts share one
+     * upstream completion. The key covers the route, the normalised prompt and the model
+     * deployment the completion is routed to.
+     */
+    public Mono<String> extractChapter4Message(String message, boolean bypassCache) {
+        // both routes offer the model plugins, which the routing decision depends on
+        return kernelUtil.chatDeploymentFor("chapter4", message, true).flatMap(deployment ->
+                answerCache.getOrCompute("chapter4", "AISearchPlugin", deployment, message, bypassCache,
+                        () -> inFlight.execute("chapter4|" + deployment + "|" + Prompts.normalize(message),
+                                () -> chapter4.sendMessageAsync(message))));
+    }
+
+    public Mono<String> extractChapter5Message(String message, boolean bypassCache) {
+        return kernelUtil.chatDeploymentFor("chapter5", message, true).flatMap(deployment ->
+                answerCache.getOrCompute("chapter5", "promptconfig", deployment, message, bypassCache,
+                        () -> inFlight.execute("chapter5|" + deployment + "|" + Prompts.normalize(message),
+                                () -> chapter5.sendMessageAsync(message))));
+    }
+
+    @Override
+    public String getStatsName() {
+        return "requestCoalescing";
     }
 
-    public String extractChapter5Message(String message) throws IOException, ServiceNotFoundException {
-        return chapter5.sendMessage(message);
+    @Override
+    public Map<String, Object> getStats() {
+        return inFlight.getStats();
     }
 
 
@@ -0,0 +1,157 @@
+package com.sk.service;
+
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs the turns of one conversation one after another without holding a thread.
+ *
+ * Each conversation key has a mailbox; a submitted turn is queued and started when
+ * the previous one has finished, so two requests of the same session can never
+ * interleave on its history while different conversations run in parallel. A turn
+ * that is already running is left to finish even if its caller goes away, so the
+ * history is never left half-written; a turn still in the queue is simply dropped.
+ */
+@Component
+public class ConversationMailbox implements StatsSource {
+
+    private final int maxDepth;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public ConversationMailbox(@Value("${conversation.mailbox.max-depth:4}") int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Queues a turn behind the conversation's earlier turns.
+     *
+     * @throws MailboxFullException (as the Mono's error) when the conversation already
+     *                              has {@code max-depth} turns waiting or running
+     */
+    public <T> Mono<T> submit(String key, Supplier<Mono<T>> turn) {
+        return Mono.create(sink -> {
+            Task<T> task = new Task<>(turn, sink);
+            Mailbox mailbox;
+            boolean start;
+            while (true) {
+                mailbox = mailboxes.computeIfAbsent(key, k -> new Mailbox());
+                synchronized (mailbox) {
+                    if (mailbox.closed) {
+                        continue;
+                    }
+                    if (mailbox.pending() >= maxDepth) {
+                        rejected.incrementAndGet();
+                        sink.error(new MailboxFullException("Too many turns queued for this conversation"));
+                        return;
+                    }
+                    start = !mailbox.running;
+                    if (start) {
+                        mailbox.running = true;
+                    } else {
+                        mailbox.queue.addLast(task);
+                        queued.incrementAndGet();
+                    }
+                    break;
+                }
+            }
+            Mailbox owner = mailbox;
+            sink.onCancel(() -> {
+                synchronized (owner) {
+                    owner.queue.remove(task);
+                }
+            });
+            if (start) {
+                run(key, owner, task);
+            }
+        });
+    }
+
+    private void run(String key, Mailbox mailbox, Task<?> task) {
+        turns.incrementAndGet();
+        task.start(() -> {
+            Task<?> next;
+            synchronized (mailbox) {
+                next = mailbox.queue.pollFirst();
+                if (next == null) {
+                    mailbox.running = false;
+                    mailbox.closed = true;
+                    mailboxes.remove(key, mailbox);
+                }
+            }
+            if (next != null) {
+                run(key, mailbox, next);
+            }
+        });
+    }
+
+    @Override
+    public String getStatsName() {
+        return "conversationMailbox";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeConversations", mailboxes.size());
+        stats.put("turns", turns.get());
+        stats.put("queuedBehindAnotherTurn", queued.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    private static final class Mailbox {
+        final Deque<Task<?>> queue = new ArrayDeque<>();
+        boolean running;
+        boolean closed;
+
+        int pending() {
+            return queue.size() + (running ? 1 : 0);
+        }
+    }
+
+    private static final class Task<T> {
+        final Supplier<Mono<T>> turn;
+        final MonoSink<T> sink;
+
+        Task(Supplier<Mono<T>> turn, MonoSink<T> sink) {
+            this.turn = turn;
+            this.sink = sink;
+        }
+
+        void start(Runnable done) {
+            // turns build kernels and may read plugin files, which must not run on an event loop
+            Mono.defer(turn)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .contextWrite(sink.contextView())
+                    .subscribe(
+                            sink::success,
+                            error -> {
+                                sink.error(error);
+                                done.run();
+                            },
+                            () -> {
+                                // a no-op for the sink if a value was already delivered
+                                sink.success();
+                                done.run();
+                            });
+        }
+    }
+}
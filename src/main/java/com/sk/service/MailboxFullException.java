@@ -0,0 +1,12 @@
+package com.sk.service;
+
+/**
+ * Thrown when a conversation already has as many turns queued as it may. Surfaced to
+ * clients as 429.
+ */
+public class MailboxFullException extends RuntimeException {
+
+    public MailboxFullException(String message) {
+        super(message);
+    }
+}
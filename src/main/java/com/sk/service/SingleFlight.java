@@ -0,0 +1,159 @@
+package com.sk.service;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls that share a key into a single upstream subscription.
+ *
+ * The first caller for a key starts the upstream call; callers arriving while it is
+ * in flight wait for the same result. The upstream call does not belong to the
+ * caller that started it: it is only cancelled once every waiting caller has gone
+ * away, so a disconnecting leader does not fail the requests that joined it.
+ *
+ * @param <V> the result type
+ */
+public class SingleFlight<V> {
+
+    private final ConcurrentHashMap<String, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    public Mono<V> execute(String key, Supplier<Mono<V>> upstream) {
+        return Mono.create(sink -> {
+            Flight<V> flight;
+            boolean leader;
+            while (true) {
+                Flight<V> existing = flights.get(key);
+                if (existing != null) {
+                    if (existing.join()) {
+                        flight = existing;
+                        leader = false;
+                        break;
+                    }
+                    // every waiter of that flight has left and it is being torn down
+                    flights.remove(key, existing);
+                    continue;
+                }
+                Flight<V> created = new Flight<>();
+                created.join();
+                if (flights.putIfAbsent(key, created) == null) {
+                    flight = created;
+                    leader = true;
+                    break;
+                }
+            }
+
+            Flight<V> joined = flight;
+            sink.onCancel(() -> {
+                if (joined.leave()) {
+                    flights.remove(key, joined);
+                    cancelled.incrementAndGet();
+                }
+            });
+            joined.result.whenComplete((value, error) -> {
+                if (error != null) {
+                    sink.error(unwrap(error));
+                } else if (value != null) {
+                    sink.success(value);
+                } else {
+                    sink.success();
+                }
+            });
+
+            if (leader) {
+                leaders.incrementAndGet();
+                joined.start(Mono.defer(upstream).subscribe(
+                        value -> {
+                            flights.remove(key, joined);
+                            joined.result.complete(value);
+                        },
+                        error -> {
+                            flights.remove(key, joined);
+                            joined.result.completeExceptionally(error);
+                        },
+                        () -> {
+                            flights.remove(key, joined);
+                            joined.result.complete(null);
+                        }));
+            } else {
+                coalesced.incrementAndGet();
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", flights.size());
+        stats.put("upstreamCalls", leaders.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("cancelledUpstreamCalls", cancelled.get());
+        return stats;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private int waiters;
+        private boolean closed;
+        private Disposable upstream;
+
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * @return true when this was the last waiter and the upstream call was cancelled
+         */
+        boolean leave() {
+            Disposable toDispose;
+            synchronized (this) {
+                waiters--;
+                if (waiters > 0 || result.isDone()) {
+                    return false;
+                }
+                closed = true;
+                toDispose = upstream;
+            }
+            if (toDispose != null) {
+                toDispose.dispose();
+            }
+            result.completeExceptionally(new CancellationException("All callers cancelled"));
+            return true;
+        }
+
+        void start(Disposable subscription) {
+            boolean disposeNow;
+            synchronized (this) {
+                disposeNow = closed;
+                if (!disposeNow) {
+                    upstream = subscription;
+                }
+            }
+            if (disposeNow) {
+                subscription.dispose();
+            }
+        }
+    }
+}
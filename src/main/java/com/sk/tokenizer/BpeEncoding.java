@@ -0,0 +1,47 @@
+package com.sk.tokenizer;
+
+import java.util.regex.Pattern;
+
+/**
+ * The OpenAI byte-pair encodings the deployed models use, with the pre-tokenisation
+ * pattern of each. The vocabularies themselves are the standard {@code .tiktoken}
+ * files, placed on the classpath under {@code tokenizer/}.
+ */
+public enum BpeEncoding {
+
+    /** gpt-4 and gpt-3.5-turbo, and the text-embedding models. */
+    CL100K_BASE("cl100k_base",
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+                    + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+
+    /** gpt-4o and later. */
+    O200K_BASE("o200k_base",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                    + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                    + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+    private final String fileName;
+    private final Pattern pattern;
+
+    BpeEncoding(String fileName, String pattern) {
+        this.fileName = fileName;
+        this.pattern = Pattern.compile(pattern, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    public String getResource() {
+        return "tokenizer/" + fileName + ".tiktoken";
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public static BpeEncoding fromName(String name) {
+        for (BpeEncoding encoding : values()) {
+            if (encoding.fileName.equalsIgnoreCase(name) || encoding.name().equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unknown BPE encoding: " + name);
+    }
+}
@@ -0,0 +1,238 @@
+package com.sk.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process byte-pair encoder compatible with tiktoken's cl100k_base and o200k_base.
+ *
+ * Text is split with the encoding's pattern, each piece is UTF-8 encoded into a
+ * per-thread scratch buffer and merged by rank exactly as tiktoken does. Pieces that
+ * are whole vocabulary entries (most English words) skip merging altogether, and the
+ * token counts of frequent pieces are cached, so {@link #count} allocates little
+ * beyond the regex matcher.
+ */
+public class BpeTokenizer {
+
+    private static final int PIECE_CACHE_LIMIT = 50_000;
+
+    private final BpeEncoding encoding;
+    private final ByteRankMap ranks;
+    private final Map<String, Integer> pieceCounts = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private BpeTokenizer(BpeEncoding encoding, ByteRankMap ranks) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+    }
+
+    /**
+     * Loads the encoding's vocabulary from the classpath.
+     *
+     * @return the tokenizer, or null if the vocabulary file is not on the classpath
+     */
+    public static BpeTokenizer fromClasspath(BpeEncoding encoding) throws IOException {
+        try (InputStream in = BpeTokenizer.class.getClassLoader().getResourceAsStream(encoding.getResource())) {
+            return in == null ? null : load(encoding, in);
+        }
+    }
+
+    /**
+     * Reads a {@code .tiktoken} file: one "base64(token bytes) rank" pair per line.
+     */
+    public static BpeTokenizer load(BpeEncoding encoding, InputStream in) throws IOException {
+        ByteRankMap ranks = new ByteRankMap(200_000);
+        Base64.Decoder decoder = Base64.getDecoder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            ranks.put(decoder.decode(line.substring(0, space)), Integer.parseInt(line.substring(space + 1).trim()));
+        }
+        return new BpeTokenizer(encoding, ranks);
+    }
+
+    public BpeEncoding getEncoding() {
+        return encoding;
+    }
+
+    public int vocabularySize() {
+        return ranks.size();
+    }
+
+    /**
+     * Number of tokens in the text, without materialising the token ids.
+     */
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        Scratch s = scratch.get();
+        Matcher matcher = encoding.getPattern().matcher(text);
+        int tokens = 0;
+        while (matcher.find()) {
+            int start = matcher.start();
+            int end = matcher.end();
+            if (end - start > 32) {
+                // long runs (whitespace, base64, minified data) are rarely repeated
+                tokens += countPiece(s, text, start, end);
+                continue;
+            }
+            String piece = text.subSequence(start, end).toString();
+            Integer cached = pieceCounts.get(piece);
+            if (cached == null) {
+                cached = countPiece(s, text, start, end);
+                if (pieceCounts.size() < PIECE_CACHE_LIMIT) {
+                    pieceCounts.put(piece, cached);
+                }
+            }
+            tokens += cached;
+        }
+        return tokens;
+    }
+
+    /**
+     * Token ids of the text, as the model would see them.
+     */
+    public int[] encode(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return new int[0];
+        }
+        Scratch s = scratch.get();
+        int[] out = new int[Math.max(16, text.length() / 3)];
+        int size = 0;
+        Matcher matcher = encoding.getPattern().matcher(text);
+        while (matcher.find()) {
+            int length = utf8(s, text, matcher.start(), matcher.end());
+            int whole = ranks.get(s.bytes, 0, length);
+            if (whole != ByteRankMap.MISSING) {
+                out = ensure(out, size + 1);
+                out[size++] = whole;
+                continue;
+            }
+            int parts = merge(s, length);
+            out = ensure(out, size + parts);
+            for (int i = 0; i < parts; i++) {
+                out[size++] = ranks.get(s.bytes, s.bounds[i], s.bounds[i + 1]);
+            }
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    private int countPiece(Scratch s, CharSequence text, int start, int end) {
+        int length = utf8(s, text, start, end);
+        if (ranks.get(s.bytes, 0, length) != ByteRankMap.MISSING) {
+            return 1;
+        }
+        return merge(s, length);
+    }
+
+    /*
+     * tiktoken's byte pair merge: start from single bytes and repeatedly join the
+     * adjacent pair with the lowest rank. Leaves the part boundaries in s.bounds and
+     * returns the number of parts.
+     */
+    private int merge(Scratch s, int length) {
+        s.ensure(length + 1);
+        int[] bounds = s.bounds;
+        int[] pairRanks = s.pairRanks;
+        int parts = length;
+        for (int i = 0; i <= length; i++) {
+            bounds[i] = i;
+        }
+        for (int i = 0; i < parts - 1; i++) {
+            pairRanks[i] = ranks.get(s.bytes, bounds[i], bounds[i + 2]);
+        }
+        while (parts > 1) {
+            int best = ByteRankMap.MISSING;
+            int at = -1;
+            for (int i = 0; i < parts - 1; i++) {
+                if (pairRanks[i] < best) {
+                    best = pairRanks[i];
+                    at = i;
+                }
+            }
+            if (at < 0) {
+                break;
+            }
+            // join part at and at + 1 by dropping the boundary between them
+            System.arraycopy(bounds, at + 2, bounds, at + 1, parts - at - 1);
+            System.arraycopy(pairRanks, at + 1, pairRanks, at, parts - at - 2);
+            parts--;
+            if (at < parts - 1) {
+                pairRanks[at] = ranks.get(s.bytes, bounds[at], bounds[at + 2]);
+            }
+            if (at > 0) {
+                pairRanks[at - 1] = ranks.get(s.bytes, bounds[at - 1], bounds[at + 1]);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * UTF-8 encodes text[start, end) into the scratch buffer and returns its length.
+     */
+    private static int utf8(Scratch s, CharSequence text, int start, int end) {
+        s.ensureBytes((end - start) * 3);
+        byte[] bytes = s.bytes;
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[n++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[n++] = (byte) (0xC0 | (c >> 6));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                bytes[n++] = (byte) (0xF0 | (cp >> 18));
+                bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                if (Character.isSurrogate(c)) {
+                    c = '\uFFFD';
+                }
+                bytes[n++] = (byte) (0xE0 | (c >> 12));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    private static int[] ensure(int[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    private static final class Scratch {
+        byte[] bytes = new byte[256];
+        int[] bounds = new int[257];
+        int[] pairRanks = new int[257];
+
+        void ensureBytes(int size) {
+            if (bytes.length < size) {
+                bytes = new byte[Math.max(size, bytes.length * 2)];
+            }
+        }
+
+        void ensure(int size) {
+            if (bounds.length < size) {
+                bounds = new int[Math.max(size, bounds.length * 2)];
+                pairRanks = new int[bounds.length];
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.sk.tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from byte sequences to BPE ranks. Lookups take a slice of a
+ * caller's buffer, so encoding never has to copy a candidate merge into a new array.
+ */
+final class ByteRankMap {
+
+    static final int MISSING = Integer.MAX_VALUE;
+
+    private byte[][] keys;
+    private int[] ranks;
+    private int size;
+    private int mask;
+
+    ByteRankMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new byte[capacity][];
+        ranks = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void put(byte[] key, int rank) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = hash(key, 0, key.length) & mask;
+        while (keys[slot] != null) {
+            if (Arrays.equals(keys[slot], key)) {
+                ranks[slot] = rank;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        ranks[slot] = rank;
+        size++;
+    }
+
+    int get(byte[] buffer, int from, int to) {
+        int slot = hash(buffer, from, to - from) & mask;
+        byte[] key;
+        while ((key = keys[slot]) != null) {
+            if (key.length == to - from && Arrays.equals(key, 0, key.length, buffer, from, to)) {
+                return ranks[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        int[] oldRanks = ranks;
+        keys = new byte[oldKeys.length * 2][];
+        ranks = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                put(oldKeys[i], oldRanks[i]);
+            }
+        }
+    }
+
+    private static int hash(byte[] buffer, int from, int length) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < from + length; i++) {
+            h = (h ^ buffer[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,84 @@
+package com.sk.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops calling a dependency after too many consecutive failures. Once the open
+ * period has passed a single probe call is let through; if it succeeds the breaker
+ * closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean open;
+    private boolean probing;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Whether a call may go ahead; a caller that gets true must report its outcome.
+     */
+    public synchronized boolean tryAcquire() {
+        if (open) {
+            if (probing || System.currentTimeMillis() < openUntil) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            probing = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if (open) {
+            System.out.println("Circuit breaker " + name + " closed");
+            open = false;
+            probing = false;
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (open) {
+            probing = false;
+            openUntil = System.currentTimeMillis() + openMillis;
+        } else if (consecutiveFailures >= failureThreshold) {
+            System.out.println("Circuit breaker " + name + " opened after " + consecutiveFailures + " failures");
+            open = true;
+            opened.incrementAndGet();
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+
+    /**
+     * Ends a call whose outcome says nothing about the dependency, e.g. one given up
+     * by its caller; a probe is let through again.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("open", open);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("opened", opened.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,145 @@
+package com.sk.tools;
+
+import com.microsoft.semantickernel.Kernel;
+import com.microsoft.semantickernel.plugin.KernelPlugin;
+import com.microsoft.semantickernel.semanticfunctions.KernelFunction;
+import com.microsoft.semantickernel.services.chatcompletion.AuthorRole;
+import com.microsoft.semantickernel.services.chatcompletion.ChatHistory;
+import com.microsoft.semantickernel.services.chatcompletion.ChatMessageContent;
+import com.sk.config.ToolConfig;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.time.temporal.IsoFields;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Puts cheap, deterministic facts (the current date, time and time zone) into a
+ * system message before the completion, so the model does not spend a round trip
+ * calling a tool for them. The functions those facts answer are then no longer
+ * advertised; the ones that work on a given date stay.
+ *
+ * The facts go just before the latest user message rather than first: they change
+ * every minute, and everything in front of them stays a prompt prefix the upstream
+ * can cache from one turn to the next.
+ */
+@Component
+public class ContextEnricher implements StatsSource {
+
+    private static final Set<String> COVERED_FUNCTIONS = Set.of(
+            "DateTimePlugin.getCurrentDate", "DateTimePlugin.getCurrentTime");
+
+    private static final Pattern DATE_TIME_QUESTION = Pattern.compile(
+            "\\b(today|tonight|tomorrow|yesterday|now|date|time|day|week|weekend|month|year)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final ToolConfig config;
+
+    private final AtomicLong enrichedTurns = new AtomicLong();
+    private final AtomicLong dateTimeQuestions = new AtomicLong();
+    private final AtomicLong removedFunctions = new AtomicLong();
+
+    @Autowired
+    public ContextEnricher(ToolConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * The history with a system message of current facts before the latest user
+     * message, or the history itself when enrichment is off.
+     */
+    public ChatHistory enrich(ChatHistory history, String userMessage) {
+        if (!config.isContextEnabled()) {
+            return history;
+        }
+        enrichedTurns.incrementAndGet();
+        if (userMessage != null && DATE_TIME_QUESTION.matcher(userMessage).find()) {
+            // a keyword match only; it does not tell whether the model would have
+            // called getCurrentDate or getCurrentTime for it
+            dateTimeQuestions.incrementAndGet();
+        }
+        List<ChatMessageContent<?>> messages = history.getMessages();
+        int at = messages.size();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getAuthorRole() == AuthorRole.USER) {
+                at = i;
+                break;
+            }
+        }
+        ChatHistory enriched = new ChatHistory();
+        for (int i = 0; i < messages.size(); i++) {
+            if (i == at) {
+                enriched.addSystemMessage(facts());
+            }
+            enriched.addMessage(messages.get(i));
+        }
+        if (at == messages.size()) {
+            enriched.addSystemMessage(facts());
+        }
+        return enriched;
+    }
+
+    /**
+     * Functions (as plugin.function) the injected facts make redundant, of those the
+     * kernel has; they are counted as removed from the turn's tool set.
+     */
+    public Set<String> coveredFunctions(Kernel kernel) {
+        if (!config.isContextEnabled()) {
+            return Set.of();
+        }
+        Set<String> covered = new HashSet<>();
+        for (KernelPlugin plugin : kernel.getPlugins()) {
+            for (KernelFunction<?> function : plugin.getFunctions().values()) {
+                String key = function.getPluginName() + "." + function.getName();
+                if (COVERED_FUNCTIONS.contains(key)) {
+                    covered.add(key);
+                }
+            }
+        }
+        removedFunctions.addAndGet(covered.size());
+        return covered;
+    }
+
+    private String facts() {
+        ZoneId zone = config.getContextTimeZone().isEmpty()
+                ? ZoneId.systemDefault()
+                : ZoneId.of(config.getContextTimeZone());
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        return "Current date: " + now.toLocalDate()
+                + " (" + now.getDayOfWeek().getDisplayName(TextStyle.FULL, Locale.ENGLISH)
+                + ", week " + now.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR) + ")"
+                + ". Current time: " + now.format(TIME)
+                + " " + zone.getId() + " (UTC" + now.getOffset().getId().replace("Z", "+00:00") + ").";
+    }
+
+    @Override
+    public String getStatsName() {
+        return "contextEnrichment";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long turns = enrichedTurns.get();
+        stats.put("enrichedTurns", turns);
+        stats.put("dateTimeQuestions", dateTimeQuestions.get());
+        stats.put("dateTimeQuestionsPerTurn", turns == 0 ? 0 : (double) dateTimeQuestions.get() / turns);
+        stats.put("removedFunctions", removedFunctions.get());
+        stats.put("removedFunctionsPerTurn", turns == 0 ? 0 : (double) removedFunctions.get() / turns);
+        return stats;
+    }
+}
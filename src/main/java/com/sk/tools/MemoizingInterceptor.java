@@ -0,0 +1,172 @@
+package com.sk.tools;
+
+import com.sk.config.ToolConfig;
+import com.sk.deadline.Deadline;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers tool results by plugin, function and canonical arguments, so the same
+ * call made twice in a turn, or by another conversation shortly after, does not go
+ * upstream again. How long a function's results stay valid is declared in
+ * configuration (tools.memo.ttl.&lt;plugin.function&gt;); 0 means never memoized.
+ * Identical calls in flight at the same time share one upstream call, waiting for it
+ * only as long as the request's deadline allows; error results are not kept.
+ */
+@Component
+@Order(200)
+public class MemoizingInterceptor implements ToolCallInterceptor, StatsSource {
+
+    private final ToolConfig config;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong uncacheable = new AtomicLong();
+
+    @Autowired
+    public MemoizingInterceptor(ToolConfig config) {
+        this.config = config;
+        int maxEntries = config.getMemoMaxEntries();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public String intercept(ToolCall call, Invocation next) {
+        long ttlSeconds = config.isMemoEnabled() ? config.getMemoTtlSeconds(call.getName()) : 0;
+        if (ttlSeconds <= 0) {
+            uncacheable.incrementAndGet();
+            return next.proceed();
+        }
+        String key = key(call);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+        }
+
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(call, existing);
+        }
+        misses.incrementAndGet();
+        String result;
+        try {
+            result = next.proceed();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        if (result != null && !result.startsWith("Error")) {
+            synchronized (entries) {
+                entries.put(key, new Entry(result, System.currentTimeMillis() + ttlSeconds * 1000));
+            }
+        }
+        inFlight.remove(key, flight);
+        flight.complete(result);
+        return result;
+    }
+
+    /*
+     * Waits for the call another thread has in flight, no longer than the current
+     * deadline, and gives up when interrupted (the governor cancels a call that ran out
+     * of time), so a follower never holds its thread until the leader is done.
+     */
+    private static String await(ToolCall call, CompletableFuture<String> flight) {
+        Deadline deadline = Deadline.current();
+        try {
+            return deadline == null ? flight.get() : flight.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return "Error: " + call.getName() + " did not answer within the time left.";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: " + call.getName() + " was interrupted.";
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /*
+     * Arguments in name order, text trimmed, lower-cased and with runs of whitespace
+     * collapsed, numbers without trailing zeros, so "Paris " and "paris" are one call.
+     */
+    static String key(ToolCall call) {
+        StringBuilder key = new StringBuilder(call.getName()).append('(');
+        for (Map.Entry<String, Object> argument : new TreeMap<>(call.getArguments()).entrySet()) {
+            key.append(argument.getKey()).append('=').append(canonical(argument.getValue())).append(';');
+        }
+        return key.append(')').toString();
+    }
+
+    private static String canonical(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue())
+                    .setScale(5, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        }
+        if (value instanceof String) {
+            return ((String) value).trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        }
+        return String.valueOf(value);
+    }
+
+    @Override
+    public String getStatsName() {
+        return "toolMemo";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits.get() + misses.get() + coalesced.get();
+        stats.put("enabled", config.isMemoEnabled());
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("hitRate", lookups == 0 ? 0 : (double) (hits.get() + coalesced.get()) / lookups);
+        stats.put("notMemoized", uncacheable.get());
+        return stats;
+    }
+
+    private static final class Entry {
+        final String value;
+        final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
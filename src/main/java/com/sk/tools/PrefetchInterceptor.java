@@ -0,0 +1,219 @@
+package com.sk.tools;
+
+import com.sk.config.ToolConfig;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts the tool call the model is likely to make next while the model is still
+ * working out that it wants it, e.g. the forecast for the coordinates just returned.
+ *
+ * After a trigger call returns, each matching {@link PrefetchRule} predicts the
+ * follow-up call; it is started in the background if the rule's confidence (the
+ * share of its earlier prefetches that were used, starting from a configured prior)
+ * is high enough and the wasted-work budget allows it. When the model then makes
+ * that call it is served the prefetched result, waiting for it if still in flight.
+ * Every real tool call earns a fraction of a prefetch and every unused prefetch
+ * spends one, so wasted upstream calls stay within that share of tool traffic.
+ */
+@Component
+@Order(100)
+public class PrefetchInterceptor implements ToolCallInterceptor, StatsSource {
+
+    private static final int PRIOR_WEIGHT = 5;
+
+    private final ToolConfig config;
+    private final List<PrefetchRule> rules;
+    private final ObjectProvider<ToolCalls> toolCalls;
+    private final double budgetRatio;
+    private final double maxBudget;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<PrefetchRule, RuleStats> ruleStats = new ConcurrentHashMap<>();
+    private double budget;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+    private final AtomicLong lowConfidence = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    @Autowired
+    public PrefetchInterceptor(ToolConfig config, List<PrefetchRule> rules, ObjectProvider<ToolCalls> toolCalls) {
+        this.config = config;
+        this.rules = List.copyOf(rules);
+        this.toolCalls = toolCalls;
+        this.budgetRatio = config.getPrefetchBudgetPercent() / 100.0;
+        this.maxBudget = Math.max(1, budgetRatio * 100);
+        for (PrefetchRule rule : this.rules) {
+            ruleStats.put(rule, new RuleStats());
+        }
+    }
+
+    @Override
+    public String intercept(ToolCall call, Invocation next) {
+        if (!config.isPrefetchEnabled() || call.isSpeculative()) {
+            return next.proceed();
+        }
+        expire();
+        synchronized (this) {
+            budget = Math.min(maxBudget, budget + budgetRatio);
+        }
+        String result = null;
+        for (PrefetchRule rule : rules) {
+            if (rule.target().equals(call.getName())) {
+                rule.observe(call);
+                if (result == null) {
+                    result = warm(rule, call);
+                }
+            }
+        }
+        if (result == null) {
+            result = next.proceed();
+        }
+        for (PrefetchRule rule : rules) {
+            if (rule.trigger().equals(call.getName())) {
+                start(rule, call, result);
+            }
+        }
+        return result;
+    }
+
+    private String warm(PrefetchRule rule, ToolCall call) {
+        Pending prefetch = pending.remove(rule.target() + "|" + rule.key(call));
+        if (prefetch == null) {
+            return null;
+        }
+        long askedAt = System.currentTimeMillis();
+        try {
+            String result = prefetch.result.get(config.getPrefetchWaitMs(), TimeUnit.MILLISECONDS);
+            if (result == null || result.startsWith("Error")) {
+                wasted.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            ruleStats.get(rule).hits.incrementAndGet();
+            // a used prefetch was not wasted work
+            synchronized (this) {
+                budget = Math.min(maxBudget, budget + 1);
+            }
+            // the upstream time that had already passed when the model asked
+            long finishedAt = prefetch.finishedAt.get();
+            savedMillis.addAndGet((finishedAt == 0 ? askedAt : Math.min(askedAt, finishedAt)) - prefetch.startedAt);
+            return result;
+        } catch (Exception e) {
+            wasted.incrementAndGet();
+            return null;
+        }
+    }
+
+    private void start(PrefetchRule rule, ToolCall trigger, String result) {
+        ToolCall predicted;
+        try {
+            predicted = rule.predict(trigger, result);
+        } catch (Exception e) {
+            predicted = null;
+        }
+        if (predicted == null) {
+            return;
+        }
+        RuleStats stats = ruleStats.get(rule);
+        if (stats.confidence(config.getPrefetchPrior()) < config.getPrefetchMinConfidence()) {
+            lowConfidence.incrementAndGet();
+            return;
+        }
+        String key = rule.target() + "|" + rule.key(predicted);
+        if (pending.containsKey(key)) {
+            return;
+        }
+        synchronized (this) {
+            if (budget < 1) {
+                overBudget.incrementAndGet();
+                return;
+            }
+            budget -= 1;
+        }
+        issued.incrementAndGet();
+        stats.issued.incrementAndGet();
+        ToolCall speculative = predicted.speculative();
+        Pending prefetch = new Pending();
+        prefetch.result = Mono.fromCallable(() -> toolCalls.getObject().invoke(speculative, () -> rule.fetch(speculative)))
+                .doOnTerminate(() -> prefetch.finishedAt.set(System.currentTimeMillis()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .toFuture();
+        pending.put(key, prefetch);
+    }
+
+    private void expire() {
+        long before = System.currentTimeMillis() - config.getPrefetchTtlSeconds() * 1000;
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            Pending prefetch = iterator.next();
+            if (prefetch.startedAt < before) {
+                iterator.remove();
+                wasted.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return "prefetch";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = issued.get();
+        stats.put("enabled", config.isPrefetchEnabled());
+        stats.put("issued", count);
+        stats.put("hits", hits.get());
+        stats.put("hitRate", count == 0 ? 0 : (double) hits.get() / count);
+        stats.put("wasted", wasted.get());
+        stats.put("pending", pending.size());
+        stats.put("skippedLowConfidence", lowConfidence.get());
+        stats.put("skippedOverBudget", overBudget.get());
+        stats.put("upstreamMillisSaved", savedMillis.get());
+        Map<String, Object> perRule = new LinkedHashMap<>();
+        for (PrefetchRule rule : rules) {
+            RuleStats ruleStat = ruleStats.get(rule);
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("issued", ruleStat.issued.get());
+            values.put("hits", ruleStat.hits.get());
+            values.put("confidence", ruleStat.confidence(config.getPrefetchPrior()));
+            perRule.put(rule.trigger() + "->" + rule.target(), values);
+        }
+        stats.put("rules", perRule);
+        return stats;
+    }
+
+    private static final class Pending {
+        final long startedAt = System.currentTimeMillis();
+        final AtomicLong finishedAt = new AtomicLong();
+        CompletableFuture<String> result;
+    }
+
+    private static final class RuleStats {
+        final AtomicLong issued = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+
+        double confidence(double prior) {
+            return (hits.get() + prior * PRIOR_WEIGHT) / (issued.get() + PRIOR_WEIGHT);
+        }
+    }
+}
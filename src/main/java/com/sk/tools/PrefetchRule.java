@@ -0,0 +1,40 @@
+package com.sk.tools;
+
+/**
+ * A tool call that usually follows another one, and how to make it ahead of time.
+ * Rules are Spring beans picked up by the {@link PrefetchInterceptor}.
+ */
+public interface PrefetchRule {
+
+    /**
+     * The function whose result triggers the prefetch, as plugin.function.
+     */
+    String trigger();
+
+    /**
+     * The function that is expected to be called next, as plugin.function.
+     */
+    String target();
+
+    /**
+     * The call the model is expected to make next, or null when the trigger's result
+     * does not say enough to predict it.
+     */
+    ToolCall predict(ToolCall trigger, String result);
+
+    /**
+     * What two calls of the target must share for one to be served with the other's result.
+     */
+    String key(ToolCall call);
+
+    /**
+     * Makes the predicted call upstream.
+     */
+    String fetch(ToolCall predicted);
+
+    /**
+     * Sees every call of the target the model actually makes.
+     */
+    default void observe(ToolCall call) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.sk.tools;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One invocation of a plugin function: its name and arguments, whether it was
+ * started speculatively rather than asked for by the model, and the request
+ * ({@link ToolTurn}) it belongs to, if any.
+ */
+public final class ToolCall {
+
+    private final String plugin;
+    private final String function;
+    private final Map<String, Object> arguments;
+    private final boolean speculative;
+    private final ToolTurn turn;
+
+    private ToolCall(String plugin, String function, Map<String, Object> arguments, boolean speculative,
+                     ToolTurn turn) {
+        this.plugin = plugin;
+        this.function = function;
+        this.arguments = Collections.unmodifiableMap(arguments);
+        this.speculative = speculative;
+        this.turn = turn;
+    }
+
+    /**
+     * @param namesAndValues argument names and values, alternating
+     */
+    public static ToolCall of(String plugin, String function, Object... namesAndValues) {
+        Map<String, Object> arguments = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            arguments.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return new ToolCall(plugin, function, arguments, false, null);
+    }
+
+    /**
+     * The same call made ahead of time; it belongs to no request.
+     */
+    public ToolCall speculative() {
+        return new ToolCall(plugin, function, new LinkedHashMap<>(arguments), true, null);
+    }
+
+    public ToolCall inTurn(ToolTurn turn) {
+        return new ToolCall(plugin, function, new LinkedHashMap<>(arguments), speculative, turn);
+    }
+
+    public String getPlugin() {
+        return plugin;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * plugin.function, as the functions are named everywhere else.
+     */
+    public String getName() {
+        return plugin + "." + function;
+    }
+
+    public Map<String, Object> getArguments() {
+        return arguments;
+    }
+
+    public Object getArgument(String name) {
+        return arguments.get(name);
+    }
+
+    public boolean isSpeculative() {
+        return speculative;
+    }
+
+    /**
+     * The request that made the call, or null for calls outside one.
+     */
+    public ToolTurn getTurn() {
+        return turn;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + arguments;
+    }
+}
@@ -0,0 +1,19 @@
+package com.sk.tools;
+
+/**
+ * Wraps the plugin function calls made through {@link ToolCalls}. Interceptors are
+ * Spring beans, applied in {@link org.springframework.core.annotation.Order} order;
+ * each one either answers the call itself or lets it proceed.
+ */
+public interface ToolCallInterceptor {
+
+    String intercept(ToolCall call, Invocation next);
+
+    /**
+     * The rest of the chain, ending with the plugin's own upstream call.
+     */
+    @FunctionalInterface
+    interface Invocation {
+        String proceed();
+    }
+}
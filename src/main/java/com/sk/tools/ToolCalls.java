@@ -0,0 +1,80 @@
+package com.sk.tools;
+
+import com.sk.config.ToolConfig;
+import com.sk.deadline.Deadline;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Entry point for plugin functions that call upstream services: the call goes through
+ * every {@link ToolCallInterceptor} before the plugin's own implementation runs.
+ * Plugins built for one request call through that request's {@link #newTurn() turn}.
+ */
+@Component
+public class ToolCalls implements ToolInvoker, StatsSource {
+
+    private final List<ToolCallInterceptor> interceptors;
+    private final ToolConfig config;
+
+    private final Map<String, AtomicLong> calls = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ToolCalls(List<ToolCallInterceptor> interceptors, ToolConfig config) {
+        this.interceptors = List.copyOf(interceptors);
+        this.config = config;
+    }
+
+    /**
+     * Starts the tool calls of a new request, with the configured time budget, cut
+     * short by the request's deadline if it has one (null when it has none).
+     */
+    public ToolTurn newTurn(Deadline requestDeadline) {
+        long budget = config.getGovernorRequestBudgetMs();
+        return new ToolTurn(this, requestDeadline == null ? Deadline.after(budget) : requestDeadline.atMost(budget));
+    }
+
+    /**
+     * A turn for the request the current thread is serving.
+     */
+    public ToolTurn newTurn() {
+        return newTurn(Deadline.current());
+    }
+
+    @Override
+    public String invoke(ToolCall call, Supplier<String> target) {
+        calls.computeIfAbsent(call.isSpeculative() ? call.getName() + " (speculative)" : call.getName(),
+                name -> new AtomicLong()).incrementAndGet();
+        if (call.getTurn() == null) {
+            return proceed(call, target, 0);
+        }
+        // the plugin's own blocking calls see the time left for the request
+        return Deadline.callWithin(call.getTurn().getDeadline(), () -> proceed(call, target, 0));
+    }
+
+    private String proceed(ToolCall call, Supplier<String> target, int index) {
+        if (index == interceptors.size()) {
+            return target.get();
+        }
+        return interceptors.get(index).intercept(call, () -> proceed(call, target, index + 1));
+    }
+
+    @Override
+    public String getStatsName() {
+        return "toolCalls";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        calls.forEach((name, count) -> stats.put(name, count.get()));
+        return stats;
+    }
+}
@@ -0,0 +1,171 @@
+package com.sk.tools;
+
+import com.sk.config.ToolConfig;
+import com.sk.deadline.Deadline;
+import com.sk.dependency.Bulkhead;
+import com.sk.dependency.Dependencies;
+import com.sk.dependency.Dependency;
+import com.sk.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps auto-invoked tool loops from running away. With every function auto-invoked,
+ * a confused model can call tools over and over; each answer below is a short error
+ * result that tells it to stop and answer with what it has, instead of a wait:
+ *
+ * - a request may make at most tools.governor.max-calls-per-request calls; these are
+ *   single tool calls, not model rounds, as the calls of one round reach the
+ *   interceptors one at a time with nothing marking where a round ends;
+ * - a call repeating one that already failed in the same request gets that failure back;
+ * - the calls of a request share a total time budget (tools.governor.request-budget-ms);
+ * - each call gets the lesser of its function's deadline and the budget left;
+ * - a plugin whose calls keep throwing or timing out is skipped for a while by its
+ *   circuit breaker, so a degraded dependency costs no time at all (error results
+ *   such as "no results found" do not count); it too counts single calls, across
+ *   requests;
+ * - a plugin's calls run on the threads of the dependency it calls (its bulkhead),
+ *   and are turned away at once when all of them are busy and its queue is full.
+ *
+ * This runs first in the chain, so prefetched and memoized results count as calls too.
+ */
+@Component
+@Order(10)
+public class ToolGovernor implements ToolCallInterceptor, StatsSource {
+
+    private final ToolConfig config;
+    private final Dependencies dependencies;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final AtomicLong overLimit = new AtomicLong();
+    private final AtomicLong repeatedFailures = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+    private final AtomicLong saturated = new AtomicLong();
+
+    @Autowired
+    public ToolGovernor(ToolConfig config, Dependencies dependencies) {
+        this.config = config;
+        this.dependencies = dependencies;
+    }
+
+    @Override
+    public String intercept(ToolCall call, Invocation next) {
+        if (!config.isGovernorEnabled()) {
+            return next.proceed();
+        }
+        ToolTurn turn = call.getTurn();
+        String key = MemoizingInterceptor.key(call);
+        if (turn != null) {
+            if (turn.countCall() > config.getGovernorMaxCallsPerRequest()) {
+                overLimit.incrementAndGet();
+                return "Error: tool call limit for this request reached. Answer with the information already gathered.";
+            }
+            String failure = turn.failureOf(key);
+            if (failure != null) {
+                repeatedFailures.incrementAndGet();
+                return failure + " (already tried with these arguments, do not call again)";
+            }
+            if (turn.remainingMillis() <= 0) {
+                overBudget.incrementAndGet();
+                return "Error: time for tool calls in this request is used up. Answer with the information already gathered.";
+            }
+        }
+
+        CircuitBreaker breaker = breakers.computeIfAbsent(call.getPlugin(), plugin ->
+                new CircuitBreaker(plugin, config.getGovernorBreakerFailures(),
+                        config.getGovernorBreakerOpenSeconds() * 1000));
+        if (!breaker.tryAcquire()) {
+            unavailable.incrementAndGet();
+            return "Error: " + call.getPlugin() + " is temporarily unavailable. Do not retry; answer without it.";
+        }
+
+        long functionMs = config.getGovernorDeadlineMs(call.getName());
+        Deadline deadline = turn == null ? Deadline.after(functionMs) : turn.getDeadline().atMost(functionMs);
+        long deadlineMs = deadline.remainingMillis();
+        Dependency dependency = dependencies.forPlugin(call.getPlugin());
+        Bulkhead bulkhead = dependency == null ? null : dependency.getBulkhead();
+        Scheduler scheduler = bulkhead == null ? Schedulers.boundedElastic() : bulkhead.scheduler();
+        CompletableFuture<String> invocation = Mono.fromCallable(() -> Deadline.callWithin(deadline, next::proceed))
+                .subscribeOn(scheduler)
+                .toFuture();
+        String result;
+        // only the dependency's own faults count against the plugin's breaker; an error
+        // result (nothing found, bad arguments) is the model's, and only fails this call
+        boolean failed;
+        boolean dependencyFailed;
+        try {
+            result = invocation.get(deadlineMs, TimeUnit.MILLISECONDS);
+            failed = result == null || result.startsWith("Error");
+            dependencyFailed = false;
+        } catch (TimeoutException e) {
+            // nobody waits for the upstream call any more; cancelling it interrupts its thread
+            invocation.cancel(true);
+            timeouts.incrementAndGet();
+            result = "Error: " + call.getName() + " did not answer within " + deadlineMs + " ms.";
+            failed = true;
+            dependencyFailed = true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException && bulkhead != null) {
+                bulkhead.onRejected();
+                saturated.incrementAndGet();
+                result = "Error: " + call.getPlugin() + " is overloaded. Do not retry; answer without it.";
+            } else {
+                result = "Error: " + e.getCause().getMessage();
+            }
+            failed = true;
+            dependencyFailed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            invocation.cancel(true);
+            breaker.release();
+            return "Error: " + call.getName() + " was interrupted.";
+        }
+        if (dependencyFailed) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+        if (failed && turn != null) {
+            turn.recordFailure(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public String getStatsName() {
+        return "toolGovernor";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", config.isGovernorEnabled());
+        stats.put("overCallLimit", overLimit.get());
+        stats.put("repeatedFailures", repeatedFailures.get());
+        stats.put("overBudget", overBudget.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("unavailable", unavailable.get());
+        stats.put("saturated", saturated.get());
+        Map<String, Object> perPlugin = new TreeMap<>();
+        breakers.forEach((plugin, breaker) -> perPlugin.put(plugin, breaker.getStats()));
+        stats.put("breakers", perPlugin);
+        return stats;
+    }
+}
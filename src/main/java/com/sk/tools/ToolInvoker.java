@@ -0,0 +1,12 @@
+package com.sk.tools;
+
+import java.util.function.Supplier;
+
+/**
+ * What plugins call their upstream through: {@link ToolCalls} for calls outside a
+ * request, or the {@link ToolTurn} of the request the plugin was built for.
+ */
+public interface ToolInvoker {
+
+    String invoke(ToolCall call, Supplier<String> target);
+}
@@ -0,0 +1,257 @@
+package com.sk.tools;
+
+import com.microsoft.semantickernel.Kernel;
+import com.microsoft.semantickernel.orchestration.InvocationContext;
+import com.microsoft.semantickernel.orchestration.InvocationReturnMode;
+import com.microsoft.semantickernel.orchestration.ToolCallBehavior;
+import com.microsoft.semantickernel.plugin.KernelPlugin;
+import com.microsoft.semantickernel.semanticfunctions.InputVariable;
+import com.microsoft.semantickernel.semanticfunctions.KernelFunction;
+import com.microsoft.semantickernel.services.textembedding.Embedding;
+import com.sk.cache.VectorMath;
+import com.sk.config.ToolConfig;
+import com.sk.kernel.kernelUtil;
+import com.sk.metrics.StatsSource;
+import com.sk.ratelimit.TokenEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the kernel functions worth advertising for a turn instead of sending every
+ * function schema with every completion.
+ *
+ * The user message is embedded and compared with the embeddings of the function
+ * descriptions (computed once per description and kept); the best matches above the
+ * minimum score are advertised, together with the functions that matched the
+ * conversation's previous turn, so a follow-up like "and tomorrow?" keeps its tools.
+ * When the catalog is already small, nothing is selected, or the embedding fails,
+ * every function is advertised as before.
+ */
+@Component
+public class ToolSelector implements StatsSource {
+
+    private final kernelUtil kernelUtil;
+    private final ToolConfig config;
+
+    private final Map<String, float[]> functionEmbeddings = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> previousMatches;
+
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong allAdvertised = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong emptySelections = new AtomicLong();
+    private final AtomicLong catalogFunctions = new AtomicLong();
+    private final AtomicLong advertisedFunctions = new AtomicLong();
+    private final AtomicLong stickyFunctions = new AtomicLong();
+    private final AtomicLong savedSchemaTokens = new AtomicLong();
+
+    @Autowired
+    public ToolSelector(kernelUtil kernelUtil, ToolConfig config) {
+        this.kernelUtil = kernelUtil;
+        this.config = config;
+        int maxConversations = config.getSelectionMaxConversations();
+        this.previousMatches = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                return size() > maxConversations;
+            }
+        };
+    }
+
+    /**
+     * An invocation context that auto-invokes only the functions relevant to {@code message}.
+     *
+     * @param conversationKey identifies the conversation for sticky tools, or null for a stateless call
+     * @param excluded        functions (as plugin.function) never to advertise, e.g. those the
+     *                        {@link ContextEnricher} already answered
+     */
+    public Mono<InvocationContext> invocationContext(Kernel kernel, String conversationKey, String message,
+                                                     InvocationReturnMode returnMode, Set<String> excluded) {
+        List<KernelFunction<?>> catalog = new ArrayList<>();
+        for (KernelPlugin plugin : kernel.getPlugins()) {
+            for (KernelFunction<?> function : plugin.getFunctions().values()) {
+                if (!excluded.contains(key(function))) {
+                    catalog.add(function);
+                }
+            }
+        }
+        turns.incrementAndGet();
+        catalogFunctions.addAndGet(catalog.size());
+        if (!config.isSelectionEnabled() || catalog.size() <= config.getSelectionTopK() || message == null) {
+            allAdvertised.incrementAndGet();
+            advertisedFunctions.addAndGet(catalog.size());
+            return Mono.just(context(all(catalog, excluded), returnMode));
+        }
+        return select(catalog, conversationKey, message)
+                .timeout(Duration.ofMillis(config.getSelectionTimeoutMs()))
+                // counted past the timeout, so a selection that lost the race is not counted too
+                .map(selection -> {
+                    count(catalog, selection);
+                    return context(selection.empty
+                            ? all(catalog, excluded)
+                            : ToolCallBehavior.allowOnlyKernelFunctions(true, selection.functions), returnMode);
+                })
+                .onErrorResume(error -> {
+                    // selection only saves tokens, the turn goes ahead with the whole catalog
+                    fallbacks.incrementAndGet();
+                    advertisedFunctions.addAndGet(catalog.size());
+                    System.out.println("Tool selection failed, advertising all functions: " + error.getMessage());
+                    return Mono.just(context(all(catalog, excluded), returnMode));
+                });
+    }
+
+    private Mono<Selection> select(List<KernelFunction<?>> catalog, String conversationKey, String message) {
+        List<String> texts = new ArrayList<>();
+        texts.add(message);
+        List<String> missing = new ArrayList<>();
+        for (KernelFunction<?> function : catalog) {
+            String text = describe(function);
+            if (!functionEmbeddings.containsKey(text) && !missing.contains(text)) {
+                missing.add(text);
+            }
+        }
+        // the message and any descriptions not seen before go in one embedding call
+        texts.addAll(missing);
+        return kernelUtil.generateEmbeddings(texts).map(embeddings -> {
+            for (int i = 0; i < missing.size(); i++) {
+                functionEmbeddings.put(missing.get(i), VectorMath.normalize(embeddings.get(i + 1).getVector()));
+            }
+            return rank(catalog, conversationKey, embeddings.get(0));
+        });
+    }
+
+    private Selection rank(List<KernelFunction<?>> catalog, String conversationKey, Embedding query) {
+        float[] vector = VectorMath.normalize(query.getVector());
+        Map<KernelFunction<?>, Double> scores = new LinkedHashMap<>();
+        for (KernelFunction<?> function : catalog) {
+            scores.put(function, VectorMath.cosine(vector, functionEmbeddings.get(describe(function))));
+        }
+        List<KernelFunction<?>> ranked = new ArrayList<>(catalog);
+        ranked.sort(Comparator.comparingDouble(scores::get).reversed());
+
+        Set<String> matched = new HashSet<>();
+        List<KernelFunction<?>> selected = new ArrayList<>();
+        for (KernelFunction<?> function : ranked) {
+            if (selected.size() >= config.getSelectionTopK() || scores.get(function) < config.getSelectionMinScore()) {
+                break;
+            }
+            selected.add(function);
+            matched.add(key(function));
+        }
+
+        Set<String> sticky = Set.of();
+        if (conversationKey != null) {
+            synchronized (previousMatches) {
+                sticky = previousMatches.getOrDefault(conversationKey, Set.of());
+                // only this turn's own matches carry over, so a tool stays for one extra turn
+                previousMatches.put(conversationKey, matched);
+            }
+        }
+        int stickyCount = 0;
+        for (KernelFunction<?> function : catalog) {
+            if (sticky.contains(key(function)) && !matched.contains(key(function))) {
+                selected.add(function);
+                stickyCount++;
+            }
+        }
+        if (selected.isEmpty()) {
+            // nothing relevant and nothing carried over: an empty list would send no tools at all
+            return new Selection(catalog, 0, true);
+        }
+        return new Selection(selected, stickyCount, false);
+    }
+
+    private void count(List<KernelFunction<?>> catalog, Selection selection) {
+        if (selection.empty) {
+            emptySelections.incrementAndGet();
+        }
+        stickyFunctions.addAndGet(selection.sticky);
+        advertisedFunctions.addAndGet(selection.functions.size());
+        for (KernelFunction<?> function : catalog) {
+            if (!selection.functions.contains(function)) {
+                savedSchemaTokens.addAndGet(TokenEstimator.countText(describe(function)));
+            }
+        }
+    }
+
+    private static ToolCallBehavior all(List<KernelFunction<?>> catalog, Set<String> excluded) {
+        if (excluded.isEmpty()) {
+            return ToolCallBehavior.allowAllKernelFunctions(true);
+        }
+        return catalog.isEmpty() ? null : ToolCallBehavior.allowOnlyKernelFunctions(true, catalog);
+    }
+
+    private static InvocationContext context(ToolCallBehavior toolCallBehavior, InvocationReturnMode returnMode) {
+        InvocationContext.Builder builder = InvocationContext.builder().withReturnMode(returnMode);
+        if (toolCallBehavior != null) {
+            builder.withToolCallBehavior(toolCallBehavior);
+        }
+        return builder.build();
+    }
+
+    private static String key(KernelFunction<?> function) {
+        return function.getPluginName() + "." + function.getName();
+    }
+
+    /*
+     * What gets embedded for a function: roughly the schema the model would be sent.
+     */
+    private static String describe(KernelFunction<?> function) {
+        StringBuilder text = new StringBuilder(key(function));
+        if (function.getDescription() != null) {
+            text.append(": ").append(function.getDescription());
+        }
+        for (InputVariable parameter : function.getMetadata().getParameters()) {
+            text.append("\n").append(parameter.getName());
+            if (parameter.getDescription() != null) {
+                text.append(": ").append(parameter.getDescription());
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String getStatsName() {
+        return "toolSelection";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = turns.get();
+        stats.put("turns", count);
+        stats.put("allAdvertised", allAdvertised.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("emptySelections", emptySelections.get());
+        stats.put("averageCatalogFunctions", count == 0 ? 0 : (double) catalogFunctions.get() / count);
+        stats.put("averageAdvertisedFunctions", count == 0 ? 0 : (double) advertisedFunctions.get() / count);
+        stats.put("stickyFunctions", stickyFunctions.get());
+        stats.put("savedSchemaTokens", savedSchemaTokens.get());
+        stats.put("embeddedDescriptions", functionEmbeddings.size());
+        return stats;
+    }
+
+    private static final class Selection {
+        final List<KernelFunction<?>> functions;
+        final int sticky;
+        final boolean empty;
+
+        Selection(List<KernelFunction<?>> functions, int sticky, boolean empty) {
+            this.functions = functions;
+            this.sticky = sticky;
+            this.empty = empty;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.sk.tools;
+
+import com.sk.deadline.Deadline;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The tool calls of one request. Plugins built for a request invoke through its turn,
+ * so interceptors can see how many calls the request has made, how much of its time
+ * budget is left and which calls already failed. The budget ends no later than the
+ * request's own {@link Deadline}.
+ */
+public class ToolTurn implements ToolInvoker {
+
+    private final ToolCalls toolCalls;
+    private final Deadline deadline;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+
+    ToolTurn(ToolCalls toolCalls, Deadline deadline) {
+        this.toolCalls = toolCalls;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public String invoke(ToolCall call, Supplier<String> target) {
+        return toolCalls.invoke(call.inTurn(this), target);
+    }
+
+    /**
+     * Counts a call against the request and returns how many it has made, this one included.
+     */
+    public int countCall() {
+        return calls.incrementAndGet();
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    public long remainingMillis() {
+        return deadline.remainingMillis();
+    }
+
+    public String failureOf(String key) {
+        return failures.get(key);
+    }
+
+    public void recordFailure(String key, String result) {
+        failures.put(key, result);
+    }
+}
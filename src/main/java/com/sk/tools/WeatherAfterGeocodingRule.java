@@ -0,0 +1,105 @@
+package com.sk.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sk.config.AzureAIConfig;
+import com.sk.plugins.WeatherPlugin;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A place is almost always geocoded to ask for its weather: after getCoordinates,
+ * fetch the forecast for the first result. The number of days is the one the model
+ * has asked for most often so far.
+ */
+@Component
+public class WeatherAfterGeocodingRule implements PrefetchRule {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final AzureAIConfig config;
+    private final RestTemplate restTemplate;
+    private final Map<Integer, AtomicLong> daysAsked = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WeatherAfterGeocodingRule(AzureAIConfig config, RestTemplate restTemplate) {
+        this.config = config;
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String trigger() {
+        return "GeocodingPlugin.getCoordinates";
+    }
+
+    @Override
+    public String target() {
+        return "WeatherPlugin.getWeather";
+    }
+
+    @Override
+    public ToolCall predict(ToolCall trigger, String result) {
+        if (result == null || result.startsWith("Error")) {
+            return null;
+        }
+        try {
+            JsonNode places = MAPPER.readTree(result);
+            if (!places.isArray() || places.isEmpty()) {
+                return null;
+            }
+            JsonNode first = places.get(0);
+            double latitude = Double.parseDouble(first.path("lat").asText());
+            double longitude = Double.parseDouble(first.path("lon").asText());
+            return ToolCall.of("WeatherPlugin", "getWeather",
+                    "latitude", latitude, "longitude", longitude, "days", likelyDays());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /*
+     * The model rounds coordinates as it likes; two decimals is about a kilometre,
+     * close enough for a forecast.
+     */
+    @Override
+    public String key(ToolCall call) {
+        return String.format(Locale.ROOT, "%.2f,%.2f,%d",
+                ((Number) call.getArgument("latitude")).doubleValue(),
+                ((Number) call.getArgument("longitude")).doubleValue(),
+                ((Number) call.getArgument("days")).intValue());
+    }
+
+    @Override
+    public String fetch(ToolCall predicted) {
+        return WeatherPlugin.forecast(config, restTemplate,
+                ((Number) predicted.getArgument("latitude")).doubleValue(),
+                ((Number) predicted.getArgument("longitude")).doubleValue(),
+                ((Number) predicted.getArgument("days")).intValue());
+    }
+
+    @Override
+    public void observe(ToolCall call) {
+        Object days = call.getArgument("days");
+        if (days instanceof Number) {
+            daysAsked.computeIfAbsent(((Number) days).intValue(), d -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private int likelyDays() {
+        int likely = 1;
+        long most = 0;
+        for (Map.Entry<Integer, AtomicLong> entry : daysAsked.entrySet()) {
+            if (entry.getValue().get() > most) {
+                most = entry.getValue().get();
+                likely = entry.getKey();
+            }
+        }
+        return likely;
+    }
+}
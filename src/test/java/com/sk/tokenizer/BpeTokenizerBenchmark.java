@@ -0,0 +1,155 @@
+package com.sk.tokenizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput of {@link BpeTokenizer#count} and {@link BpeTokenizer#encode} on chat-like
+ * text (prose, JSON tool results, code), single-threaded and from several threads.
+ *
+ * Not a unit test; run it after building the test classes:
+ *
+ *   java -cp target/classes:target/test-classes com.sk.tokenizer.BpeTokenizerBenchmark \
+ *        [path/to/cl100k_base.tiktoken] [encoding] [threads]
+ *
+ * Without a path the vocabulary is loaded from the classpath.
+ */
+public class BpeTokenizerBenchmark {
+
+    private static final String PROSE = "The weather in Paris tomorrow will be mostly sunny with a high of 24 degrees, "
+            + "although scattered showers are possible in the late afternoon. Don't forget an umbrella! ";
+    private static final String JSON = "[{\"place_id\":287459,\"lat\":\"48.8588897\",\"lon\":\"2.3200410\","
+            + "\"display_name\":\"Paris, Île-de-France, France métropolitaine, France\",\"importance\":0.9417}] ";
+    private static final String CODE = "for (int i = 0; i < parts - 1; i++) {\n    pairRanks[i] = ranks.get(bytes, i, i + 2);\n}\n";
+
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        BpeEncoding encoding = BpeEncoding.fromName(args.length > 1 ? args[1] : "cl100k_base");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        BpeTokenizer tokenizer = load(encoding, args.length > 0 ? args[0] : null);
+        System.out.println("Loaded " + tokenizer.vocabularySize() + " tokens in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        List<String> texts = corpus();
+        long bytes = 0;
+        for (String text : texts) {
+            bytes += text.getBytes(StandardCharsets.UTF_8).length;
+        }
+        System.out.println("Corpus: " + texts.size() + " messages, " + bytes + " bytes, "
+                + tokenizer.encode(String.join("", texts)).length + " tokens");
+
+        run("count, 1 thread", 1, bytes, () -> {
+            long tokens = 0;
+            for (String text : texts) {
+                tokens += tokenizer.count(text);
+            }
+            return tokens;
+        });
+        run("encode, 1 thread", 1, bytes, () -> {
+            long tokens = 0;
+            for (String text : texts) {
+                tokens += tokenizer.encode(text).length;
+            }
+            return tokens;
+        });
+        run("count, " + threads + " threads", threads, bytes, () -> {
+            long tokens = 0;
+            for (String text : texts) {
+                tokens += tokenizer.count(text);
+            }
+            return tokens;
+        });
+    }
+
+    private static BpeTokenizer load(BpeEncoding encoding, String path) throws IOException {
+        if (path == null) {
+            BpeTokenizer tokenizer = BpeTokenizer.fromClasspath(encoding);
+            if (tokenizer == null) {
+                throw new IllegalStateException(encoding.getResource() + " is not on the classpath; pass its path");
+            }
+            return tokenizer;
+        }
+        try (InputStream in = Files.newInputStream(Path.of(path))) {
+            return BpeTokenizer.load(encoding, in);
+        }
+    }
+
+    /*
+     * Messages of a few hundred bytes to a few kilobytes; each is distinct so the
+     * piece count cache sees realistic reuse rather than one repeated string.
+     */
+    private static List<String> corpus() {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j <= i % 8; j++) {
+                text.append(PROSE).append("Message ").append(i).append('.').append(j).append(". ");
+            }
+            if (i % 3 == 0) {
+                text.append(JSON.replace("287459", Integer.toString(287459 + i)));
+            }
+            if (i % 5 == 0) {
+                text.append(CODE);
+            }
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+
+    private interface Pass {
+        long run();
+    }
+
+    /*
+     * One warm-up round, then ROUNDS timed rounds of about a second each; prints the
+     * best round, in MB and tokens per second over all threads.
+     */
+    private static void run(String name, int threads, long bytesPerPass, Pass pass) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            double bestMbPerSecond = 0;
+            double bestTokensPerSecond = 0;
+            for (int round = 0; round <= ROUNDS; round++) {
+                List<Future<long[]>> results = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    results.add(executor.submit(() -> {
+                        long passes = 0;
+                        long tokens = 0;
+                        while (System.nanoTime() - start < ROUND_NANOS) {
+                            tokens += pass.run();
+                            passes++;
+                        }
+                        return new long[]{passes, tokens};
+                    }));
+                }
+                long passes = 0;
+                long tokens = 0;
+                for (Future<long[]> result : results) {
+                    passes += result.get()[0];
+                    tokens += result.get()[1];
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round > 0) {
+                    bestMbPerSecond = Math.max(bestMbPerSecond, passes * bytesPerPass / seconds / (1 << 20));
+                    bestTokensPerSecond = Math.max(bestTokensPerSecond, tokens / seconds);
+                }
+            }
+            System.out.printf("%-22s %8.1f MB/s %12.0f tokens/s%n", name, bestMbPerSecond, bestTokensPerSecond);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.sk.tokenizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Merge mechanics against small hand-made vocabularies, and token ids against
+ * tiktoken's published ones when the real vocabularies are on the classpath
+ * (src/main/resources/tokenizer/cl100k_base.tiktoken, o200k_base.tiktoken).
+ */
+class BpeTokenizerTest {
+
+    @Test
+    void mergesLowestRankedPairFirst() throws IOException {
+        assertArrayEquals(new int[]{256, 'c'}, vocabulary("ab", "bc").encode("abc"));
+        assertArrayEquals(new int[]{'a', 256}, vocabulary("bc", "ab").encode("abc"));
+        // ab, then cd; bc is never formed and abcd is not in the vocabulary
+        assertArrayEquals(new int[]{256, 257}, vocabulary("ab", "cd", "bc").encode("abcd"));
+    }
+
+    @Test
+    void wholePieceIsOneToken() throws IOException {
+        assertArrayEquals(new int[]{258}, vocabulary("ab", "bc", "abc").encode("abc"));
+    }
+
+    @Test
+    void doesNotMergeAcrossPieces() throws IOException {
+        // "hi there" splits into "hi" and " there", so "i " never forms
+        BpeTokenizer tokenizer = vocabulary("i ", " t");
+        assertArrayEquals(new int[]{'h', 'i', 257, 'h', 'e', 'r', 'e'}, tokenizer.encode("hi there"));
+    }
+
+    @Test
+    void encodesUtf8Bytes() throws IOException {
+        BpeTokenizer tokenizer = vocabulary();
+        assertArrayEquals(new int[]{0xC3, 0xA9}, tokenizer.encode("é"));
+        assertArrayEquals(new int[]{0xF0, 0x9F, 0x98, 0x80}, tokenizer.encode("😀"));
+    }
+
+    @Test
+    void countMatchesEncode() throws IOException {
+        BpeTokenizer tokenizer = vocabulary("ab", "cd", " t", "he");
+        String text = "abcd the cab, 12345 dab\n\n  été 😀 abcd";
+        // twice, the second time through the piece count cache
+        assertEquals(tokenizer.encode(text).length, tokenizer.count(text));
+        assertEquals(tokenizer.encode(text).length, tokenizer.count(text));
+    }
+
+    @Test
+    void cl100kReferenceIds() throws IOException {
+        BpeTokenizer tokenizer = BpeTokenizer.fromClasspath(BpeEncoding.CL100K_BASE);
+        assumeTrue(tokenizer != null, "cl100k_base.tiktoken is not on the classpath");
+        assertArrayEquals(new int[]{15339, 1917}, tokenizer.encode("hello world"));
+        assertArrayEquals(new int[]{9906, 11, 1917, 0}, tokenizer.encode("Hello, world!"));
+        assertArrayEquals(new int[]{83, 1609, 5963, 374, 2294, 0}, tokenizer.encode("tiktoken is great!"));
+        assertEquals(6, tokenizer.count("tiktoken is great!"));
+    }
+
+    @Test
+    void o200kReferenceIds() throws IOException {
+        BpeTokenizer tokenizer = BpeTokenizer.fromClasspath(BpeEncoding.O200K_BASE);
+        assumeTrue(tokenizer != null, "o200k_base.tiktoken is not on the classpath");
+        assertArrayEquals(new int[]{24912, 2375}, tokenizer.encode("hello world"));
+        assertArrayEquals(new int[]{13225, 11, 2375, 0}, tokenizer.encode("Hello, world!"));
+    }
+
+    /*
+     * Every single byte at the rank of its value, then the given merges ranked from 256
+     * in order, written out as a .tiktoken file.
+     */
+    private static BpeTokenizer vocabulary(String... merges) throws IOException {
+        Base64.Encoder base64 = Base64.getEncoder();
+        StringBuilder file = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            file.append(base64.encodeToString(new byte[]{(byte) b})).append(' ').append(b).append('\n');
+        }
+        for (int i = 0; i < merges.length; i++) {
+            file.append(base64.encodeToString(merges[i].getBytes(StandardCharsets.UTF_8)))
+                    .append(' ').append(256 + i).append('\n');
+        }
+        return BpeTokenizer.load(BpeEncoding.CL100K_BASE,
+                new ByteArrayInputStream(file.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+}